@@ -0,0 +1,42 @@
+package android.net;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Replaces the stub of the Android jar, to run the library on the JVM. Only
+ * parses what requests use, i.e., the host.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public class Uri {
+
+    private final String uriString;
+    private final String host;
+
+    private Uri(String uriString, String host) {
+        this.uriString = uriString;
+        this.host = host;
+    }
+
+    public static Uri parse(String uriString) {
+        String host;
+        try {
+            host = new URI(uriString).getHost();
+        } catch (URISyntaxException e) {
+            host = null;
+        }
+        return new Uri(uriString, host);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
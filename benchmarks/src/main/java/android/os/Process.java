@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * Replaces the stub of the Android jar, to run the library on the JVM.
+ * Thread priorities are left to the JVM.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public class Process {
+
+    public static final int THREAD_PRIORITY_DEFAULT = 0;
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+    public static void setThreadPriority(int priority) {
+    }
+
+    public static int myPid() {
+        return 0;
+    }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * Replaces the stub of the Android jar, to run the library on the JVM.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+}
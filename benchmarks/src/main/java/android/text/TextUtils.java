@@ -0,0 +1,35 @@
+package android.text;
+
+/**
+ * Replaces the stub of the Android jar, to run the library on the JVM.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public class TextUtils {
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static String join(CharSequence delimiter, Iterable tokens) {
+        StringBuilder sb = new StringBuilder();
+        boolean first = true;
+        for (Object token : tokens) {
+            if (!first) sb.append(delimiter);
+            sb.append(token);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    public static String join(CharSequence delimiter, Object[] tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) sb.append(delimiter);
+            sb.append(tokens[i]);
+        }
+        return sb.toString();
+    }
+}
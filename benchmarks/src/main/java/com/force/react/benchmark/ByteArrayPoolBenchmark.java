@@ -0,0 +1,70 @@
+package com.force.react.benchmark;
+
+import com.force.react.toolbox.ByteArrayPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ByteArrayPool#getBuf(int)} and
+ * {@link ByteArrayPool#returnBuf(byte[])} against allocating the buffers,
+ * with the pool size of {@link com.force.react.toolbox.BasicNetwork}, and
+ * a pool already holding buffers of mixed sizes.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ByteArrayPoolBenchmark {
+
+    private static final int POOL_SIZE = 4096;
+    private static final int[] POOLED_SIZES = {128, 256, 512, 1024};
+
+    @Param({"128", "1024", "4096"})
+    public int size;
+
+    private ByteArrayPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ByteArrayPool(POOL_SIZE);
+        for (int pooled : POOLED_SIZES) pool.returnBuf(new byte[pooled]);
+    }
+
+    @Benchmark
+    public byte[] allocate() {
+        return new byte[size];
+    }
+
+    @Benchmark
+    public byte[] getReturnBuf() {
+        byte[] buf = pool.getBuf(size);
+        pool.returnBuf(buf);
+        return buf;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] getReturnBufContended() {
+        return getReturnBuf();
+    }
+}
@@ -0,0 +1,92 @@
+package com.force.react.benchmark;
+
+import com.force.react.Cache;
+import com.force.react.toolbox.DiskBasedCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DiskBasedCache#get(String)} and
+ * {@link DiskBasedCache#put(String, Cache.Entry)} of an entry, with its
+ * headers, in a cache in a temporary directory.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DiskBasedCacheBenchmark {
+
+    private static final String KEY = "http://bench.force.com/function";
+    private static final int CACHE_SIZE = 32 << 20;
+
+    @Param({"1024", "16384", "262144"})
+    public int size;
+
+    private File root;
+    private DiskBasedCache cache;
+    private Cache.Entry entry;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = File.createTempFile("cache", null);
+        if (!root.delete() || !root.mkdir())
+            throw new IOException("Cannot create " + root);
+
+        cache = new DiskBasedCache(root, CACHE_SIZE);
+        cache.initialize();
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/octet-stream");
+        headers.put("Cache-Control", "max-age=3600");
+        headers.put("ETag", "\"bench\"");
+
+        entry = new Cache.Entry();
+        entry.data = new byte[size];
+        entry.etag = "\"bench\"";
+        entry.serverDate = System.currentTimeMillis();
+        entry.ttl = entry.serverDate + 3600000;
+        entry.softTtl = entry.ttl;
+        entry.responseHeaders = headers;
+        cache.put(KEY, entry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+        root.delete();
+    }
+
+    @Benchmark
+    public Cache.Entry get() {
+        return cache.get(KEY);
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(KEY, entry);
+    }
+}
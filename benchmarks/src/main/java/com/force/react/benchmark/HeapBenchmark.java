@@ -0,0 +1,126 @@
+package com.force.react.benchmark;
+
+import com.force.react.Heap;
+import com.force.react.toolbox.HeapConfig;
+import com.force.react.toolbox.HeapFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures malloc/free, write and read of the {@link Heap} of
+ * {@link HeapFactory}, a ByteArrayHeap by default, for block sizes from 64
+ * B to 256 KB. The contended benchmarks run the same operations on 4
+ * threads sharing the heap.
+ * <p>
+ * The heap type is a parameter, therefore, the other heaps can be compared
+ * against the same baseline, i.e., -p heapType=0,1,4
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeapBenchmark {
+
+    private static final int HEAP_SIZE = 64 << 20;
+
+    @Param({"64", "1024", "16384", "262144"})
+    public int size;
+
+    @Param({"0"})
+    public int heapType;
+
+    Heap heap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HeapFactory.setHeapType(heapType);
+        HeapFactory.setConfig(new HeapConfig().setInitialSize(HEAP_SIZE)
+                .setElastic(false));
+        HeapFactory.eraseMemory();
+        heap = HeapFactory.getInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HeapFactory.eraseMemory();
+        HeapFactory.setConfig(null);
+        HeapFactory.setHeapType(HeapFactory.HEAP_TYPE_BYTE_ARRAY);
+    }
+
+    @Benchmark
+    public int mallocFree() {
+        int reference = heap.malloc(size);
+        heap.free(reference);
+        return reference;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int mallocFreeContended() {
+        return mallocFree();
+    }
+
+    @Benchmark
+    public int write(Block block) {
+        return heap.write(block.reference, block.data);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int writeContended(Block block) {
+        return write(block);
+    }
+
+    @Benchmark
+    public byte[] read(Block block) {
+        return heap.read(block.reference);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] readContended(Block block) {
+        return read(block);
+    }
+
+    /**
+     * A block of each thread, allocated before measuring
+     */
+    @State(Scope.Thread)
+    public static class Block {
+        int reference;
+        byte[] data;
+
+        @Setup(Level.Trial)
+        public void setUp(HeapBenchmark benchmark) {
+            data = new byte[benchmark.size];
+            reference = benchmark.heap.malloc(benchmark.size);
+            benchmark.heap.write(reference, data);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(HeapBenchmark benchmark) {
+            benchmark.heap.free(reference);
+        }
+    }
+}
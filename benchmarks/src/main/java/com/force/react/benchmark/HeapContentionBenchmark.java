@@ -0,0 +1,113 @@
+package com.force.react.benchmark;
+
+import com.force.react.Heap;
+import com.force.react.toolbox.HeapFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of malloc/write/free cycles of the {@link Heap} of
+ * {@link HeapFactory} under contention, on 1 to 8 threads sharing the heap.
+ * Each thread keeps up to 16 blocks of 256 B live, freeing the oldest
+ * before each malloc.
+ * <p>
+ * Compares the SizeClassHeap, locked as a whole, against the ArenaHeap,
+ * striped over per-thread arenas, i.e., -p heapType=1,4
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeapContentionBenchmark {
+
+    private static final int BLOCK_SIZE = 256;
+    private static final int BLOCKS_PER_THREAD = 16;
+
+    @Param({"1", "4"})
+    public int heapType;
+
+    Heap heap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HeapFactory.setHeapType(heapType);
+        HeapFactory.eraseMemory();
+        heap = HeapFactory.getInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HeapFactory.eraseMemory();
+        HeapFactory.setHeapType(HeapFactory.HEAP_TYPE_BYTE_ARRAY);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int cycle(Blocks blocks) {
+        int slot = blocks.next++ % BLOCKS_PER_THREAD;
+        if (blocks.references[slot] >= 0) heap.free(blocks.references[slot]);
+        blocks.references[slot] = heap.malloc(BLOCK_SIZE);
+        return heap.write(blocks.references[slot], blocks.data);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public int cycle2Threads(Blocks blocks) {
+        return cycle(blocks);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int cycle4Threads(Blocks blocks) {
+        return cycle(blocks);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int cycle8Threads(Blocks blocks) {
+        return cycle(blocks);
+    }
+
+    /**
+     * The live blocks of each thread
+     */
+    @State(Scope.Thread)
+    public static class Blocks {
+        final int[] references = new int[BLOCKS_PER_THREAD];
+        final byte[] data = new byte[BLOCK_SIZE];
+        int next = 0;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (int i = 0; i < references.length; i++)
+                references[i] = Heap.NULL_REFERENCE;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(HeapContentionBenchmark benchmark) {
+            for (int reference : references)
+                if (reference >= 0) benchmark.heap.free(reference);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.force.react.benchmark;
+
+import com.force.react.Heap;
+import com.force.react.HeapUtil;
+import com.force.react.toolbox.HeapConfig;
+import com.force.react.toolbox.HeapFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HeapUtil#getBlockData(int, String)}, i.e., how a receiver
+ * of an IPC response takes the body out of the {@link Heap}.
+ * <p>
+ * getBlockData() frees the block, therefore, each operation stores the body
+ * first, as the sender does. {@link #store()} measures storing alone, to be
+ * subtracted.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeapUtilBenchmark {
+
+    private static final String TAG = HeapUtilBenchmark.class.getName();
+    private static final int HEAP_SIZE = 16 << 20;
+
+    @Param({"64", "1024", "16384", "262144"})
+    public int size;
+
+    private Heap heap;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HeapFactory.setConfig(new HeapConfig().setInitialSize(HEAP_SIZE)
+                .setElastic(false));
+        HeapFactory.eraseMemory();
+        heap = HeapFactory.getInstance();
+        data = new byte[size];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HeapFactory.eraseMemory();
+        HeapFactory.setConfig(null);
+    }
+
+    @Benchmark
+    public int store() {
+        int reference = heap.malloc(size);
+        heap.write(reference, data);
+        heap.free(reference);
+        return reference;
+    }
+
+    @Benchmark
+    public byte[] storeGetBlockData() {
+        int reference = heap.malloc(size);
+        heap.write(reference, data);
+        return HeapUtil.getBlockData(reference, TAG);
+    }
+}
@@ -0,0 +1,74 @@
+package com.force.react.benchmark;
+
+import com.force.react.Cache;
+import com.force.react.NetworkResponse;
+import com.force.react.toolbox.HttpHeaderParser;
+
+import org.apache.http.impl.cookie.DateUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HttpHeaderParser#parseCacheHeaders(NetworkResponse)} of a
+ * response with the usual caching headers, including the dates, and of a
+ * response without any.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpHeaderParserBenchmark {
+
+    private NetworkResponse cached;
+    private NetworkResponse uncached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long now = System.currentTimeMillis();
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Date", DateUtils.formatDate(new Date(now)));
+        headers.put("Last-Modified", DateUtils.formatDate(new Date(now -
+                3600000)));
+        headers.put("Expires", DateUtils.formatDate(new Date(now +
+                3600000)));
+        headers.put("Cache-Control", "public, max-age=3600, " +
+                "stale-while-revalidate=60");
+        headers.put("ETag", "\"bench\"");
+        headers.put("Content-Type", "application/json; charset=utf-8");
+
+        cached = new NetworkResponse(new byte[0], headers);
+        uncached = new NetworkResponse(new byte[0], new HashMap<String,
+                String>());
+    }
+
+    @Benchmark
+    public Cache.Entry parseCacheHeaders() {
+        return HttpHeaderParser.parseCacheHeaders(cached);
+    }
+
+    @Benchmark
+    public Cache.Entry parseNoCacheHeaders() {
+        return HttpHeaderParser.parseCacheHeaders(uncached);
+    }
+}
@@ -0,0 +1,63 @@
+package com.force.react.benchmark;
+
+import com.force.react.RequestIdGenerator;
+import com.force.react.toolbox.CounterRequestIdGenerator;
+import com.force.react.toolbox.SecureRequestIdGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generating request IDs, by the {@link RequestIdGenerator}s, and
+ * as IPCUtil.generateReqID() used to, seeding a new SecureRandom for every
+ * ID.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestIdBenchmark {
+
+    private final RequestIdGenerator counter = new
+            CounterRequestIdGenerator();
+    private final RequestIdGenerator secure = new SecureRequestIdGenerator();
+
+    @Benchmark
+    public String newSecureRandom() {
+        return new BigInteger(130, new SecureRandom()).toString(32);
+    }
+
+    @Benchmark
+    public String secure() {
+        return secure.nextId();
+    }
+
+    @Benchmark
+    public String counter() {
+        return counter.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String counterContended() {
+        return counter.nextId();
+    }
+}
@@ -0,0 +1,110 @@
+package com.force.react.benchmark;
+
+import com.force.react.ExecutorDelivery;
+import com.force.react.Request;
+import com.force.react.RequestQueue;
+import com.force.react.Response;
+import com.force.react.VolleyError;
+import com.force.react.mock.MockNetwork;
+import com.force.react.toolbox.NoCache;
+import com.force.react.toolbox.StringRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a {@link RequestQueue}, end to end, from
+ * adding a request to delivering its response, against a
+ * {@link MockNetwork}. Each operation adds a batch of requests, and waits
+ * for all of their responses.
+ * <p>
+ * Requests are not cached, and no function is registered, therefore, every
+ * request takes the lookup and the network path of the network dispatchers.
+ * Responses are delivered on the dispatcher threads.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestQueueBenchmark {
+
+    private static final String URL = "http://bench.force.com/function";
+    private static final int BATCH = 100;
+
+    @Param({"1", "4"})
+    public int threadPoolSize;
+
+    @Param({"1024", "65536"})
+    public int responseSize;
+
+    private RequestQueue queue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockNetwork network = new MockNetwork();
+        network.setDataToReturn(new byte[responseSize]);
+
+        queue = new RequestQueue(new NoCache(), network, threadPoolSize, new
+                ExecutorDelivery(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+        queue.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queue.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void addBatch() throws InterruptedException {
+        final CountDownLatch responses = new CountDownLatch(BATCH);
+
+        Response.Listener<String> listener = new Response.Listener<String>() {
+            @Override
+            public void onResponse(String response) {
+                responses.countDown();
+            }
+        };
+        Response.ErrorListener errorListener = new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                responses.countDown();
+            }
+        };
+
+        for (int i = 0; i < BATCH; i++) {
+            StringRequest request = new StringRequest(Request.Method.GET, URL,
+                    listener, errorListener);
+            request.setShouldCache(false);
+            queue.add(request);
+        }
+        responses.await();
+    }
+}
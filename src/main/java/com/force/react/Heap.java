@@ -2,6 +2,7 @@ package com.force.react;
 
 import com.force.react.toolbox.HeapBlock;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 
 /**
@@ -96,12 +97,31 @@ public interface Heap {
      */
     byte[] read(int reference);
 
+    /**
+     * Borrow a read-only view of a memory block, without copying it. The
+     * block stays valid until the view is released with
+     * {@link #release(int)}; freeing a borrowed block is deferred until then.
+     *
+     * @param reference the reference to the memory block
+     * @return the view, or null if the reference is invalid
+     */
+    ByteBuffer view(int reference);
+
+    /**
+     * Release a view borrowed with {@link #view(int)}
+     *
+     * @param reference the reference to the memory block
+     * @throws IllegalStateException if the block has not been borrowed
+     */
+    void release(int reference);
+
     /**
      * Get heap object.
      * <p>
      * Do not directly write to the memory, instead use the write() method.
      *
-     * @return the base memory object
+     * @return the base memory object, or null if the heap is not backed by a
+     * byte[]
      */
     byte[] getMemory();
 
@@ -115,6 +135,26 @@ public interface Heap {
      */
     int getNBlocks();
 
+    /**
+     * Get the number of free blocks
+     */
+    int getNFreeBlocks();
+
+    /**
+     * Get the size of the largest contiguous free memory, including the free
+     * memory above the top of the heap
+     */
+    int getLargestFreeBlock();
+
+    /**
+     * Get the external fragmentation of the free memory, i.e., 1 - (largest
+     * free block / total free memory)
+     *
+     * @return 0 if the free memory is contiguous, closer to 1 as it is split
+     * into smaller blocks.
+     */
+    float getFragmentation();
+
     /**
      * Get the LinkedList of memory blocks
      */
@@ -4,6 +4,9 @@ import android.util.Log;
 
 import com.force.react.toolbox.HeapFactory;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
 /**
  * @author Chathura Sarathchandra
  */
@@ -38,6 +41,163 @@ public final class HeapUtil {
         return response;
     }
 
+    /**
+     * Copy the bytes into a new memory block of the {@link Heap}
+     *
+     * @param data the bytes
+     * @param TAG  name of the invoking class (for logging purposes)
+     * @return the reference to the memory block, or an error code of
+     * {@link Heap} if the block cannot be allocated or written.
+     */
+    public static int putBlockData(byte[] data, String TAG) {
+        Heap heap = HeapFactory.getInstance();
+        int reference = heap.malloc(data.length);
+        if (reference < 0) {
+            Log.e(TAG, "Heap: unsuccessful call to malloc() " + reference);
+            return reference;
+        }
+
+        int written = heap.write(reference, data);
+        if (written < 0) {
+            Log.e(TAG, "Heap: unsuccessful call to write() " + written);
+            heap.free(reference);
+            return written;
+        }
+        return reference;
+    }
+
+    /**
+     * Borrow a read-only view of the memory block, without copying it. The
+     * view must be handed back with {@link #releaseBlockData(int, String)},
+     * which also frees the block.
+     *
+     * @param reference the reference to the memory block
+     * @param TAG       name of the invoking class (for logging purposes)
+     * @return view of the heap block, or null if the reference is invalid
+     */
+    public static ByteBuffer borrowBlockData(int reference, String TAG) {
+        ByteBuffer view = HeapFactory.getInstance().view(reference);
+        if (view == null) Log.e(TAG, "Heap: invalid reference " + reference);
+        return view;
+    }
+
+    /**
+     * Free a memory block back to the {@link Heap}, without reading it, e.g.,
+     * the block of a reply nobody waits for. Invalid references, i.e., error
+     * codes or blocks freed already, are logged.
+     *
+     * @param reference the reference to the memory block
+     * @param TAG       name of the invoking class (for logging purposes)
+     */
+    public static void freeBlockData(int reference, String TAG) {
+        if (reference < 0) {
+            Log.e(TAG, "Heap: invalid reference " + reference);
+            return;
+        }
+
+        try {
+            HeapFactory.getInstance().free(reference);
+        } catch (Exception e) {
+            Log.e(TAG, "Heap: unsuccessful call to free() \n" + e.toString());
+        }
+    }
+
+    /**
+     * Release a view borrowed with {@link #borrowBlockData(int, String)}, and
+     * free the memory block back to the {@link Heap}
+     *
+     * @param reference the reference to the memory block
+     * @param TAG       name of the invoking class (for logging purposes)
+     */
+    public static void releaseBlockData(int reference, String TAG) {
+        Heap heap = HeapFactory.getInstance();
+        try {
+            heap.free(reference);
+            heap.release(reference);
+        } catch (Exception e) {
+            Log.e(TAG, "Heap: unsuccessful call to release" +
+                    "() \n" + e.toString());
+        }
+    }
+
+    /**
+     * Copy the bodies of a batch into one memory block of the {@link Heap},
+     * i.e., the number of bodies, the length of each body, or -1 if null,
+     * and the bodies, one after the other.
+     *
+     * @param bodies the bodies, in the order of the requests of the batch
+     * @param TAG    name of the invoking class (for logging purposes)
+     * @return the reference to the memory block, or an error code of
+     * {@link Heap} if the block cannot be allocated or written.
+     */
+    public static int putBatchData(byte[][] bodies, String TAG) {
+        ByteBuffer[] buffers = new ByteBuffer[bodies.length];
+        for (int i = 0; i < bodies.length; i++)
+            if (bodies[i] != null) buffers[i] = ByteBuffer.wrap(bodies[i]);
+        return putBatchData(buffers, TAG);
+    }
+
+    /**
+     * Copy the bodies of a batch into one memory block of the {@link Heap},
+     * as {@link #putBatchData(byte[][], String)} does, from buffers, i.e.,
+     * views of other blocks, without copying them out first
+     *
+     * @param bodies the remaining bytes of each buffer, or null, in the order
+     *               of the requests of the batch
+     * @param TAG    name of the invoking class (for logging purposes)
+     * @return the reference to the memory block, or an error code of
+     * {@link Heap} if the block cannot be allocated or written.
+     */
+    public static int putBatchData(ByteBuffer[] bodies, String TAG) {
+        int size = 4 * (bodies.length + 1);
+        for (ByteBuffer body : bodies) if (body != null) size += body
+                .remaining();
+
+        ByteBuffer region = ByteBuffer.allocate(size);
+        region.putInt(bodies.length);
+        for (ByteBuffer body : bodies) region.putInt(body == null ? -1 : body
+                .remaining());
+        for (ByteBuffer body : bodies) if (body != null) region.put(body
+                .duplicate());
+
+        return putBlockData(region.array(), TAG);
+    }
+
+    /**
+     * Return the bodies of a batch in the memory block, written by
+     * {@link #putBatchData(byte[][], String)}, then free back to the
+     * {@link Heap}
+     *
+     * @param reference the reference to the memory block
+     * @param TAG       name of the invoking class (for logging purposes)
+     * @return the bodies, or null if the reference, or the block, is invalid
+     */
+    public static byte[][] getBatchData(int reference, String TAG) {
+        ByteBuffer region = borrowBlockData(reference, TAG);
+        if (region == null) return null;
+
+        try {
+            int n = region.getInt();
+            if (n < 0 || n > region.remaining() / 4) return null;
+
+            int[] lengths = new int[n];
+            for (int i = 0; i < n; i++) lengths[i] = region.getInt();
+
+            byte[][] bodies = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                if (lengths[i] < 0) continue;
+                bodies[i] = new byte[lengths[i]];
+                region.get(bodies[i]);
+            }
+            return bodies;
+        } catch (BufferUnderflowException e) {
+            Log.e(TAG, "Heap: invalid batch " + reference);
+            return null;
+        } finally {
+            releaseBlockData(reference, TAG);
+        }
+    }
+
     public static String getCallerClassName(Class reqClass) {
         StackTraceElement[] stElements = Thread.currentThread().getStackTrace();
         for (int i = 1; i < stElements.length; i++) {
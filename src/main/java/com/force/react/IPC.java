@@ -15,7 +15,8 @@ public interface IPC {
      * @param request      Request to process
      * @param functionName The name of the function (reversed domain name)
      * @param functionClass
-     * @return A {@link NetworkResponse} with data and caching metadata; will never be null
+     * @return the response, or null if the request is to be sent over the
+     * network instead
      * @throws VolleyError on errors
      */
     IPCResponse performRequest(Request<?> request, String functionName, VolleyIPCFunction functionClass) throws
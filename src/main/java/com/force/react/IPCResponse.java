@@ -1,22 +1,87 @@
 package com.force.react;
 
+import java.nio.ByteBuffer;
+
 /**
  * @author Chathura Sarathchandra
  */
 
 public class IPCResponse implements RawResponse {
 
+    private static final String TAG = IPCResponse.class.getName();
+
     /**
      * Raw data from this response.
      */
     public final byte[] data;
 
+    /**
+     * Read-only view of the response in the {@link Heap}, if the response
+     * has not been copied out of it. Null otherwise.
+     */
+    public final ByteBuffer buffer;
+
+    /**
+     * Reference to the borrowed heap block, until released
+     */
+    private int reference = Heap.NULL_REFERENCE;
+
     public IPCResponse(byte[] rawdata) {
         data = rawdata;
+        buffer = null;
+    }
+
+    private IPCResponse(ByteBuffer view, int heapReference) {
+        data = null;
+        buffer = view;
+        reference = heapReference;
     }
 
+    /**
+     * Creates a response that borrows the heap block, instead of copying it.
+     * The block is freed by {@link #release()}, unless the ownership is
+     * taken with {@link #takeReference()}.
+     *
+     * @param heapReference the reference to the heap block
+     * @return the response, with a null body if the reference is invalid
+     */
+    public static IPCResponse fromHeap(int heapReference) {
+        ByteBuffer view = HeapUtil.borrowBlockData(heapReference, TAG);
+        return view == null ? new IPCResponse((byte[]) null) : new
+                IPCResponse(view, heapReference);
+    }
+
+    /**
+     * Copies the response out of the heap if the response is a view.
+     */
     @Override
     public byte[] getRawResponse() {
-        return data;
+        if (data != null || buffer == null) return data;
+
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Take the ownership of the borrowed heap block. The caller must release
+     * it with {@link HeapUtil#releaseBlockData(int, String)}.
+     *
+     * @return the reference, or NULL_REFERENCE if not borrowed or already
+     * taken
+     */
+    public synchronized int takeReference() {
+        int heapReference = reference;
+        reference = Heap.NULL_REFERENCE;
+        return heapReference;
+    }
+
+    /**
+     * Release and free the borrowed heap block, if it is still owned by
+     * this response.
+     */
+    public void release() {
+        int heapReference = takeReference();
+        if (heapReference >= 0) HeapUtil.releaseBlockData(heapReference, TAG);
     }
 }
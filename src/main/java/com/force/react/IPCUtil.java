@@ -5,30 +5,41 @@ import android.app.Application;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.os.AsyncTask;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
+import android.os.Message;
 import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
 import android.support.annotation.RequiresApi;
 import android.support.v4.content.LocalBroadcastManager;
-import android.text.TextUtils;
 import android.util.Log;
 
+import com.force.react.toolbox.CounterRequestIdGenerator;
+import com.force.react.toolbox.HeapFactory;
 import com.force.react.toolbox.HelperVirtDevService;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
-import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.SecureRandom;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Contains IPC utility methods and constants
@@ -58,6 +69,10 @@ public final class IPCUtil {
     public final static int FORCE_ANDROID_IPC_TYPE_BINDER = 4;
     public final static int FORCE_ANDROID_IPC_TYPE_LBHEAP = 5;
     public static final int FORCE_ANDROID_IPC_TYPE_HEAP = 6;
+    /**
+     * Calls functions of the same process directly, without Intents
+     */
+    public static final int FORCE_ANDROID_IPC_TYPE_DIRECT = 7;
 
     /**
      * Name of request method
@@ -78,6 +93,20 @@ public final class IPCUtil {
     public static final String IPC_OPTIONS = "http.ipc.options";
     public static final String IPC_TRACE = "http.ipc.trace";
     public final static String IPC_GET_REPLY = "http.ipc.get_reply";
+    /**
+     * Reply of a request rejected by the function, with ERROR_EXTRA_NAME
+     */
+    public final static String IPC_ERROR_REPLY = "http.ipc.error_reply";
+    /**
+     * Reply of a request the function has no handler for, so that the
+     * requester falls back to another IPC type
+     */
+    public final static String IPC_UNSUPPORTED_REPLY = "http.ipc" +
+            ".unsupported_reply";
+    /**
+     * Action of all replies, demultiplexed by REQ_ID_EXTRA_NAME
+     */
+    public final static String IPC_REPLY_ACTION = "com.force.react.ipc.reply";
     public final static String HTTP_SERVICE = "com.force.react.toolbox" +
             ".LocalBroadcastStack";
     /**
@@ -92,10 +121,28 @@ public final class IPCUtil {
      * Name of POST request body
      */
     public final static String POSTBODY_EXTRA_NAME = "post_body";
+    /**
+     * Name of the reference to the request body in the Heap, instead of
+     * POSTBODY_EXTRA_NAME
+     */
+    public final static String POSTBODY_REF_EXTRA_NAME = "post_body_ref";
+    /**
+     * Name of the content type of the request body, if any
+     */
+    public final static String BODY_CONTENT_TYPE_EXTRA_NAME = "body_content_type";
     /**
      * Name of GET request body
      */
     public final static String GET_REPLYBODY_EXTRA_NAME = "get_replybody";
+    /**
+     * Name of the reason of an error reply
+     */
+    public final static String ERROR_EXTRA_NAME = "error";
+    /**
+     * Name of the flag of a Messenger reply to a request the function has no
+     * handler for
+     */
+    public final static String UNSUPPORTED_EXTRA_NAME = "unsupported";
     /******************************************
      *       Data INTENT - Request/Response
      *****************************************/
@@ -189,6 +236,64 @@ public final class IPCUtil {
      * Received if the query does not return any services.
      */
     public static final int MSG_NO_REGISTERED_SERVICE = 0;
+    /**
+     * The key for the {@link Messenger} of a function, if it supports
+     * FORCE_ANDROID_IPC_TYPE_MESSENGER, used when registering services
+     */
+    public static final String FUNCTION_MESSENGER_MSG_REGISTER_SERVICE =
+            "com.force.service.msgattrib.func.register_service_messenger";
+    /**
+     * The key for the {@link Messenger} of the requested function, if any
+     */
+    public static final String FUNCTION_MESSENGER_MSG_QUERY_SERVICE = "com" +
+            ".force.service.msgattrib.func.query_messenger";
+    /**
+     * Request to a function over its {@link Messenger}, with the extras of
+     * the request Intent in a {@link Bundle}
+     */
+    public static final int MSG_FUNCTION_REQUEST = 10;
+    /**
+     * Reply of a function, with REQ_ID_EXTRA_NAME, and
+     * GET_REPLYBODY_EXTRA_NAME, REPLYBODY_REF_EXTRA_NAME or ERROR_EXTRA_NAME
+     */
+    public static final int MSG_FUNCTION_REPLY = 11;
+    /**
+     * Name of the {@link ParcelFileDescriptor} of a large request body,
+     * instead of POSTBODY_EXTRA_NAME
+     */
+    public final static String POSTBODY_FD_EXTRA_NAME = "post_body_fd";
+    /**
+     * Name of the {@link ParcelFileDescriptor} of a large reply body,
+     * instead of GET_REPLYBODY_EXTRA_NAME
+     */
+    public final static String REPLYBODY_FD_EXTRA_NAME = "get_replybody_fd";
+    /**
+     * Bodies of messages of at least this many bytes are sent through a
+     * pipe, instead of the Binder transaction, which is limited in size.
+     */
+    public static final int MESSENGER_FD_THRESHOLD = 64 * 1024;
+    /**
+     * The key for the path of the shared Heap of a function, if it uses a
+     * HeapFactory.HEAP_TYPE_SHARED Heap, used when registering services
+     */
+    public static final String SHARED_HEAP_MSG_REGISTER_SERVICE = "com.force" +
+            ".service.msgattrib.func.register_service_shared_heap";
+    /**
+     * The key for the path of the shared Heap of the requested function, if
+     * any
+     */
+    public static final String SHARED_HEAP_MSG_QUERY_SERVICE = "com.force" +
+            ".service.msgattrib.func.query_shared_heap";
+    /**
+     * Name of the path of the shared Heap of the requester, if any. The
+     * function replies with a reference, if it shares the same Heap.
+     */
+    public final static String SHARED_HEAP_EXTRA_NAME = "shared_heap";
+    /**
+     * Name of the reference to the reply body in the shared Heap, instead of
+     * GET_REPLYBODY_EXTRA_NAME
+     */
+    public final static String REPLYBODY_REF_EXTRA_NAME = "get_replybody_ref";
     /**
      * The name of the virtdev service. Currently only needed for providing
      * as input into  {@link #isServiceRunning(String, Context)}
@@ -196,6 +301,41 @@ public final class IPCUtil {
     public static final String FORCE_SERVICE_NAME = "VirtDevService";
     private static final String TAG = IPCUtil.class.getName();
 
+    /**
+     * The most bodies written into their pipes at once, i.e., while their
+     * readers are slow, or gone
+     */
+    public static final int MAX_PIPE_WRITERS = 16;
+
+    /**
+     * Write the large bodies of messages into their pipes
+     */
+    private static final ThreadPoolExecutor pipeWriters = new ThreadPoolExecutor
+            (0, MAX_PIPE_WRITERS, 60L, TimeUnit.SECONDS, new
+                    SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger nThreads = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "IPCUtil-pipe-" +
+                            nThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Generates the IDs of requests
+     */
+    private static volatile RequestIdGenerator reqIDGenerator = new
+            CounterRequestIdGenerator();
+    /**
+     * Reversed domain names, by domain name
+     */
+    private static final int MAX_REVERSED_DOMAINS = 256;
+    private static final ConcurrentHashMap<String, String> reversedDomains =
+            new ConcurrentHashMap<String, String>();
+
     /**
      * Log: number of requests
      */
@@ -340,29 +480,52 @@ public final class IPCUtil {
     }
 
     /**
-     * Choose 130 bits from a cryptographically secure random
-     * bit generator, and encoding them in base-32.
-     * <p>
-     * Complies with:
-     * RFC 1750: Randomness Recommendations for Security.
-     * FIPS 140-2, Security Requirements for Cryptographic Modules, section
-     * 4.9.1 tests
+     * Generate the ID of a request, by the {@link RequestIdGenerator} set.
+     * IDs are unique within the process, and are not secure by default.
+     *
+     * @see #setReqIDGenerator(RequestIdGenerator)
      */
     public static String generateReqID() {
-        return new BigInteger(130, new SecureRandom()).toString(32);
+        return reqIDGenerator.nextId();
+    }
+
+    /**
+     * Set how request IDs are generated, i.e., a
+     * {@link com.force.react.toolbox.SecureRequestIdGenerator} for IDs that cannot be guessed.
+     *
+     * @param generator the generator, null for the default
+     *                  {@link CounterRequestIdGenerator}.
+     */
+    public static void setReqIDGenerator(RequestIdGenerator generator) {
+        reqIDGenerator = generator == null ? new CounterRequestIdGenerator()
+                : generator;
     }
 
     /***
      * Maps the domain names of web service functions to the domain names of
-     * IPC functions (reversed internet domain names).
+     * IPC functions (reversed internet domain names). Results are cached, as
+     * requests are sent to a few domains.
      *
      * @param domain    Domain name to be reversed
      * @return Reversed domain name
      */
     public static String reverseDomain(final String domain) {
-        final List<String> components = Arrays.asList(domain.split("\\."));
-        Collections.reverse(components);
-        return TextUtils.join(".", components);
+        String reversed = reversedDomains.get(domain);
+        if (reversed != null) return reversed;
+
+        StringBuilder sb = new StringBuilder(domain.length());
+        int end = domain.length();
+        for (int dot = domain.lastIndexOf('.'); dot >= 0; dot = domain
+                .lastIndexOf('.', dot - 1)) {
+            sb.append(domain, dot + 1, end).append('.');
+            end = dot;
+        }
+        reversed = sb.append(domain, 0, end).toString();
+
+        if (reversedDomains.size() >= MAX_REVERSED_DOMAINS)
+            reversedDomains.clear();
+        reversedDomains.put(domain, reversed);
+        return reversed;
     }
 
     /**
@@ -390,9 +553,10 @@ public final class IPCUtil {
     public static void replyLBroadcastMessage(LocalBroadcastManager
                                                       broadcastManager, String reqID,
                                               byte[] messageBody) {
-        //Uses the request ID as the action, instead of the destination address.
-        Intent iVidIntent = new Intent(reqID);
-        //iVidIntent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        // All replies share an action, and are matched to their requests by
+        // the request ID.
+        Intent iVidIntent = new Intent(IPCUtil.IPC_REPLY_ACTION);
+        iVidIntent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
         iVidIntent.putExtra(IPCUtil.METHOD_EXTRA_NAME,
                 IPCUtil.IPC_GET_REPLY);
         iVidIntent.putExtra(IPCUtil.GET_REPLYBODY_EXTRA_NAME,
@@ -400,6 +564,43 @@ public final class IPCUtil {
         broadcastManager.sendBroadcast(iVidIntent);
     }
 
+    /**
+     * Reply to LocalBroadcastMessage at the Function, with an error, i.e.,
+     * when the request is rejected.
+     *
+     * @param broadcastManager the corresponding instance of
+     *                         LocalBroadcastManager
+     * @param reqID            the reqid field of the request - copied
+     * @param error            the reason
+     */
+    public static void replyLBroadcastError(LocalBroadcastManager
+                                                    broadcastManager, String reqID,
+                                            String error) {
+        Intent iVidIntent = new Intent(IPCUtil.IPC_REPLY_ACTION);
+        iVidIntent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        iVidIntent.putExtra(IPCUtil.METHOD_EXTRA_NAME,
+                IPCUtil.IPC_ERROR_REPLY);
+        iVidIntent.putExtra(IPCUtil.ERROR_EXTRA_NAME, error);
+        broadcastManager.sendBroadcast(iVidIntent);
+    }
+
+    /**
+     * Reply to a LocalBroadcast request the function has no handler for
+     *
+     * @param broadcastManager the corresponding instance of
+     *                         LocalBroadcastManager
+     * @param reqID            the reqid field of the request - copied
+     */
+    public static void replyLBroadcastUnsupported(LocalBroadcastManager
+                                                          broadcastManager,
+                                                  String reqID) {
+        Intent iVidIntent = new Intent(IPCUtil.IPC_REPLY_ACTION);
+        iVidIntent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        iVidIntent.putExtra(IPCUtil.METHOD_EXTRA_NAME,
+                IPCUtil.IPC_UNSUPPORTED_REPLY);
+        broadcastManager.sendBroadcast(iVidIntent);
+    }
+
     /**
      * Broadcast Http request as a LocalBroadcast message.
      *
@@ -418,13 +619,407 @@ public final class IPCUtil {
                                         byte[] messageBody,
                                         String reqID) {
 
+        sendRequestBroadcast(localBroadcastManager, buildRequestIntent
+                (functionName, ipcUrl, method, messageBody, reqID));
+    }
+
+    /**
+     * Broadcast the Intent of a request to a function
+     *
+     * @return true, if a function received the request, false otherwise.
+     */
+    private static boolean sendRequestBroadcast(LocalBroadcastManager
+                                                        localBroadcastManager,
+                                                Intent iVidIntent) {
+        //TODO: use OrderedBroadcast here to limit the delivery to one receiver.
+        return localBroadcastManager.sendBroadcast(iVidIntent);
+    }
+
+    /**
+     * Build the Intent of a request to a function
+     *
+     * @param functionName The name of the function
+     * @param ipcUrl       The address of the function
+     * @param method       Message method, e.g., IPCUtil.IPC_GET
+     * @param messageBody  Message body, if any
+     * @param reqID        Randomly generated request ID.
+     * @return the Intent
+     */
+    public static Intent buildRequestIntent(String functionName, String
+            ipcUrl, String method, byte[] messageBody, String reqID) {
         Intent iVidIntent = new Intent(IPCUtil.reverseDomain(functionName));
         iVidIntent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
         iVidIntent.putExtra(IPCUtil.METHOD_EXTRA_NAME, method);
         iVidIntent.putExtra(IPCUtil.FUNCURL_EXTRA_NAME, ipcUrl);
         iVidIntent.putExtra(IPCUtil.POSTBODY_EXTRA_NAME, messageBody);
-        //TODO: use OrderedBroadcast here to limit the delivery to one receiver.
-        localBroadcastManager.sendBroadcast(iVidIntent);
+        return iVidIntent;
+    }
+
+    /**
+     * Build the Intent of a request to a function, with the method and the
+     * body of the request
+     *
+     * @param functionName The name of the function
+     * @param request      {@link Request} object
+     * @param reqID        Randomly generated request ID.
+     * @return the Intent
+     * @throws AuthFailureError if the body of the request fails
+     */
+    public static Intent buildRequestIntent(String functionName, Request<?>
+            request, String reqID) throws AuthFailureError {
+        return buildRequestIntent(functionName, request, getBody(request),
+                reqID);
+    }
+
+    /**
+     * Build the Intent of a request to a function, with the method of the
+     * request
+     *
+     * @param functionName The name of the function
+     * @param request      {@link Request} object
+     * @param body         the body of the request, i.e., from getBody()
+     * @param reqID        Randomly generated request ID.
+     * @return the Intent
+     * @throws AuthFailureError if the body of the request fails
+     */
+    public static Intent buildRequestIntent(String functionName, Request<?>
+            request, byte[] body, String reqID) throws AuthFailureError {
+        Intent iVidIntent = buildRequestIntent(functionName, request.getUrl
+                (), getIPCMethod(request), body, reqID);
+        if (body != null)
+            iVidIntent.putExtra(IPCUtil.BODY_CONTENT_TYPE_EXTRA_NAME,
+                    request.getBodyContentType());
+        return iVidIntent;
+    }
+
+    /**
+     * Get a copy of the body of a request received by a function, i.e., from
+     * the Heap, if it was sent over the Heap by
+     * {@link com.force.react.toolbox.HeapLBStack}.
+     *
+     * @param intent the request Intent
+     * @param TAG    name of the invoking class (for logging purposes)
+     * @return the body, or null if none.
+     */
+    public static byte[] getRequestBody(Intent intent, String TAG) {
+        int reference = intent.getIntExtra(POSTBODY_REF_EXTRA_NAME, Heap
+                .NULL_REFERENCE);
+        if (reference < 0) return intent.getByteArrayExtra(POSTBODY_EXTRA_NAME);
+
+        byte[] body = HeapFactory.getInstance().read(reference);
+        if (body == null) Log.e(TAG, "Heap: invalid reference " + reference);
+        return body;
+    }
+
+    /**
+     * Borrow the body of a request received by a function, without copying
+     * it if it is in the Heap. The body must be handed back with
+     * {@link #releaseRequestBody(Intent, String)}, before the handler of the
+     * request returns.
+     *
+     * @param intent the request Intent
+     * @param TAG    name of the invoking class (for logging purposes)
+     * @return a read-only view of the body, or null if none.
+     */
+    public static ByteBuffer borrowRequestBody(Intent intent, String TAG) {
+        int reference = intent.getIntExtra(POSTBODY_REF_EXTRA_NAME, Heap
+                .NULL_REFERENCE);
+        if (reference >= 0) return HeapUtil.borrowBlockData(reference, TAG);
+
+        byte[] body = intent.getByteArrayExtra(POSTBODY_EXTRA_NAME);
+        return body == null ? null : ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    /**
+     * Release the body of a request, borrowed with
+     * {@link #borrowRequestBody(Intent, String)}.
+     *
+     * @param intent the request Intent
+     * @param TAG    name of the invoking class (for logging purposes)
+     */
+    public static void releaseRequestBody(Intent intent, String TAG) {
+        int reference = intent.getIntExtra(POSTBODY_REF_EXTRA_NAME, Heap
+                .NULL_REFERENCE);
+        if (reference < 0) return;
+
+        try {
+            HeapFactory.getInstance().release(reference);
+        } catch (Exception e) {
+            Log.e(TAG, "Heap: unsuccessful call to release() \n" + e
+                    .toString());
+        }
+    }
+
+    /**
+     * Free the block of the body of a request in the Heap, by its owner,
+     * i.e., the function once it has handled the request, or the requester
+     * if no function received it. A view still borrowed defers the free
+     * until it is released.
+     *
+     * @param intent the request Intent
+     * @param TAG    name of the invoking class (for logging purposes)
+     */
+    public static void freeRequestBody(Intent intent, String TAG) {
+        int reference = intent.getIntExtra(POSTBODY_REF_EXTRA_NAME, Heap
+                .NULL_REFERENCE);
+        if (reference < 0) return;
+
+        try {
+            HeapFactory.getInstance().free(reference);
+        } catch (Exception e) {
+            Log.e(TAG, "Heap: unsuccessful call to free() \n" + e
+                    .toString());
+        }
+    }
+
+    /**
+     * Put a body into a message, or the read end of a pipe it is written to
+     * if it is large
+     *
+     * @param bundle  the message
+     * @param key     name of the body, e.g., POSTBODY_EXTRA_NAME
+     * @param fdKey   name of the pipe, e.g., POSTBODY_FD_EXTRA_NAME
+     * @param body    the body, or null
+     * @throws IOException if the pipe cannot be created, or MAX_PIPE_WRITERS
+     *                     bodies are being written already
+     */
+    public static void putMessageBody(Bundle bundle, String key, String fdKey,
+                                      final byte[] body) throws IOException {
+        if (body == null || body.length < MESSENGER_FD_THRESHOLD) {
+            bundle.putByteArray(key, body);
+            return;
+        }
+
+        ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        final OutputStream out = new ParcelFileDescriptor
+                .AutoCloseOutputStream(pipe[1]);
+        // the pipe holds only a part of the body, until it is read
+        try {
+            pipeWriters.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        out.write(body);
+                    } catch (IOException e) {
+                        Log.e(TAG, e.toString());
+                    } finally {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                            Log.e(TAG, e.toString());
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            out.close();
+            pipe[0].close();
+            throw new IOException("Too many bodies in pipes");
+        }
+        // the read end is closed by the reader within the process, or with
+        // closeMessageBody() once the message is sent to another process
+        bundle.putParcelable(fdKey, pipe[0]);
+    }
+
+    /**
+     * Get the number of bodies being written into their pipes
+     */
+    public static int getNPipeWriters() {
+        return pipeWriters.getActiveCount();
+    }
+
+    /**
+     * Close the read end of the pipe of a message, put with
+     * {@link #putMessageBody(Bundle, String, String, byte[])}, if the message
+     * has been sent to another process, which reads its own copy, or has not
+     * been sent.
+     *
+     * @param bundle    the message
+     * @param fdKey     name of the pipe, e.g., POSTBODY_FD_EXTRA_NAME
+     * @param messenger the {@link Messenger} the message is sent to
+     * @param sent      true, if the message has been sent, false otherwise.
+     */
+    public static void closeMessageBody(Bundle bundle, String fdKey,
+                                        Messenger messenger, boolean sent) {
+        ParcelFileDescriptor fd = bundle.getParcelable(fdKey);
+        if (fd == null) return;
+        // not parcelled within the process
+        if (sent && messenger.getBinder() instanceof Binder) return;
+
+        try {
+            fd.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    /**
+     * Get a body put with
+     * {@link #putMessageBody(Bundle, String, String, byte[])}
+     *
+     * @param bundle the message
+     * @param key    name of the body, e.g., POSTBODY_EXTRA_NAME
+     * @param fdKey  name of the pipe, e.g., POSTBODY_FD_EXTRA_NAME
+     * @return the body, or null if none.
+     * @throws IOException if the pipe cannot be read
+     */
+    public static byte[] getMessageBody(Bundle bundle, String key, String
+            fdKey) throws IOException {
+        ParcelFileDescriptor fd = bundle.getParcelable(fdKey);
+        if (fd == null) return bundle.getByteArray(key);
+
+        InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(fd);
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream
+                    (MESSENGER_FD_THRESHOLD * 2);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) body.write(buffer, 0, read);
+            return body.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reply to a request received over the {@link Messenger} of a function,
+     * or with an error if the body cannot be sent
+     *
+     * @param replyTo the replyTo of the request
+     * @param reqID   the reqid field of the request - copied
+     * @param body    the reply body, if any
+     * @param error   the reason, if the request is rejected, null otherwise
+     */
+    public static void replyMessage(Messenger replyTo, String reqID, byte[]
+            body, String error) {
+        Bundle bundle = new Bundle();
+        bundle.putString(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        boolean sent = false;
+        try {
+            if (error != null) bundle.putString(IPCUtil.ERROR_EXTRA_NAME,
+                    error);
+            else putMessageBody(bundle, IPCUtil.GET_REPLYBODY_EXTRA_NAME,
+                    IPCUtil.REPLYBODY_FD_EXTRA_NAME, body);
+
+            replyTo.send(Message.obtain(null, IPCUtil.MSG_FUNCTION_REPLY,
+                    bundle));
+            sent = true;
+        } catch (IOException e) {
+            // the body could not be put into a pipe, the requester is not to
+            // wait for its timeout
+            Log.e(TAG, e.toString());
+            replyMessage(replyTo, reqID, null, e.toString());
+        } catch (RemoteException e) {
+            // the caller is gone
+            Log.e(TAG, e.toString());
+        } finally {
+            closeMessageBody(bundle, IPCUtil.REPLYBODY_FD_EXTRA_NAME,
+                    replyTo, sent);
+        }
+    }
+
+    /**
+     * Reply to a request received over the {@link Messenger} of a function,
+     * that the function has no handler for
+     *
+     * @param replyTo the replyTo of the request
+     * @param reqID   the reqid field of the request - copied
+     */
+    public static void replyMessageUnsupported(Messenger replyTo, String
+            reqID) {
+        Bundle bundle = new Bundle();
+        bundle.putString(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        bundle.putBoolean(IPCUtil.UNSUPPORTED_EXTRA_NAME, true);
+        try {
+            replyTo.send(Message.obtain(null, IPCUtil.MSG_FUNCTION_REPLY,
+                    bundle));
+        } catch (RemoteException e) {
+            // the caller is gone
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    /**
+     * Reply to a request received over the {@link Messenger} of a function,
+     * with a block of the Heap shared with the requester. The block is freed
+     * by the requester, or here, if the reply cannot be sent.
+     *
+     * @param replyTo   the replyTo of the request
+     * @param reqID     the reqid field of the request - copied
+     * @param reference reference to the reply body in the shared Heap
+     */
+    public static void replyMessage(Messenger replyTo, String reqID, int
+            reference) {
+        Bundle bundle = new Bundle();
+        bundle.putString(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        bundle.putInt(IPCUtil.REPLYBODY_REF_EXTRA_NAME, reference);
+        try {
+            replyTo.send(Message.obtain(null, IPCUtil.MSG_FUNCTION_REPLY,
+                    bundle));
+        } catch (RemoteException e) {
+            // the caller is gone
+            Log.e(TAG, e.toString());
+            HeapFactory.getInstance().free(reference);
+        }
+    }
+
+    /**
+     * Get the IPC method of a request, i.e., the value of METHOD_EXTRA_NAME.
+     * DEPRECATED_GET_OR_POST requests are POST requests if they have a body,
+     * GET requests otherwise.
+     *
+     * @param request {@link Request} object
+     * @return the method, e.g., IPCUtil.IPC_GET
+     * @throws AuthFailureError if the body of the request fails
+     */
+    @SuppressWarnings("deprecation")
+    public static String getIPCMethod(Request<?> request) throws
+            AuthFailureError {
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                return request.getPostBody() == null ? IPC_GET : IPC_POST;
+            case Request.Method.GET:
+                return IPC_GET;
+            case Request.Method.DELETE:
+                return IPC_DELETE;
+            case Request.Method.POST:
+                return IPC_POST;
+            case Request.Method.PUT:
+                return IPC_PUT;
+            case Request.Method.HEAD:
+                return IPC_HEAD;
+            case Request.Method.OPTIONS:
+                return IPC_OPTIONS;
+            case Request.Method.TRACE:
+                return IPC_TRACE;
+            case Request.Method.PATCH:
+                return IPC_PATCH;
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    /**
+     * Get the body of a request, as sent by {@link
+     * com.force.react.toolbox.HurlStack}, i.e., only POST, PUT and PATCH
+     * requests have bodies.
+     *
+     * @param request {@link Request} object
+     * @return the body, or null if none.
+     * @throws AuthFailureError if the body of the request fails
+     */
+    @SuppressWarnings("deprecation")
+    public static byte[] getBody(Request<?> request) throws AuthFailureError {
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                return request.getPostBody();
+            case Request.Method.POST:
+            case Request.Method.PUT:
+            case Request.Method.PATCH:
+                return request.getBody();
+            default:
+                return null;
+        }
     }
 
     /***************************************************************************
@@ -458,30 +1053,107 @@ public final class IPCUtil {
      * @param properties            {@link IPCUtil.Properties} object for
      *                              storing the response and keeping track
      *                              of the progress.
+     * @throws RejectedError if the function rejected the request
+     * @throws TimeoutError  if the function did not reply in time
+     */
+    @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
+    public static void sendMessage(String reqID, String functionName, Request<?>
+            request, String ipcmode, LocalBroadcastManager
+                                           localBroadcastManager, IPCUtil.Properties properties) throws VolleyError {
+        sendMessage(reqID, functionName, request, ipcmode,
+                localBroadcastManager, properties, request.getTimeoutMs());
+    }
+
+    /**
+     * Send virtDev message to a function, waiting up to a timeout
+     *
+     * @param timeoutMs the longest time to wait for the reply
+     * @see #sendMessage(String, String, Request, String,
+     * LocalBroadcastManager, Properties)
      */
     @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
     public static void sendMessage(String reqID, String functionName, Request<?>
             request, String ipcmode, LocalBroadcastManager
-                                           localBroadcastManager, IPCUtil.Properties properties) throws AuthFailureError {
+                                           localBroadcastManager, IPCUtil
+                                           .Properties properties, long timeoutMs) throws VolleyError {
+        Intent iVidIntent = buildRequestIntent(functionName, request, reqID);
+        iVidIntent.putExtra(IPCUtil.METHOD_EXTRA_NAME, ipcmode);
+        sendMessage(reqID, iVidIntent, request, localBroadcastManager,
+                properties, timeoutMs);
+    }
+
+    /**
+     * Send virtDev message to a function, with an Intent built by
+     * buildRequestIntent(). If no function receives the request, it is
+     * marked unsupported in the properties, without waiting for a reply.
+     *
+     * @param reqID                 Request ID.
+     * @param iVidIntent            the request Intent
+     * @param request               {@link Request} object
+     * @param localBroadcastManager {@link LocalBroadcastManager} of the
+     *                              application.
+     * @param properties            {@link IPCUtil.Properties} object for
+     *                              storing the response and keeping track
+     *                              of the progress.
+     * @throws RejectedError if the function rejected the request
+     * @throws TimeoutError  if the function did not reply in time
+     */
+    @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
+    public static void sendMessage(String reqID, Intent iVidIntent, Request<?>
+            request, LocalBroadcastManager localBroadcastManager, IPCUtil
+                                           .Properties properties) throws VolleyError {
+        sendMessage(reqID, iVidIntent, request, localBroadcastManager,
+                properties, request.getTimeoutMs());
+    }
+
+    /**
+     * Send virtDev message to a function, with an Intent built by
+     * buildRequestIntent(), waiting up to a timeout
+     *
+     * @param timeoutMs the longest time to wait for the reply
+     * @see #sendMessage(String, Intent, Request, LocalBroadcastManager,
+     * Properties)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
+    public static void sendMessage(String reqID, Intent iVidIntent, Request<?>
+            request, LocalBroadcastManager localBroadcastManager, IPCUtil
+                                           .Properties properties, long timeoutMs) throws VolleyError {
 
         HelperVirtDevService.registerBReceiver(reqID,
                 localBroadcastManager, properties);
-        IPCUtil.broadcastRequest(localBroadcastManager,
-                functionName, request.getUrl(),
-                ipcmode, request.getPostBody(), reqID);
+        // the function owns a body in the Heap once it receives the request
+        if (!sendRequestBroadcast(localBroadcastManager, iVidIntent)) {
+            // no function received it, the stack falls back at once
+            Log.e(TAG, "No receiver for " + iVidIntent.getAction());
+            properties.setRequestReplyInHeap(false);
+            HelperVirtDevService.unregisterBReceiver(reqID,
+                    localBroadcastManager);
+            freeRequestBody(iVidIntent, TAG);
+            properties.setRequestUnsupported(true);
+            return;
+        }
 
-        Log.i(TAG, "Request timeout " + request.getTimeoutMs());
+        Log.i(TAG, "Request timeout " + timeoutMs);
+        boolean received = false;
         try {
-            waitForResponse(request
-                    .getTimeoutMs(), properties);
-        } catch (ExecutionException e) {
-            Log.e(TAG, e.toString());
-            e.printStackTrace();
+            received = waitForResponse(timeoutMs, properties);
         } catch (InterruptedException e) {
             Log.e(TAG, e.toString());
-            e.printStackTrace();
+            // the dispatcher may have been told to quit
+            Thread.currentThread().interrupt();
+        } finally {
+            // a reply taken meanwhile is used, or its block would leak
+            if (!received && !HelperVirtDevService.unregisterBReceiver(reqID,
+                    localBroadcastManager)) {
+                properties.awaitRequestResponse();
+                received = true;
+            }
         }
 
+        if (properties.getRequestError() != null)
+            throw new RejectedError(properties.getRequestError());
+        if (!received) throw new TimeoutError();
+
         // log the current request number and the amount of memory blocks
         // created
 //        log(new SimpleDateFormat("dd/MM/yy-HH:mm:ss").format(new Date
@@ -538,36 +1210,23 @@ public final class IPCUtil {
     }
 
     /**
-     * Waits until sendMessage response is received
+     * Waits until sendMessage response is received, or the timeout. The
+     * calling thread sleeps until the receiver of the response signals
+     * properties.
      *
-     * @param waitForResponse timeout
+     * @param waitForResponse timeout in milliseconds
+     * @return true, if the response has been received, false if timed out.
      */
-    @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
-    public static void waitForResponse(final long waitForResponse,
-                                       final IPCUtil.Properties properties)
-            throws
-            ExecutionException, InterruptedException {
-
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-                // Wait 5s for the response
-                // TODO: This blocks the thread AsyncTask?
-                long cTime = System.currentTimeMillis();
-                long endTime = cTime + waitForResponse;
-
-                Log.i(TAG, "Waiting for response");
-                while (!properties.isRequestResponseReceived() && System
-                        .currentTimeMillis() <
-                        endTime) {
-                }
-                // the following throws errors in case of null
-                // responses
-                Log.i(TAG, "Timed out Waiting for response = " +
-                        !properties.isRequestResponseReceived());
-                return null;
-            }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR).get();
+    public static boolean waitForResponse(final long waitForResponse,
+                                          final IPCUtil.Properties properties)
+            throws InterruptedException {
+
+        Log.i(TAG, "Waiting for response");
+        boolean received = properties.awaitRequestResponse(waitForResponse);
+        // the following throws errors in case of null
+        // responses
+        Log.i(TAG, "Timed out Waiting for response = " + !received);
+        return received;
     }
 
     /**
@@ -595,25 +1254,40 @@ public final class IPCUtil {
         /**
          * Requests
          */
-        private byte[] requestResponse = null;
-        private boolean requestResponseReceived = false;
+        private volatile byte[] requestResponse = null;
+        private volatile String requestError = null;
+        private volatile String requestIOError = null;
+        private volatile boolean requestUnsupported = false;
+        private volatile int requestResponseReference = Heap.NULL_REFERENCE;
+        private volatile boolean requestReplyInHeap = false;
+        private volatile boolean requestResponseReceived = false;
+        /**
+         * Released when the response is received, once per request
+         */
+        private final CountDownLatch requestResponseLatch = new
+                CountDownLatch(1);
 
         /**
          * Lookup
          */
-        private int[] lookupResponse = null;
+        private volatile int[] lookupResponse = null;
+        /**
+         * Released when the lookup is answered, once per lookup
+         */
+        private final CountDownLatch lookupLatch = new CountDownLatch(1);
 
         /**
          * Setting this to true if a local function exists. Defaulting to
          * offloading, and setting to false when the function is available
          * locally.
          */
-        private boolean bypassFuncLocal = true;
+        private volatile boolean bypassFuncLocal = true;
 
         /**
          * The class object of the local function is set, if it exists locally.
          */
         private VolleyIPCFunction functionInterface = null;
+        private volatile Messenger functionMessenger = null;
 
         /**
          * Not possible to assign values during instantiation.
@@ -680,6 +1354,87 @@ public final class IPCUtil {
             this.requestResponse = requestResponse;
         }
 
+        /**
+         * Get the error replied by the function, i.e., if rejected
+         *
+         * @return the reason, or null if none.
+         */
+        public String getRequestError() {
+            return requestError;
+        }
+
+        /**
+         * Store an error replied by the function
+         */
+        public void setRequestError(String requestError) {
+            this.requestError = requestError;
+        }
+
+        /**
+         * Get the error receiving the response, e.g., reading it from a pipe
+         *
+         * @return the reason, or null if none.
+         */
+        public String getRequestIOError() {
+            return requestIOError;
+        }
+
+        /**
+         * Store an error receiving the response
+         */
+        public void setRequestIOError(String requestIOError) {
+            this.requestIOError = requestIOError;
+        }
+
+        /**
+         * Check if the function replied that it has no handler for the
+         * request
+         */
+        public boolean isRequestUnsupported() {
+            return requestUnsupported;
+        }
+
+        /**
+         * Store that the function has no handler for the request
+         */
+        public void setRequestUnsupported(boolean requestUnsupported) {
+            this.requestUnsupported = requestUnsupported;
+        }
+
+        /**
+         * Get the reference to the response in the shared Heap, if replied
+         * with REPLYBODY_REF_EXTRA_NAME
+         *
+         * @return the reference, or Heap.NULL_REFERENCE if none.
+         */
+        public int getRequestResponseReference() {
+            return requestResponseReference;
+        }
+
+        /**
+         * Store a reference to the response in the shared Heap
+         */
+        public void setRequestResponseReference(int reference) {
+            this.requestResponseReference = reference;
+        }
+
+        /**
+         * Check if the function replies with a reference to the Heap, i.e.,
+         * to a {@link com.force.react.toolbox.ByteRequest} over
+         * FORCE_ANDROID_IPC_TYPE_LBHEAP
+         */
+        public boolean isRequestReplyInHeap() {
+            return requestReplyInHeap;
+        }
+
+        /**
+         * Set if the function replies with a reference to the Heap, which is
+         * freed if the reply arrives after the request timed out
+         */
+        public void setRequestReplyInHeap(boolean requestReplyInHeap) {
+            this.requestReplyInHeap = requestReplyInHeap;
+        }
+
         /**
          * For checking if a reponse has been received from a function over IPC.
          *
@@ -690,12 +1445,48 @@ public final class IPCUtil {
         }
 
         /**
-         * Flag set to indicate if an IPC response has received.
+         * Flag set to indicate if an IPC response has received. Setting it
+         * to true wakes up the thread waiting for the response; set the
+         * response before.
          *
          * @param responseReceived true, if response received, false otherwise.
          */
         public void setRequestResponseReceived(boolean responseReceived) {
             this.requestResponseReceived = responseReceived;
+            if (responseReceived) requestResponseLatch.countDown();
+        }
+
+        /**
+         * Wait until an IPC response is received, or the timeout.
+         *
+         * @param timeoutMs timeout in milliseconds
+         * @return true, if a response has received, false otherwise.
+         */
+        public boolean awaitRequestResponse(long timeoutMs) throws
+                InterruptedException {
+            return requestResponseLatch.await(timeoutMs, TimeUnit
+                    .MILLISECONDS);
+        }
+
+        /**
+         * Wait for a response taken by the receiver of the replies, after
+         * the request stopped waiting, i.e., timed out. The interrupt status
+         * is kept.
+         */
+        public void awaitRequestResponse() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        requestResponseLatch.await();
+                        return;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
         }
 
         /**
@@ -763,6 +1554,25 @@ public final class IPCUtil {
             this.lookupResponse = lookupResponse;
         }
 
+        /**
+         * Wakes up the thread waiting for the lookup; set the lookup
+         * response, and whether to bypass, before.
+         */
+        public void completeLookup() {
+            lookupLatch.countDown();
+        }
+
+        /**
+         * Wait until the lookup is answered, or the timeout.
+         *
+         * @param timeoutMs timeout in milliseconds
+         * @return true, if answered, false otherwise.
+         */
+        public boolean awaitLookup(long timeoutMs) throws
+                InterruptedException {
+            return lookupLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
         /**
          * Indicates if to bypass indirecting to locally residing functions
          * over IPC, or to offload the request to the network.
@@ -790,5 +1600,17 @@ public final class IPCUtil {
         public VolleyIPCFunction getFunctionInterface() {
             return functionInterface;
         }
+
+        /**
+         * Get the {@link Messenger} of the function, if it supports
+         * FORCE_ANDROID_IPC_TYPE_MESSENGER
+         */
+        public Messenger getFunctionMessenger() {
+            return functionMessenger;
+        }
+
+        public void setFunctionMessenger(Messenger functionMessenger) {
+            this.functionMessenger = functionMessenger;
+        }
     }
 }
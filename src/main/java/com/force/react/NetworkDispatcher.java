@@ -27,6 +27,7 @@ import android.os.SystemClock;
 import android.util.Log;
 
 import com.force.react.toolbox.AndroidIPC;
+import com.force.react.toolbox.FunctionLookupCache;
 import com.force.react.toolbox.HelperVirtDevService;
 
 import java.util.concurrent.BlockingQueue;
@@ -70,6 +71,11 @@ public class NetworkDispatcher extends Thread {
      */
     IPCUtil.Properties properties = new IPCUtil
             .Properties();
+    /**
+     * Results of the recent lookups
+     */
+    private final FunctionLookupCache lookupCache = FunctionLookupCache
+            .getInstance();
     /**
      * The IPC interface for processing requests.
      */
@@ -165,20 +171,27 @@ public class NetworkDispatcher extends Thread {
                 // TODO: Extracts only the domain name and drops everything else
                 functionName = IPCUtil.getDomainName(request.getUrl());
 
-                properties = new IPCUtil.Properties();
-
-                HelperVirtDevService.lookup(functionName, serviceBinder,
-                        properties, context,
-                        WAIT_FOR_VIRT_SERVICE, false);
-
-                Log.i(TAG, "Local vs Remote check " + functionName + " " +
-                        !properties.isBypassFuncLocal() +
-                        " " +
-                        (properties.getLookupResponse() != null));
+                // Look up the function, unless looked up recently
+                FunctionLookupCache.Entry function = lookupCache.get
+                        (functionName);
+                if (function == null) {
+                    properties = new IPCUtil.Properties();
+
+                    // not cached if invalidated during the lookup, and
+                    // asks the virtDev service for the functions of other
+                    // processes, if not registered in this one
+                    long generation = lookupCache.getGeneration();
+                    HelperVirtDevService.lookup(functionName, serviceBinder,
+                            properties, context,
+                            WAIT_FOR_VIRT_SERVICE, true);
+                    function = lookupCache.put(functionName, properties,
+                            generation);
+                }
 
                 // If IPC redirection is not set to be bypassed, and the local
                 // function has been registered.
-                if (!properties.isBypassFuncLocal()) {
+                IPCResponse ipcResponse = null;
+                if (function.isLocal()) {
                     //if local execution is not bypassed and received IPC info from
                     //virtDev service.
 
@@ -191,11 +204,21 @@ public class NetworkDispatcher extends Thread {
                     //request.setUrl(IPCUtil.reverseDomain(functionName));
 
                     // Android IPC
-                    mIPC = new AndroidIPC(properties.getLookupResponse());
+                    mIPC = new AndroidIPC(function.getSupportedIPCs(),
+                            function.getFunctionInterface() != null,
+                            function.getFunctionMessenger());
+
+                    ipcResponse = mIPC.performRequest(request,
+                            functionName, function.getFunctionInterface());
+                }
 
-                    response = request.parseIPCResponse(
-                            mIPC.performRequest(request, functionName,
-                                    properties.getFunctionInterface()));
+                if (ipcResponse != null) {
+                    try {
+                        response = request.parseIPCResponse(ipcResponse);
+                    } finally {
+                        // frees views of the Heap not kept by the request
+                        ipcResponse.release();
+                    }
 
 //                    Log.i(TAG, "IPC Response received " +
 //                            response.result.toString());
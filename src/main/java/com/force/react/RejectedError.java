@@ -0,0 +1,18 @@
+package com.force.react;
+
+/**
+ * Indicates that the function rejected the request, as its workers and
+ * their queue were full.
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+@SuppressWarnings("serial")
+public class RejectedError extends VolleyError {
+    public RejectedError() {
+        super();
+    }
+
+    public RejectedError(String exceptionMessage) {
+        super(exceptionMessage);
+    }
+}
@@ -198,6 +198,7 @@ public abstract class Request<T> implements Comparable<Request<T>> {
      * <p>Also dumps all events from this request's event log; for debugging.</p>
      */
     void finish(final String tag) {
+        onFinish();
         if (mRequestQueue != null) {
             mRequestQueue.finish(this);
         }
@@ -222,6 +223,14 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         }
     }
 
+    /**
+     * Called when the request has finished, whether the response has been
+     * delivered or not. Subclasses that hold on to resources until delivery
+     * (i.e., views of the {@link Heap}) release them here.
+     */
+    protected void onFinish() {
+    }
+
     /**
      * Associates this request with the given queue. The request queue will be notified when this
      * request has finished.
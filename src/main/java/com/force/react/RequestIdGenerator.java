@@ -0,0 +1,18 @@
+package com.force.react;
+
+/**
+ * Generates the IDs of IPC requests, with which replies are matched to
+ * requests. IDs have to be unique within the process.
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public interface RequestIdGenerator {
+
+    /**
+     * Generates a new request ID. Called concurrently by the dispatchers.
+     *
+     * @return the request ID
+     */
+    String nextId();
+}
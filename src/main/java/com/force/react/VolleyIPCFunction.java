@@ -5,12 +5,34 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Messenger;
 import android.support.annotation.RequiresApi;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
+import com.force.react.toolbox.ByteRequest;
+import com.force.react.toolbox.HeapFactory;
+import com.force.react.toolbox.IPCBatcher;
 import com.force.react.toolbox.HelperVirtDevService;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * <p>
  * Provides an API, with which IPC enabled functions may communicate on
@@ -37,12 +59,34 @@ import com.force.react.toolbox.HelperVirtDevService;
  * <p>
  * The request handler methods are overloaded based on the type of IPC method.
  * <p>
+ * Requests are handled on a bounded pool of workers, of one thread per
+ * core and a queue of DEFAULT_QUEUE_CAPACITY requests by default, which may
+ * be replaced with setWorkerPool() or setExecutor(). Requests that do not
+ * fit in the queue are rejected, and the caller receives a
+ * {@link RejectedError}.
+ * <p>
+ * Functions that support IPCUtil.FORCE_ANDROID_IPC_TYPE_MESSENGER receive
+ * the requests of other processes over their {@link Messenger}, handed to
+ * the clients by virtDevService, with handleMessengerreq().
+ * <p>
+ * Functions that set setBatching() receive the requests of the same
+ * process in batches, with handleBatchreq().
+ * <p>
  *
  * @author Chathura Sarathchandra
  */
 
 public abstract class VolleyIPCFunction extends Thread {
 
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /**
+     * Returned by handleDirectreq() and handleMessengerreq() for a request
+     * the function has no handler for, so that the requester falls back to
+     * another IPC type, instead of failing the request
+     */
+    public static final Object NO_HANDLER = new Object();
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
     protected String TAG = VolleyIPCFunction.class.getName();
 
     /**
@@ -77,6 +121,37 @@ public abstract class VolleyIPCFunction extends Thread {
     private boolean isBRRegistered = false;
     private Object response;
 
+    /**
+     * Guards the executor and the messenger, instead of the function, which
+     * the default handlers hold while they run
+     */
+    private final Object workerLock = new Object();
+    /**
+     * Runs the request handlers
+     */
+    private volatile ExecutorService executor;
+    /**
+     * Requests submitted, and not started yet
+     */
+    private final AtomicInteger nQueued = new AtomicInteger(0);
+    private final AtomicLong nHandled = new AtomicLong(0);
+    private final AtomicLong nRejected = new AtomicLong(0);
+    private final AtomicLong totalHandlerNanos = new AtomicLong(0);
+    private final AtomicLong maxHandlerNanos = new AtomicLong(0);
+
+    /**
+     * Receives requests from other processes, if the function supports
+     * FORCE_ANDROID_IPC_TYPE_MESSENGER
+     */
+    private volatile Messenger messenger;
+    private HandlerThread messengerThread;
+
+    /**
+     * Requests of the same process are batched, if batchMaxItems > 1
+     */
+    private volatile int batchMaxItems = 0;
+    private volatile long batchWindowMs = 0;
+
     /**
      * The constructor
      *
@@ -101,6 +176,9 @@ public abstract class VolleyIPCFunction extends Thread {
             throw new RuntimeException("The class object has not been set!");
         }
 
+        // registered with the function
+        if (supports(IPCUtil.FORCE_ANDROID_IPC_TYPE_MESSENGER)) startMessenger();
+
         registerFunction();
 
         //Currently supports only one type of IPC method per function
@@ -108,6 +186,9 @@ public abstract class VolleyIPCFunction extends Thread {
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP:
                 Log.i(TAG, "Setting function mode to Heap");
                 break;
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_DIRECT:
+                Log.i(TAG, "Setting function mode to Direct");
+                break;
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP:
                 if (broadcastManager == null) {
                     Log.e(TAG, "The broadcast manager has " +
@@ -152,77 +233,7 @@ public abstract class VolleyIPCFunction extends Thread {
                         + intent.getStringExtra(IPCUtil.METHOD_EXTRA_NAME)
                         .equals(IPCUtil.IPC_GET));
 
-                switch (intent.getStringExtra(IPCUtil.METHOD_EXTRA_NAME)) {
-                    case IPCUtil.IPC_GET:
-                        Log.i(TAG, "HTTP get message received");
-//                        AsyncTask<Void, Void, Void> responseGET = handleGETreq(intent);
-//                        if (responseGET != null) responseGET
-//                                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskGET = handleGETreq(intent, null);
-                        if (taskGET != null) new Thread(taskGET).start();
-                        break;
-                    case IPCUtil.IPC_POST:
-//                        AsyncTask<Void, Void, Void> responsePOST = handlePOSTreq(intent);
-//                        if (responsePOST != null) responsePOST.executeOnExecutor
-//                                (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskPOST = handlePOSTreq(intent);
-                        if (taskPOST != null) new Thread(taskPOST).start();
-                        break;
-                    case IPCUtil.IPC_PUT:
-//                        AsyncTask<Void, Void, Void> responsePUT = handlePUTreq(intent);
-//                        if (responsePUT != null) responsePUT.executeOnExecutor
-//                                (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskPUT = handlePUTreq(intent);
-                        if (taskPUT != null) new Thread(taskPUT).start();
-                        break;
-                    case IPCUtil.IPC_DELETE:
-//                        AsyncTask<Void, Void, Void> responseDEL = handleDELETEreq(intent);
-//                        if (responseDEL != null) responseDEL.executeOnExecutor
-//                                (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskDELETE = handleDELETEreq(intent);
-                        if (taskDELETE != null) new Thread(taskDELETE).start();
-                        break;
-                    case IPCUtil.IPC_HEAD:
-//                        AsyncTask<Void, Void, Void> responseHEAD = handleHEADreq(intent);
-//                        if (responseHEAD != null) responseHEAD.executeOnExecutor
-//                                (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskHEAD = handleHEADreq(intent);
-                        if (taskHEAD != null) new Thread(taskHEAD).start();
-                        break;
-                    case IPCUtil.IPC_OPTIONS:
-//                        AsyncTask<Void, Void, Void> responseOPTIONS = handleOPTIONSreq(intent);
-//                        if (responseOPTIONS != null)
-//                            responseOPTIONS.executeOnExecutor
-//                                    (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskOPTIONS = handleOPTIONSreq(intent);
-                        if (taskOPTIONS != null)
-                            new Thread(taskOPTIONS).start();
-                        break;
-                    case IPCUtil.IPC_TRACE:
-//                        AsyncTask<Void, Void, Void> responseTRACE = handleTRACEreq(intent);
-//                        if (responseTRACE != null)
-//                            responseTRACE.executeOnExecutor
-//                                    (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskTRACE = handleTRACEreq(intent);
-                        if (taskTRACE != null) new Thread(taskTRACE).start();
-                        break;
-                    case IPCUtil.IPC_PATCH:
-//                        AsyncTask<Void, Void, Void> responsePATCH = handlePATCHreq(intent);
-//                        if (responsePATCH != null)
-//                            responsePATCH.executeOnExecutor
-//                                    (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskPATCH = handlePATCHreq(intent);
-                        if (taskPATCH != null) new Thread(taskPATCH).start();
-                        break;
-                    default:
-//                        AsyncTask<Void, Void, Void> responseDEFAULT = handleUnknownreq(intent);
-//                        if (responseDEFAULT != null)
-//                            responseDEFAULT.executeOnExecutor
-//                                    (AsyncTask.THREAD_POOL_EXECUTOR);
-                        Runnable taskUnknown = handleUnknownreq(intent);
-                        if (taskUnknown != null)
-                            new Thread(taskUnknown).start();
-                }
+                dispatch(getHandler(intent), intent);
             }
         };
 
@@ -234,6 +245,469 @@ public abstract class VolleyIPCFunction extends Thread {
         isBRRegistered = true;
     }
 
+    /**
+     * Construct the {@link Runnable} of a request, with the handler of its
+     * method
+     *
+     * @param intent Incoming request intent
+     * @return Thread for handling request, or null
+     */
+    public final Runnable getHandler(Intent intent) {
+        switch (intent.getStringExtra(IPCUtil.METHOD_EXTRA_NAME)) {
+            case IPCUtil.IPC_GET:
+                Log.i(TAG, "HTTP get message received");
+                return handleGETreq(intent, null);
+            case IPCUtil.IPC_POST:
+                return handlePOSTreq(intent);
+            case IPCUtil.IPC_PUT:
+                return handlePUTreq(intent);
+            case IPCUtil.IPC_DELETE:
+                return handleDELETEreq(intent);
+            case IPCUtil.IPC_HEAD:
+                return handleHEADreq(intent);
+            case IPCUtil.IPC_OPTIONS:
+                return handleOPTIONSreq(intent);
+            case IPCUtil.IPC_TRACE:
+                return handleTRACEreq(intent);
+            case IPCUtil.IPC_PATCH:
+                return handlePATCHreq(intent);
+            default:
+                return handleUnknownreq(intent);
+        }
+    }
+
+    /**
+     * Run a request handler on the executor, or reply that the function has
+     * no handler for the request, or with an error if the executor rejects
+     * it, or the handler throws, so that the requester does not wait for its
+     * timeout. The block of a
+     * body in the Heap is freed once the request is handled, or not.
+     *
+     * @param task   the handler, or null if none
+     * @param intent the request
+     */
+    private void dispatch(final Runnable task, final Intent intent) {
+        if (task == null) {
+            Log.e(TAG, "No handler for " + intent.getStringExtra(IPCUtil
+                    .METHOD_EXTRA_NAME));
+            IPCUtil.freeRequestBody(intent, TAG);
+            replyUnsupported(intent);
+            return;
+        }
+
+        try {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        // the Future of the executor is not read
+                        Log.e(TAG, e.toString());
+                        replyError(intent, e.toString());
+                    } finally {
+                        // a view still borrowed by the handler defers it
+                        IPCUtil.freeRequestBody(intent, TAG);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, e.toString());
+            IPCUtil.freeRequestBody(intent, TAG);
+            replyError(intent, "Rejected by " + FORCECOM_FUNCTION_NAME);
+        }
+    }
+
+    /**
+     * Reply to a LocalBroadcast request with an error
+     *
+     * @param intent the request
+     * @param error  the reason
+     */
+    private void replyError(Intent intent, String error) {
+        String reqID = intent.getStringExtra(IPCUtil.REQ_ID_EXTRA_NAME);
+        if (reqID != null && broadcastManager != null)
+            IPCUtil.replyLBroadcastError(broadcastManager, reqID, error);
+    }
+
+    /**
+     * Reply to a LocalBroadcast request that the function has no handler for
+     * it, so that the requester falls back to another IPC type
+     *
+     * @param intent the request
+     */
+    private void replyUnsupported(Intent intent) {
+        String reqID = intent.getStringExtra(IPCUtil.REQ_ID_EXTRA_NAME);
+        if (reqID != null && broadcastManager != null)
+            IPCUtil.replyLBroadcastUnsupported(broadcastManager, reqID);
+    }
+
+    /**
+     * Submit a request handler to the executor, and time it
+     *
+     * @throws RejectedExecutionException if the queue is full, or the
+     *                                    function has been stopped.
+     */
+    private <T> Future<T> submit(final Callable<T> task) {
+        ExecutorService executor = getExecutor();
+        nQueued.incrementAndGet();
+        try {
+            return executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    nQueued.decrementAndGet();
+                    long start = System.nanoTime();
+                    try {
+                        return task.call();
+                    } finally {
+                        recordHandler(System.nanoTime() - start);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            nQueued.decrementAndGet();
+            nRejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private Future<Object> submit(final Runnable task) {
+        return submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                task.run();
+                return null;
+            }
+        });
+    }
+
+    private void recordHandler(long nanos) {
+        nHandled.incrementAndGet();
+        totalHandlerNanos.addAndGet(nanos);
+
+        long max = maxHandlerNanos.get();
+        while (nanos > max && !maxHandlerNanos.compareAndSet(max, nanos))
+            max = maxHandlerNanos.get();
+    }
+
+    /**
+     * Handle a request of the same process on the executor, i.e., with
+     * handleDirectreq()
+     *
+     * @param request the request
+     * @return the result of handleDirectreq()
+     * @throws RejectedExecutionException if the queue is full, or the
+     *                                    function has been stopped.
+     */
+    public final Future<Object> submitDirect(final Request<?> request) {
+        return submitDirect(request, new HandlerCall());
+    }
+
+    /**
+     * Handle a request of the same process on the executor, i.e., with
+     * handleDirectreq(), and free the result if the caller abandons the call
+     *
+     * @param request the request
+     * @param call    the call, abandoned by the caller if it stops waiting
+     * @return the result of handleDirectreq(), or null if abandoned
+     * @throws RejectedExecutionException if the queue is full, or the
+     *                                    function has been stopped.
+     */
+    public final Future<Object> submitDirect(final Request<?> request,
+                                             final HandlerCall call) {
+        return submit(new Callable<Object>() {
+            @Override
+            public Object call() throws AuthFailureError {
+                return call.complete(handleDirectreq(request));
+            }
+        });
+    }
+
+    /**
+     * Handle a batch of requests of the same process on the executor, i.e.,
+     * with handleBatchreq()
+     *
+     * @param requests the requests
+     * @return the result of handleBatchreq()
+     * @throws RejectedExecutionException if the queue is full, or the
+     *                                    function has been stopped.
+     */
+    public final Future<Object> submitBatch(final Request<?>[] requests) {
+        return submitBatch(requests, new HandlerCall());
+    }
+
+    /**
+     * Handle a batch of requests of the same process on the executor, i.e.,
+     * with handleBatchreq(), and free the block of the responses if the
+     * caller abandons the call
+     *
+     * @param requests the requests
+     * @param call     the call, abandoned by the caller if it stops waiting
+     * @return the result of handleBatchreq(), or null if abandoned
+     * @throws RejectedExecutionException if the queue is full, or the
+     *                                    function has been stopped.
+     */
+    public final Future<Object> submitBatch(final Request<?>[] requests,
+                                            final HandlerCall call) {
+        return submit(new Callable<Object>() {
+            @Override
+            public Object call() throws AuthFailureError {
+                return call.complete(handleBatchreq(requests));
+            }
+        });
+    }
+
+    /**
+     * Batch the requests of the same process, i.e., the requests received
+     * within a window, or up to a number of requests, are handled by one
+     * call of handleBatchreq().
+     *
+     * @param maxItems the largest number of requests of a batch, or 1 to
+     *                 handle each request on its own
+     * @param windowMs the longest time to wait for the requests of a batch
+     * @return The VolleyIPCFunction object
+     */
+    public final synchronized VolleyIPCFunction setBatching(int maxItems,
+                                                            long windowMs) {
+        if (maxItems < 1 || windowMs < 0) throw new IllegalArgumentException
+                ("Invalid batching " + maxItems + ", " + windowMs);
+        batchMaxItems = maxItems;
+        batchWindowMs = windowMs;
+        return this;
+    }
+
+    /**
+     * Get the largest number of requests of a batch, or 1 or less if the
+     * requests are not batched
+     */
+    public final int getBatchMaxItems() {
+        return batchMaxItems;
+    }
+
+    /**
+     * Get the longest time to wait for the requests of a batch
+     */
+    public final long getBatchWindowMs() {
+        return batchWindowMs;
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService executor = this.executor;
+        if (executor != null) return executor;
+
+        synchronized (workerLock) {
+            if (this.executor == null) setWorkerPool(Runtime.getRuntime()
+                    .availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+            return this.executor;
+        }
+    }
+
+    /**
+     * Handle the requests on a fixed pool of threads, which are stopped when
+     * idle
+     *
+     * @param nThreads      the number of threads
+     * @param queueCapacity the number of requests waiting for a thread,
+     *                      before rejecting requests.
+     * @return The VolleyIPCFunction object
+     */
+    public final VolleyIPCFunction setWorkerPool(int nThreads, int
+            queueCapacity) {
+        final String name = TAG;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(nThreads, nThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new
+                ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            private final AtomicInteger nThreads = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + nThreads
+                        .incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return setExecutor(pool);
+    }
+
+    /**
+     * Handle the requests on an executor, i.e., a work-stealing pool. The
+     * executor is shut down when the function is stopped.
+     *
+     * @param executor the executor, which rejects requests with
+     *                 {@link RejectedExecutionException} when overloaded.
+     * @return The VolleyIPCFunction object
+     */
+    public final VolleyIPCFunction setExecutor(ExecutorService executor) {
+        synchronized (workerLock) {
+            if (this.executor != null) this.executor.shutdown();
+            this.executor = executor;
+        }
+        return this;
+    }
+
+    /**
+     * Get the number of requests waiting for a worker
+     */
+    public int getQueueDepth() {
+        return nQueued.get();
+    }
+
+    /**
+     * Get the number of requests handled
+     */
+    public long getNHandled() {
+        return nHandled.get();
+    }
+
+    /**
+     * Get the number of requests rejected
+     */
+    public long getNRejected() {
+        return nRejected.get();
+    }
+
+    /**
+     * Get the mean time taken by the handlers
+     */
+    public long getMeanHandlerNanos() {
+        long handled = nHandled.get();
+        return handled == 0 ? 0 : totalHandlerNanos.get() / handled;
+    }
+
+    /**
+     * Get the longest time taken by a handler
+     */
+    public long getMaxHandlerNanos() {
+        return maxHandlerNanos.get();
+    }
+
+    private boolean supports(int ipcType) {
+        if (supportedIPCs == null) return false;
+        for (int type : supportedIPCs) if (type == ipcType) return true;
+        return false;
+    }
+
+    /**
+     * Receives the requests over the {@link Messenger} of the function, on
+     * a thread of its own, and hands them to the workers. Called by run(), if
+     * the function supports FORCE_ANDROID_IPC_TYPE_MESSENGER.
+     */
+    protected final void startMessenger() {
+        synchronized (workerLock) {
+            if (messenger != null) return;
+
+            messengerThread = new HandlerThread(TAG + "-messenger");
+            messengerThread.start();
+            messenger = new Messenger(new Handler(messengerThread.getLooper
+                    ()) {
+                @Override
+                public void handleMessage(Message msg) {
+                    switch (msg.what) {
+                        case IPCUtil.MSG_FUNCTION_REQUEST:
+                            onMessengerRequest((Bundle) msg.obj, msg.replyTo);
+                            break;
+                        default:
+                            super.handleMessage(msg);
+                    }
+                }
+            });
+        }
+    }
+
+    private void onMessengerRequest(final Bundle bundle, final Messenger
+            replyTo) {
+        final String reqID = bundle.getString(IPCUtil.REQ_ID_EXTRA_NAME);
+        if (replyTo == null) {
+            // the writer of a body in a pipe waits until it is closed
+            IPCUtil.closeMessageBody(bundle, IPCUtil.POSTBODY_FD_EXTRA_NAME,
+                    null, false);
+            return;
+        }
+
+        try {
+            submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    try {
+                        handle();
+                    } catch (Throwable e) {
+                        // the Future of the executor is not read
+                        Log.e(TAG, e.toString());
+                        IPCUtil.replyMessage(replyTo, reqID, null, e
+                                .toString());
+                    }
+                    return null;
+                }
+
+                private void handle() throws Exception {
+                    Intent intent = IPCUtil.buildRequestIntent
+                            (FORCECOM_FUNCTION_NAME, bundle.getString(IPCUtil
+                                    .FUNCURL_EXTRA_NAME), bundle.getString
+                                    (IPCUtil.METHOD_EXTRA_NAME), IPCUtil
+                                    .getMessageBody(bundle, IPCUtil
+                                            .POSTBODY_EXTRA_NAME, IPCUtil
+                                            .POSTBODY_FD_EXTRA_NAME), reqID);
+                    intent.putExtra(IPCUtil.BODY_CONTENT_TYPE_EXTRA_NAME,
+                            bundle.getString(IPCUtil
+                                    .BODY_CONTENT_TYPE_EXTRA_NAME));
+
+                    Object response = handleMessengerreq(intent);
+                    if (response == NO_HANDLER) {
+                        IPCUtil.replyMessageUnsupported(replyTo, reqID);
+                        return;
+                    }
+                    // the requester reads the block from the shared Heap
+                    if (response instanceof Integer && (Integer) response
+                            >= 0 && isHeapShared(bundle.getString(IPCUtil
+                            .SHARED_HEAP_EXTRA_NAME)))
+                        IPCUtil.replyMessage(replyTo, reqID, (Integer)
+                                response);
+                    else IPCUtil.replyMessage(replyTo, reqID, toReplyBody
+                            (response), null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, e.toString());
+            IPCUtil.closeMessageBody(bundle, IPCUtil.POSTBODY_FD_EXTRA_NAME,
+                    null, false);
+            IPCUtil.replyMessage(replyTo, reqID, null, "Rejected by " +
+                    FORCECOM_FUNCTION_NAME);
+        }
+    }
+
+    /**
+     * Check if the Heap of the function is shared with a requester
+     *
+     * @param sharedPath path of the shared Heap of the requester, if any
+     */
+    private static boolean isHeapShared(String sharedPath) {
+        if (sharedPath == null) return false;
+        File sharedFile = HeapFactory.getSharedFile();
+        return sharedFile != null && sharedFile.getPath().equals(sharedPath);
+    }
+
+    /**
+     * Convert the response of a handler to the body of a reply to another
+     * process, i.e., a block of the Heap is copied out, and freed.
+     */
+    private byte[] toReplyBody(Object response) {
+        if (response instanceof byte[]) return (byte[]) response;
+        if (response instanceof Integer)
+            return HeapUtil.getBlockData((Integer) response, TAG);
+        return null;
+    }
+
+    /**
+     * Get the {@link Messenger} of the function, to be handed to its
+     * clients, if it supports FORCE_ANDROID_IPC_TYPE_MESSENGER and has
+     * been started
+     */
+    public final Messenger getMessenger() {
+        return messenger;
+    }
+
     /**
      * Returns the response of synchronous callback requests
      *
@@ -316,6 +790,109 @@ public abstract class VolleyIPCFunction extends Thread {
     public abstract Runnable handleGETreq(Intent intent, Request<?> request);
 
 
+    /**
+     * Handles a request of the same process, called directly, i.e., by
+     * {@link com.force.react.toolbox.DirectStack}, on a worker of the
+     * function, or by {@link com.force.react.toolbox.HeapStack}.
+     * <p>
+     * Runs the {@link Runnable} of handleGETreq() with a null intent for GET
+     * requests, or of the handler of the method with an Intent built from
+     * the request otherwise, and returns {@link #getResponse()}, one request
+     * at a time, as the response is shared. Functions that can handle
+     * requests concurrently override this, and return the response of the
+     * request.
+     *
+     * @param request the request
+     * @return the response, i.e., a byte[] body, or an Integer reference to
+     * a block of the Heap, or {@link #NO_HANDLER}.
+     * @throws AuthFailureError if the body of the request fails
+     */
+    public Object handleDirectreq(Request<?> request) throws AuthFailureError {
+        synchronized (this) {
+            Runnable task = request.getMethod() == Request.Method.GET ?
+                    handleGETreq(null, request) : getHandler(IPCUtil
+                    .buildRequestIntent(FORCECOM_FUNCTION_NAME, request, null));
+            if (task == null) return NO_HANDLER;
+            task.run();
+            return getResponse();
+        }
+    }
+
+    /**
+     * Handles a batch of requests of the same process, on a worker of the
+     * function, if batching is set with setBatching(), i.e., by
+     * {@link com.force.react.toolbox.IPCBatcher}.
+     * <p>
+     * Handles each request with handleDirectreq(), converts each response as
+     * {@link com.force.react.toolbox.HeapStack} does, and writes the
+     * responses to one block of the Heap with
+     * {@link HeapUtil#putBatchData(ByteBuffer[], String)}, reading the
+     * responses in the Heap in place. Functions that amortise the cost of
+     * the requests of a batch override this, and write the block of the
+     * responses in the same layout.
+     * <p>
+     * The requests whose callers have stopped waiting are null, and are
+     * skipped.
+     *
+     * @param requests the requests, in the order of their responses
+     * @return the reference to the block of the responses, or an error code
+     * of {@link Heap}
+     * @throws AuthFailureError if the body of a request fails
+     */
+    public int handleBatchreq(Request<?>[] requests) throws AuthFailureError {
+        ByteBuffer[] bodies = new ByteBuffer[requests.length];
+        int[] borrowed = new int[requests.length];
+        Arrays.fill(borrowed, Heap.NULL_REFERENCE);
+        try {
+            for (int i = 0; i < requests.length; i++) {
+                Request<?> request = requests[i];
+                if (request == null) continue;
+
+                // no handler, or no response, falls back
+                Object result = handleDirectreq(request);
+                if (result instanceof byte[]) {
+                    bodies[i] = ByteBuffer.wrap((byte[]) result);
+                } else if (result instanceof Integer) {
+                    int reference = (Integer) result;
+                    if (request.getClass() == ByteRequest.class && reference
+                            > 0) {
+                        bodies[i] = HeapUtil.borrowBlockData(reference, TAG);
+                        if (bodies[i] != null) borrowed[i] = reference;
+                    } else bodies[i] = ByteBuffer.allocate(4).putInt(0,
+                            reference);
+                }
+            }
+            return HeapUtil.putBatchData(bodies, TAG);
+        } finally {
+            // frees the responses in the Heap, once copied
+            for (int reference : borrowed)
+                if (reference >= 0) HeapUtil.releaseBlockData(reference, TAG);
+        }
+    }
+
+    /**
+     * Handles a request received over the {@link Messenger} of the
+     * function, on a worker of the function.
+     * <p>
+     * Runs the {@link Runnable} of the handler of the method with the
+     * request Intent, and returns {@link #getResponse()}, one request at a
+     * time, as the response is shared. Functions that can handle requests
+     * concurrently override this, and return the response of the request.
+     *
+     * @param intent the request Intent
+     * @return the response, i.e., a byte[] body, or an Integer reference to
+     * a block of the Heap, which is copied into the reply, or
+     * {@link #NO_HANDLER}.
+     */
+    public Object handleMessengerreq(Intent intent) {
+        synchronized (this) {
+            Runnable task = getHandler(intent);
+            if (task == null) return NO_HANDLER;
+            task.run();
+            return getResponse();
+        }
+    }
+
     /**
      * Get the LocalBroadcastManager instance to be used with local broadcasts.
      *
@@ -408,6 +985,14 @@ public abstract class VolleyIPCFunction extends Thread {
 
         broadcastReceiver = null;
         broadcastManager = null;
+
+        synchronized (workerLock) {
+            if (executor != null) executor.shutdown();
+            IPCBatcher.invalidate(this);
+            if (messengerThread != null) messengerThread.quit();
+            messengerThread = null;
+            messenger = null;
+        }
         try {
             finalize();
         } catch (Throwable throwable) {
@@ -415,4 +1000,48 @@ public abstract class VolleyIPCFunction extends Thread {
             throwable.printStackTrace();
         }
     }
+
+    /**
+     * A call of a handler on the executor. The caller abandons the call if it
+     * stops waiting for the result, i.e., times out, and the result, if a
+     * reference to a block of the Heap, is freed, whether the handler has
+     * returned already, or returns later.
+     */
+    public static final class HandlerCall {
+        private static final String TAG = HandlerCall.class.getName();
+
+        private boolean returned = false;
+        private boolean abandoned = false;
+        private Object result = null;
+
+        /**
+         * Abandon the call, and free its result
+         */
+        public synchronized void abandon() {
+            abandoned = true;
+            if (returned) free(result);
+            result = null;
+        }
+
+        synchronized Object complete(Object result) {
+            returned = true;
+            if (abandoned) {
+                free(result);
+                return null;
+            }
+            this.result = result;
+            return result;
+        }
+
+        private static void free(Object result) {
+            if (!(result instanceof Integer) || (Integer) result < 0) return;
+
+            try {
+                HeapFactory.getInstance().free((Integer) result);
+            } catch (Exception e) {
+                Log.e(TAG, "Heap: unsuccessful call to free() \n" + e
+                        .toString());
+            }
+        }
+    }
 }
@@ -1,10 +1,16 @@
 package com.force.react.toolbox;
 
+import android.os.Messenger;
+import android.util.Log;
+
+import com.force.react.AuthFailureError;
 import com.force.react.IPC;
 import com.force.react.IPCResponse;
 import com.force.react.IPCUtil;
-import com.force.react.NetworkResponse;
+import com.force.react.NetworkError;
+import com.force.react.RejectedError;
 import com.force.react.Request;
+import com.force.react.TimeoutError;
 import com.force.react.VolleyError;
 import com.force.react.VolleyIPCFunction;
 import com.force.react.VolleyLog;
@@ -14,6 +20,10 @@ import java.io.IOException;
 /**
  * Implements OS specific IPC procedures
  * <p>
+ * Tries the IPC types supported by the function in the order of their
+ * priority, and falls back to the next one on failures. The IPC types
+ * that are consistently slow, or failing, are tried last.
+ * <p>
  * @author Chathura Sarathchandra
  */
 
@@ -22,9 +32,9 @@ public class AndroidIPC implements IPC {
     private static final String TAG = AndroidIPC.class.getName();
 
     /**
-     * IPC Object of chosen sub-type
+     * IPC types to be tried, in order
      */
-    private IPCStack mIPCStack;
+    private final int[] chain;
 
     /**
      * Supported IPC types of the function.
@@ -32,10 +42,16 @@ public class AndroidIPC implements IPC {
     private int[] functionMeta;
 
     /**
-     * The priority of chosen IPC method.
-     * Currently chooses highest priority.
+     * True, if the function is in this process
      */
-    private int ipcPriority = 0;
+    private final boolean inProcess;
+
+    /**
+     * {@link Messenger} of the function, returned by the lookup, if any
+     */
+    private final Messenger functionMessenger;
+
+    private final IPCHealth health = IPCHealth.getInstance();
 
     /**
      * AndroidIPC empty constructor
@@ -43,65 +59,261 @@ public class AndroidIPC implements IPC {
      * @param metaData Supported IPC types of the function
      */
     public AndroidIPC(int[] metaData) {
+        this(metaData, false);
+    }
+
+    /**
+     * AndroidIPC constructor
+     *
+     * @param metaData  Supported IPC types of the function
+     * @param inProcess true, if the function is in this process, i.e., found
+     *                  in the local catalogue.
+     */
+    public AndroidIPC(int[] metaData, boolean inProcess) {
+        this(metaData, inProcess, null);
+    }
+
+    /**
+     * AndroidIPC constructor
+     *
+     * @param metaData          Supported IPC types of the function
+     * @param inProcess         true, if the function is in this process,
+     *                          i.e., found in the local catalogue.
+     * @param functionMessenger {@link Messenger} of the function, returned
+     *                          by the lookup, if any
+     */
+    public AndroidIPC(int[] metaData, boolean inProcess, Messenger
+            functionMessenger) {
         //Get handle to the service catalogue data.
         functionMeta = metaData;
+        this.inProcess = inProcess;
+        this.functionMessenger = functionMessenger;
+        chain = chooseIPCs();
+    }
 
-        // Check available IPCs of the local function.
-        chooseIPC();
+    /**
+     * Check if the function supports an IPC type
+     */
+    private boolean supports(int ipcType) {
+        for (int type : functionMeta) if (type == ipcType) return true;
+        return false;
+    }
+
+    /**
+     * Order the IPC types supported by the function and this process by
+     * their priority, i.e., as listed by the function, and the demoted ones
+     * last
+     */
+    private int[] chooseIPCs() {
+        int[] types = new int[functionMeta.length + 1];
+        int nTypes = 0;
+
+        // Functions of this process are called directly, if they take
+        // requests without Intents. HEAP is not tried after DIRECT, as it
+        // calls the same handler on the dispatcher, without a timeout.
+        boolean direct = inProcess && (supports(IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_DIRECT) || supports(IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_HEAP));
+        if (direct) types[nTypes++] = IPCUtil.FORCE_ANDROID_IPC_TYPE_DIRECT;
+
+        for (int type : functionMeta)
+            if (isAvailable(type) && indexOf(types, nTypes, type) < 0 &&
+                    !(direct && type == IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP))
+                types[nTypes++] = type;
+
+        int[] ordered = new int[nTypes];
+        int n = 0;
+        for (int i = 0; i < nTypes; i++)
+            if (!health.isDemoted(types[i])) ordered[n++] = types[i];
+        for (int i = 0; i < nTypes; i++)
+            if (health.isDemoted(types[i])) ordered[n++] = types[i];
+        return ordered;
+    }
+
+    private static int indexOf(int[] types, int nTypes, int type) {
+        for (int i = 0; i < nTypes; i++) if (types[i] == type) return i;
+        return -1;
     }
 
-    private void chooseIPC() {
-        /**
-         * Check available IPC types from the service catalogue, but
-         * currently selects the one with the highest priority
-         * (the first in the list).
-         **/
-        switch (functionMeta[ipcPriority]) {
+    /**
+     * Check if an IPC type can be used with the function
+     */
+    private boolean isAvailable(int ipcType) {
+        switch (ipcType) {
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP:
-                mIPCStack = new HeapStack();
-                break;
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_DIRECT:
+                // call the function object
+                return inProcess;
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP:
-                mIPCStack = new HeapLBStack();
-                break;
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_LBROADCAST:
-                mIPCStack = new LocalBroadcastStack();
-                break;
+                return true;
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_MESSENGER:
-                break;
+                return functionMessenger != null;
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_AIDL:
-                break;
             case IPCUtil.FORCE_ANDROID_IPC_TYPE_BINDER:
-                break;
             default:
-                break;
+                return false;
         }
+    }
 
-        /**
-         * Otherwise: choose the next one in priority.
-         * */
+    /**
+     * Create the {@link IPCStack} of an IPC type, returned by isAvailable()
+     */
+    IPCStack createIPCStack(int ipcType) {
+        switch (ipcType) {
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP:
+                return new HeapStack();
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_DIRECT:
+                return new DirectStack();
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP:
+                return new HeapLBStack();
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_LBROADCAST:
+                return new LocalBroadcastStack();
+            case IPCUtil.FORCE_ANDROID_IPC_TYPE_MESSENGER:
+                return new MessengerStack(functionMessenger);
+            default:
+                throw new IllegalStateException("Unsupported IPC type " +
+                        ipcType);
+        }
+    }
+
+    /**
+     * Get the IPC types to be tried, in order
+     */
+    int[] getChain() {
+        return chain;
     }
 
     /**
-     * Performs the specified request.
+     * Performs the specified request, over the IPC types of the chain in
+     * order, until one of them responds, within the timeout of the request.
+     * The IPC types that fail, or time out, are scored down in
+     * {@link IPCHealth}. Identical GET requests in flight are coalesced by
+     * {@link IPCSingleFlight}.
+     * <p>
+     * Requests that may have reached the function are not sent again,
+     * unless idempotent, i.e., GET and HEAD requests, which are sent over
+     * the network once the IPC types failed, or the timeout expired.
      *
      * @param request       Request to process
      * @param functionName  The name of the function (reversed domain name)
      * @param functionClass the class object of the requesting function,
      *                      returned by the local lookup catalogue.
-     * @return A {@link NetworkResponse} with data and caching metadata; will never be null
-     * @throws VolleyError on errors
+     * @return the response, or null if the request is to be sent over the
+     * network, i.e., none of the IPC types responded to an idempotent request
+     * @throws VolleyError on errors of the request, i.e.,
+     *                     {@link com.force.react.AuthFailureError},
+     *                     {@link RejectedError} if the function rejected the
+     *                     request, or {@link TimeoutError} and
+     *                     {@link NetworkError} if a request that is not
+     *                     idempotent failed.
      */
     @Override
-    public IPCResponse performRequest(Request<?> request, String functionName, VolleyIPCFunction functionClass)
-            throws VolleyError {
+    public IPCResponse performRequest(final Request<?> request, final String
+            functionName, final VolleyIPCFunction functionClass) throws
+            VolleyError {
+        String key = getFlightKey(request, functionName);
+        if (key == null) return performChain(request, functionName,
+                functionClass, request.getTimeoutMs());
+
+        return IPCSingleFlight.getInstance().execute(key, request
+                .getTimeoutMs(), new IPCSingleFlight.Call() {
+            @Override
+            public IPCResponse perform(long timeoutMs) throws VolleyError {
+                return performChain(request, functionName, functionClass,
+                        timeoutMs);
+            }
+
+            @Override
+            public void coalesced() {
+                request.addMarker("ipc-coalesced");
+            }
+        });
+    }
+
+    /**
+     * Get the key of identical requests in flight, i.e., GET requests of the
+     * same class, URL and headers. The class is part of the key, since the
+     * stacks convert the response by the class of the request, e.g., a
+     * {@link ByteRequest} is given a reference to the Heap.
+     *
+     * @return the key, or null if the request is not to be coalesced
+     */
+    static String getFlightKey(Request<?> request, String
+            functionName) {
+        if (!IPCSingleFlight.getInstance().isEnabled()) return null;
 
-        //Perform request.
         try {
-            return mIPCStack.performRequest(request, functionName, functionClass);
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (!IPCUtil.IPC_GET.equals(IPCUtil.getIPCMethod(request)))
+                return null;
+            return functionName + " " + request.getClass().getName() + " "
+                    + request.getUrl() + " " + request.getHeaders();
+        } catch (AuthFailureError e) {
+            Log.e(TAG, e.toString());
+            return null;
+        }
+    }
+
+    private IPCResponse performChain(Request<?> request, String
+            functionName, VolleyIPCFunction functionClass, long timeoutMs)
+            throws VolleyError {
+        boolean idempotent = isIdempotent(request);
+        // one timeout for the whole chain
+        long deadline = System.nanoTime() / 1000000 + timeoutMs;
+
+        for (int ipcType : chain) {
+            long start = System.nanoTime();
+            long remainingMs = deadline - start / 1000000;
+            if (remainingMs <= 0) {
+                // the request may have reached the function
+                if (!idempotent) throw new TimeoutError();
+                return null;
+            }
+
+            IPCResponse response = null;
+            try {
+                response = createIPCStack(ipcType).performRequest(request,
+                        functionName, functionClass, remainingMs);
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+                health.recordFailure(ipcType);
+                // may have reached the function
+                if (!idempotent) throw new NetworkError(e);
+            } catch (TimeoutError e) {
+                // the timeout of the request has expired
+                Log.e(TAG, "Timed out over IPC type " + ipcType);
+                health.recordFailure(ipcType);
+                if (!idempotent) throw e;
+                return null;
+            } catch (RejectedError e) {
+                // the function is overloaded, whichever the IPC type
+                Log.e(TAG, e.toString());
+                throw e;
+            }
+
+            if (response != null) {
+                health.recordSuccess(ipcType, System.nanoTime() - start);
+                return response;
+            }
+            request.addMarker("ipc-fallback-" + ipcType);
         }
+
+        // none of the IPC types could send the request
         return null;
     }
 
+    /**
+     * Check if a request may be sent more than once, i.e., GET and HEAD
+     */
+    private static boolean isIdempotent(Request<?> request) {
+        try {
+            String method = IPCUtil.getIPCMethod(request);
+            return IPCUtil.IPC_GET.equals(method) || IPCUtil.IPC_HEAD.equals
+                    (method);
+        } catch (AuthFailureError e) {
+            Log.e(TAG, e.toString());
+            return false;
+        }
+    }
+
 }
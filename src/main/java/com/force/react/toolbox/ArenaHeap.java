@@ -0,0 +1,345 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implements a {@link Heap} striped over a number of {@link SizeClassHeap}
+ * arenas, each with its own lock, so that threads allocating concurrently do
+ * not queue on a single monitor.
+ * <p>
+ * Each thread is assigned a home arena, round robin, the first time it
+ * allocates, and allocates from it while it has space, trying the other
+ * arenas otherwise. The arena of a block is encoded in the high bits of its
+ * reference, therefore free(), read(), write() and view() from any thread
+ * go to the owning arena without a lookup. Arenas are created on first use.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final public class ArenaHeap implements Heap {
+
+    /**
+     * References of arena i start from i << ARENA_SHIFT
+     */
+    static final int ARENA_SHIFT = 27;
+    /**
+     * The largest arena, 2^27 = 128 MB
+     */
+    static final int MAX_ARENA_SIZE = 1 << ARENA_SHIFT;
+    /**
+     * The number of arenas that fit in the positive reference space
+     */
+    static final int MAX_ARENAS = 1 << (31 - ARENA_SHIFT);
+
+    /**
+     * The arenas, null until first used
+     */
+    private final AtomicReferenceArray<SizeClassHeap> arenas;
+    /**
+     * Size of each arena
+     */
+    private final int arenaSize;
+    /**
+     * The home arena of the next thread
+     */
+    private final AtomicInteger nextArena = new AtomicInteger(0);
+    /**
+     * The home arena of each thread
+     */
+    private final ThreadLocal<Integer> homeArena = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return (nextArena.getAndIncrement() & Integer.MAX_VALUE) %
+                    arenas.length();
+        }
+    };
+
+    /**
+     * Creates an {@link ArenaHeap} object with an arena per processor, that
+     * share DEFAULT_MAX_MEM_SIZE.
+     */
+    ArenaHeap() {
+        this(Math.min(MAX_ARENAS, Math.max(2, Runtime.getRuntime()
+                .availableProcessors())));
+    }
+
+    /**
+     * Creates an {@link ArenaHeap} object with the given number of arenas,
+     * that share DEFAULT_MAX_MEM_SIZE, up to MAX_ARENA_SIZE each.
+     *
+     * @param nArenas number of arenas
+     */
+    ArenaHeap(int nArenas) {
+        this(nArenas, Math.min(MAX_ARENA_SIZE, DEFAULT_MAX_MEM_SIZE /
+                Math.max(1, nArenas)));
+    }
+
+    /**
+     * Creates an {@link ArenaHeap} object
+     *
+     * @param nArenas   number of arenas, up to MAX_ARENAS
+     * @param arenaSize size of each arena, up to MAX_ARENA_SIZE
+     */
+    ArenaHeap(int nArenas, int arenaSize) {
+        if (nArenas <= 0 || nArenas > MAX_ARENAS)
+            throw new IllegalArgumentException("Invalid number of arenas " +
+                    nArenas);
+        if (arenaSize <= 0 || arenaSize > MAX_ARENA_SIZE)
+            throw new IllegalArgumentException("Invalid arena size " +
+                    arenaSize);
+
+        this.arenas = new AtomicReferenceArray<SizeClassHeap>(nArenas);
+        this.arenaSize = arenaSize;
+    }
+
+    /**
+     * Get an arena, creating it if it has not been used before
+     *
+     * @param index index of the arena
+     * @return the arena
+     */
+    private SizeClassHeap arena(int index) {
+        SizeClassHeap arena = arenas.get(index);
+        if (arena != null) return arena;
+
+        // arenas are created rarely, do not allocate the same one twice
+        synchronized (arenas) {
+            arena = arenas.get(index);
+            if (arena == null) {
+                arena = new SizeClassHeap(arenaSize, index << ARENA_SHIFT);
+                arenas.set(index, arena);
+            }
+        }
+        return arena;
+    }
+
+    /**
+     * Get the arena that owns a reference
+     *
+     * @param reference a non-negative reference
+     * @return the arena, or null if the reference is not of any arena.
+     */
+    private SizeClassHeap owner(int reference) {
+        int index = reference >>> ARENA_SHIFT;
+        return index < arenas.length() ? arenas.get(index) : null;
+    }
+
+    @Override
+    public int malloc(int size) {
+        if (size <= 0) return NULL_REFERENCE;
+
+        int home = homeArena.get();
+        for (int i = 0; i < arenas.length(); i++) {
+            int reference = arena((home + i) % arenas.length()).malloc(size);
+            if (reference != INSUFFICIENT_MEMORY) return reference;
+        }
+
+        // ran out of memory in all arenas
+        return INSUFFICIENT_MEMORY;
+    }
+
+    /**
+     * Blocks may be freed from any thread, and go back to the owning arena.
+     */
+    @Override
+    public void free(int reference) {
+        if (reference < 0) throw new IllegalArgumentException("Invalid " +
+                "Reference" + reference);
+
+        SizeClassHeap arena = owner(reference);
+
+        if (arena == null)
+            throw new IllegalArgumentException("Memory block "
+                    + reference + " could not be found! in Heap of " +
+                    arenas.length() + " arenas");
+
+        arena.free(reference);
+    }
+
+    /**
+     * The block is moved to another arena, only if the owning arena has no
+     * space for it.
+     */
+    @Override
+    public int realloc(int reference, int size) {
+        if (reference < 0) return malloc(size);
+
+        SizeClassHeap arena = owner(reference);
+        if (arena == null) return INVALID_REFERENCE;
+
+        int newReference = arena.realloc(reference, size);
+        if (newReference != INSUFFICIENT_MEMORY) return newReference;
+
+        // need to move the block to another arena
+        byte[] data = arena.read(reference);
+        if (data == null) return INVALID_REFERENCE;
+
+        newReference = malloc(size);
+
+        // could not allocate a new block
+        if (newReference < 0) return newReference;
+
+        write(newReference, data);
+        arena.free(reference);
+
+        return newReference;
+    }
+
+    @Override
+    public int calloc(int nelem, int elsize) {
+        if (nelem <= 0 || elsize <= 0 || nelem > Integer.MAX_VALUE / elsize)
+            return NULL_REFERENCE;
+
+        int home = homeArena.get();
+        for (int i = 0; i < arenas.length(); i++) {
+            int reference = arena((home + i) % arenas.length()).calloc(nelem,
+                    elsize);
+            if (reference != INSUFFICIENT_MEMORY) return reference;
+        }
+
+        // ran out of memory in all arenas
+        return INSUFFICIENT_MEMORY;
+    }
+
+    @Override
+    public int write(int reference, byte[] data) {
+        //reference can't be less than 0
+        if (reference < 0) return NULL_REFERENCE;
+
+        SizeClassHeap arena = owner(reference);
+        return arena == null ? INVALID_REFERENCE : arena.write(reference, data);
+    }
+
+    @Override
+    public byte[] read(int reference) {
+        //reference can't be less negative
+        if (reference < 0) return null;
+
+        SizeClassHeap arena = owner(reference);
+        return arena == null ? null : arena.read(reference);
+    }
+
+    @Override
+    public ByteBuffer view(int reference) {
+        if (reference < 0) return null;
+
+        SizeClassHeap arena = owner(reference);
+        return arena == null ? null : arena.view(reference);
+    }
+
+    @Override
+    public void release(int reference) {
+        SizeClassHeap arena = reference < 0 ? null : owner(reference);
+
+        if (arena == null) throw new IllegalStateException(
+                "The referred block " + reference + " has not been borrowed!");
+
+        arena.release(reference);
+    }
+
+    /**
+     * The memory is split into arenas, therefore, always returns null.
+     */
+    @Override
+    public byte[] getMemory() {
+        return null;
+    }
+
+    /**
+     * Get the total size of the arenas created so far
+     */
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (int i = 0; i < arenas.length(); i++) {
+            SizeClassHeap arena = arenas.get(i);
+            if (arena != null) size += arena.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int getNBlocks() {
+        int nBlocks = 0;
+        for (int i = 0; i < arenas.length(); i++) {
+            SizeClassHeap arena = arenas.get(i);
+            if (arena != null) nBlocks += arena.getNBlocks();
+        }
+        return nBlocks;
+    }
+
+    @Override
+    public int getNFreeBlocks() {
+        return freeSpace().nBlocks;
+    }
+
+    /**
+     * Get the largest free block of any arena
+     */
+    @Override
+    public int getLargestFreeBlock() {
+        return freeSpace().largest;
+    }
+
+    @Override
+    public float getFragmentation() {
+        return freeSpace().getFragmentation();
+    }
+
+    /**
+     * Get the free memory of the arenas created so far
+     */
+    private FreeSpace freeSpace() {
+        FreeSpace freeSpace = new FreeSpace();
+        for (int i = 0; i < arenas.length(); i++) {
+            SizeClassHeap arena = arenas.get(i);
+            if (arena != null) freeSpace.add(arena.freeSpace());
+        }
+        return freeSpace;
+    }
+
+    /**
+     * Returns a snapshot of the blocks of each arena in turn, in no
+     * particular order within an arena.
+     */
+    @Override
+    public LinkedList<HeapBlock> getBlocks() {
+        LinkedList<HeapBlock> blocks = new LinkedList<HeapBlock>();
+        for (int i = 0; i < arenas.length(); i++) {
+            SizeClassHeap arena = arenas.get(i);
+            if (arena != null) blocks.addAll(arena.getBlocks());
+        }
+        return blocks;
+    }
+
+    @Override
+    public HeapBlock getBlock(int reference) {
+        if (reference < 0) return null;
+
+        SizeClassHeap arena = owner(reference);
+        return arena == null ? null : arena.getBlock(reference);
+    }
+
+    /**
+     * Get the number of arenas
+     */
+    int getNArenas() {
+        return arenas.length();
+    }
+
+    /**
+     * Get the index of the arena that owns a reference
+     *
+     * @param reference a non-negative reference
+     * @return the index of the arena
+     */
+    static int arenaOf(int reference) {
+        return reference >>> ARENA_SHIFT;
+    }
+}
@@ -3,16 +3,28 @@ package com.force.react.toolbox;
 import android.util.Log;
 
 import com.force.react.Heap;
-import com.force.react.HeapUtil;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.ListIterator;
 
 /**
  * Implements a {@link Heap}, that uses a byte[] as a contiguous memory
  * space.
  * <p>
+ * Blocks are linked to their neighbours in the memory, and indexed by
+ * reference. A freed block is coalesced with its free neighbours only,
+ * therefore, free() takes constant time.
+ * <p>
+ * A relocatable heap hands out handles instead of positions in the memory
+ * as references, therefore, {@link #compact()} can slide blocks down
+ * without changing their references. The heap compacts itself when malloc()
+ * would fail otherwise. Borrowed blocks are not moved.
+ * <p>
+ * An elastic heap grows and shrinks as set by its {@link HeapConfig}.
+ * <p>
  *
  * @author Chathura Sarathchandra
  */
@@ -22,10 +34,15 @@ final public class ByteArrayHeap implements Heap {
 
     private static final String TAG = ByteArrayHeap.class.getName();
     /**
-     * Meta data of the memory blocks
+     * Meta data of the memory blocks, keyed by reference
      */
-    private volatile LinkedList<HeapBlock> blockList = new
-            LinkedList<HeapBlock>();
+    private final HashMap<Integer, HeapBlock> blocks = new HashMap<Integer,
+            HeapBlock>();
+    /**
+     * The lowest and the highest blocks in the memory
+     */
+    private HeapBlock first;
+    private HeapBlock last;
     /**
      * The heap
      */
@@ -38,12 +55,55 @@ final public class ByteArrayHeap implements Heap {
      * True, if the array is scalable, otherwise, false.
      */
     private boolean elasticHeap = false;
+    /**
+     * How the heap grows, up to maxSize, and shrinks, down to minSize
+     */
+    private int growthPolicy = HeapConfig.GROWTH_STEP;
+    private int growthStep = DEFAULT_MEM_STEP;
+    private int maxSize = Integer.MAX_VALUE;
+    private int minSize;
+    private float shrinkRatio = 0;
+    private int shrinkFrees = HeapConfig.DEFAULT_SHRINK_FREES;
+    private long shrinkIntervalMs = HeapConfig.DEFAULT_SHRINK_INTERVAL_MS;
+    /**
+     * Frees in a row that left the top below shrinkRatio, and when the heap
+     * was last resized
+     */
+    private int nFreesBelowRatio = 0;
+    private long lastResizeNanos = System.nanoTime();
+    /**
+     * True, if references are handles, otherwise, positions in the memory.
+     */
+    private boolean relocatable = false;
+    /**
+     * The next new handle, and the handles of removed blocks
+     */
+    private int nextHandle = 0;
+    private final ArrayDeque<Integer> freeHandles = new ArrayDeque<Integer>();
 
     /**
      * Creates a {@link ByteArrayHeap} object of size DEFAULT_MAX_MEM_SIZE
      */
     ByteArrayHeap() {
         this.memory = new byte[DEFAULT_MAX_MEM_SIZE];
+        this.minSize = memory.length;
+    }
+
+    /**
+     * Creates a {@link ByteArrayHeap} object with the given sizing
+     *
+     * @param config the sizing of the heap
+     */
+    ByteArrayHeap(HeapConfig config) {
+        this.memory = new byte[config.initialSize];
+        this.minSize = memory.length;
+        this.maxSize = config.maxSize;
+        this.growthPolicy = config.growthPolicy;
+        this.growthStep = config.growthStep;
+        this.shrinkRatio = config.shrinkRatio;
+        this.shrinkFrees = config.shrinkFrees;
+        this.shrinkIntervalMs = config.shrinkIntervalMs;
+        this.elasticHeap = config.elastic;
     }
 
     /**
@@ -53,6 +113,7 @@ final public class ByteArrayHeap implements Heap {
      */
     ByteArrayHeap(byte[] memory) {
         this.memory = memory;
+        this.minSize = memory.length;
     }
 
     /**
@@ -62,6 +123,7 @@ final public class ByteArrayHeap implements Heap {
      */
     ByteArrayHeap(int size) {
         memory = new byte[size];
+        minSize = size;
     }
 
     /**
@@ -73,8 +135,7 @@ final public class ByteArrayHeap implements Heap {
      * of the suitable memory block.
      */
     synchronized HeapBlock findFreeBlock(int size) {
-        if (blockList.isEmpty()) return null;
-        for (HeapBlock block : blockList)
+        for (HeapBlock block = first; block != null; block = block.next)
             if (block.free && block.size >= size) return block;
 
         // could not find a free block
@@ -88,32 +149,23 @@ final public class ByteArrayHeap implements Heap {
      * @return new instance of {@link HeapBlock}, otherwise null.
      */
     synchronized HeapBlock requestMemory(int size) {
-        System.out.println("Heap size " + memory.length + " requested size "
-                + size + " top + size " + (top + size));
         HeapBlock newBlock = new HeapBlock();
 
         // check for overflow
         if (memory.length < (top + size)) {
-            // Scale the Heap only if it helps and when requesting no more
-            // than (free_space + (DEFAULT_MAX_MEM_SIZE / 2)).
-            // It also makes sure that the heap is increased only by
-            // (DEFAULT_MAX_MEM_SIZE/ 2) at a time.
-            if (elasticHeap && (memory.length - top + (DEFAULT_MEM_STEP))
-                    >= size) {
-                System.out.println("Inside Heap size " + memory.length + " " +
-                        "requested size "
-                        + size + " top + size " + (top + size) + " elastic: "
-                        + elasticHeap);
-                byte[] newMemory = new byte[memory.length + (DEFAULT_MEM_STEP)];
-                System.arraycopy(memory, 0, newMemory, 0, memory.length);
-                memory = newMemory;
-            } else return null; // asking too much space
+            int newSize = elasticHeap ? grownSize((long) top + size) : 0;
+            if (newSize == 0) return null; // asking too much space
+
+            memory = Arrays.copyOf(memory, newSize);
+            lastResizeNanos = System.nanoTime();
         }
 
         // initialize new block
-        newBlock.reference = top;
+        newBlock.offset = top;
+        newBlock.reference = newReference(top);
         newBlock.size = size;
-        blockList.add(newBlock);
+        append(newBlock);
+        blocks.put(newBlock.reference, newBlock);
 
         // set new top; top+size+size(reference)
         top = top + size + 1;
@@ -134,8 +186,10 @@ final public class ByteArrayHeap implements Heap {
         if (newBlock == null) {
             newBlock = requestMemory(size);
 
-            // failed requestingMemory -- ran out of memory
-            if (newBlock == null) return INSUFFICIENT_MEMORY;
+            // failed requestingMemory -- ran out of memory, unless
+            // compacting the heap frees enough space
+            if (newBlock == null) return compact() > 0 ? malloc(size) :
+                    INSUFFICIENT_MEMORY;
             else {
                 newBlock.free = false;
 //                return newBlock.reference;
@@ -160,70 +214,170 @@ final public class ByteArrayHeap implements Heap {
         return newBlock.reference;
     }
 
-    private void merge() {
-        ListIterator<HeapBlock> iterator = blockList.listIterator();
+    /**
+     * Get the size the heap has to grow to, for the given top
+     *
+     * @param required the required size
+     * @return the new size, or 0 if the heap cannot grow that much.
+     */
+    private int grownSize(long required) {
+        long newSize;
+        if (growthPolicy == HeapConfig.GROWTH_GEOMETRIC) {
+            newSize = Math.max(1, memory.length);
+            while (newSize < required) newSize = newSize * 2;
+        } else {
+            // scale by a single step, only if it helps
+            newSize = (long) memory.length + growthStep;
+        }
 
-        while (iterator.hasNext()) {
-            HeapBlock current = iterator.next();
+        newSize = Math.min(newSize, maxSize);
+        return newSize < required ? 0 : (int) newSize;
+    }
 
-            // Current block is not free
-            if (!current.isFree()) continue;
+    /**
+     * Give back the memory above the top of the heap, down to twice the
+     * top, once the top has stayed below shrinkRatio of the heap for
+     * shrinkFrees frees, and shrinkIntervalMs since the heap was last
+     * resized. The heap does not shrink below its initial size.
+     */
+    private void shrink() {
+        if (!elasticHeap || memory.length <= minSize || top >= memory.length
+                * shrinkRatio) {
+            nFreesBelowRatio = 0;
+            return;
+        }
 
-            // remove last block if its free.
-            if (!iterator.hasNext()) {
-                top = current.reference; // reset the top
-                iterator.remove();
-                return;
-            }
+        if (++nFreesBelowRatio < shrinkFrees || System.nanoTime() -
+                lastResizeNanos < shrinkIntervalMs * 1000000) return;
 
-            HeapBlock next = iterator.next();
+        memory = Arrays.copyOf(memory, Math.max(minSize, top * 2));
+        nFreesBelowRatio = 0;
+        lastResizeNanos = System.nanoTime();
+    }
 
-            // combine all free blocks to the right side of the heap
-            while (next.isFree()) {
-                current.size = current.size + (next.size + 1); // resize
-                iterator.remove(); // removes the next free block
+    /**
+     * Coalesce a freed block with its free neighbours, and give the memory
+     * back to the top of the heap if the block is the highest block.
+     *
+     * @param block the freed block
+     */
+    private void coalesce(HeapBlock block) {
+        // absorb the next block
+        if (block.next != null && block.next.free) absorbNext(block);
+
+        // get absorbed by the previous block
+        if (block.prev != null && block.prev.free) {
+            block = block.prev;
+            absorbNext(block);
+        }
 
-                if (iterator.hasNext()) {
-                    next = iterator.next();
-                } else { // reached the last element
-                    iterator.previous();
-                    break;
-                }
-            }
+        // remove last block if its free.
+        if (block == last) {
+            top = block.offset; // reset the top
+            last = block.prev;
+            if (last == null) first = null;
+            else last.next = null;
+            removeReference(block);
         }
     }
 
-    private void merge2() {
-        ListIterator<HeapBlock> iterator = (ListIterator<HeapBlock>) blockList.iterator();
+    /**
+     * Merge the next block into a block
+     *
+     * @param block the block
+     */
+    private void absorbNext(HeapBlock block) {
+        HeapBlock next = block.next;
+        block.size = block.size + (next.size + 1); // resize
+        block.next = next.next;
+        if (next.next == null) last = block;
+        else next.next.prev = block;
+        removeReference(next);
+    }
 
-        while (iterator.hasNext()) {
-            HeapBlock current = iterator.next();
+    /**
+     * Get the reference of a new block
+     *
+     * @param offset position of the block in the memory
+     * @return a handle, if the heap is relocatable, otherwise, the position.
+     */
+    private int newReference(int offset) {
+        if (!relocatable) return offset;
+        return freeHandles.isEmpty() ? nextHandle++ : freeHandles.pop();
+    }
 
-            // Current block is not free
-            if (!current.isFree()) continue;
+    /**
+     * Remove a block from the index, and reuse its handle
+     *
+     * @param block the removed block
+     */
+    private void removeReference(HeapBlock block) {
+        blocks.remove(block.reference);
+        if (relocatable) freeHandles.push(block.reference);
+    }
 
-            // remove last block if its free.
-            if (!iterator.hasNext()) {
-                top = current.reference; // reset the top
-                iterator.remove();
-                return;
+    /**
+     * Slide the blocks in use down to the bottom of the memory, and lower
+     * the top. Free blocks are dropped. Borrowed blocks are not moved, and
+     * the free memory below them is kept as a free block.
+     *
+     * @return the number of bytes given back to the top of the heap, or 0 if
+     * the heap is not relocatable.
+     */
+    public synchronized int compact() {
+        if (!relocatable) return 0;
+
+        int oldTop = top;
+        int dest = 0;
+        HeapBlock block = first;
+        first = last = null;
+
+        while (block != null) {
+            HeapBlock next = block.next;
+
+            if (block.free) {
+                removeReference(block);
+            } else if (block.pins > 0) {
+                // keep the gap below a borrowed block as a free block
+                if (block.offset > dest) {
+                    HeapBlock gap = new HeapBlock();
+                    gap.offset = dest;
+                    gap.reference = newReference(dest);
+                    gap.size = block.offset - dest - 1;
+                    gap.free = true;
+                    blocks.put(gap.reference, gap);
+                    append(gap);
+                }
+                append(block);
+                dest = block.offset + block.size + 1;
+            } else {
+                if (block.offset != dest) {
+                    System.arraycopy(memory, block.offset, memory, dest,
+                            block.size);
+                    block.offset = dest;
+                }
+                append(block);
+                dest = dest + block.size + 1;
             }
 
-            HeapBlock next = iterator.next();
+            block = next;
+        }
 
-            // combine all free blocks to the right side of the heap
-            if (next.isFree()) {
-                current.size = current.size + (next.size + 1); // resize
-                iterator.remove(); // removes the next free block
+        top = dest;
+        return oldTop - top;
+    }
 
-//                if (iterator.hasNext()) {
-//                    next = iterator.next();
-//                } else { // reached the last element
-//                    iterator.previous();
-//                    break;
-//                }
-            }
-        }
+    /**
+     * Link a block after the highest block
+     *
+     * @param block the block
+     */
+    private void append(HeapBlock block) {
+        block.prev = last;
+        block.next = null;
+        if (last == null) first = block;
+        else last.next = block;
+        last = block;
     }
 
     /**
@@ -239,9 +393,17 @@ final public class ByteArrayHeap implements Heap {
         // to the pool.
         HeapBlock newBlock = new HeapBlock();
         newBlock.size = block.size - (size + 1);
-        newBlock.reference = block.reference + size + 1;
+        newBlock.offset = block.offset + size + 1;
+        newBlock.reference = newReference(newBlock.offset);
         newBlock.free = true;
-        blockList.add(newBlock);
+
+        // link the new block right after the original block
+        newBlock.prev = block;
+        newBlock.next = block.next;
+        if (block.next == null) last = newBlock;
+        else block.next.prev = newBlock;
+        block.next = newBlock;
+        blocks.put(newBlock.reference, newBlock);
 
 //        Log.i(TAG, "Found block, split new block of size " + newBlock.size +
 //                " original block size " + block.size + " requested size " + size);
@@ -251,12 +413,7 @@ final public class ByteArrayHeap implements Heap {
     @Override
     public synchronized HeapBlock getBlock(int reference) {
         if (reference == NULL_REFERENCE) return null;
-
-        for (HeapBlock block : blockList)
-            if (block.reference == reference) return block;
-
-        // could not find the referred block
-        return null;
+        return blocks.get(reference);
     }
 
     @Override
@@ -266,11 +423,42 @@ final public class ByteArrayHeap implements Heap {
 
     @Override
     public synchronized int getNBlocks() {
-        return blockList.size();
+        return blocks.size();
+    }
+
+    @Override
+    public synchronized int getNFreeBlocks() {
+        return freeSpace().nBlocks;
     }
 
+    @Override
+    public synchronized int getLargestFreeBlock() {
+        return freeSpace().largest;
+    }
+
+    @Override
+    public synchronized float getFragmentation() {
+        return freeSpace().getFragmentation();
+    }
+
+    /**
+     * Get the free blocks, and the free memory above the top of the heap
+     */
+    private FreeSpace freeSpace() {
+        FreeSpace freeSpace = new FreeSpace();
+        for (HeapBlock block = first; block != null; block = block.next)
+            if (block.free) freeSpace.addBlock(block.size);
+        return freeSpace.addSpace(Math.max(0, memory.length - top));
+    }
+
+    /**
+     * Returns a snapshot of the blocks, in the order of their references.
+     */
     @Override
     public synchronized LinkedList<HeapBlock> getBlocks() {
+        LinkedList<HeapBlock> blockList = new LinkedList<HeapBlock>();
+        for (HeapBlock block = first; block != null; block = block.next)
+            blockList.add(block);
         return blockList;
     }
 
@@ -284,6 +472,20 @@ final public class ByteArrayHeap implements Heap {
         return this;
     }
 
+    /**
+     * Set if the references are handles, so that the heap can be compacted.
+     * Can only be set while the heap is empty.
+     *
+     * @param relocatable true, if yes, false otherwise.
+     * @throws IllegalStateException if the heap has blocks
+     */
+    public synchronized ByteArrayHeap setRelocatable(boolean relocatable) {
+        if (!blocks.isEmpty()) throw new IllegalStateException("The heap " +
+                "is not empty!");
+        this.relocatable = relocatable;
+        return this;
+    }
+
     @Override
     public synchronized void free(int reference) {
         if (reference < 0) throw new IllegalArgumentException("Invalid " +
@@ -295,16 +497,19 @@ final public class ByteArrayHeap implements Heap {
             throw new IllegalArgumentException("Memory block "
                     + reference + " could not be found! in Heap of size " + getNBlocks());
 
-        if (block.free) throw new IllegalStateException("The referred " +
-                " block has already been freed!");
+        if (block.free || block.freeOnRelease) throw new
+                IllegalStateException("The referred  block has already been " +
+                "freed!");
+
+        // free when the last view is released
+        if (block.pins > 0) {
+            block.freeOnRelease = true;
+            return;
+        }
 
         block.free = true;
-        Log.i(TAG, "Heap freed ref: " + HeapUtil.getCallerClassName
-                (ByteArrayHeap.class) +
-                " " +
-                reference);
-        block.clearAccessLog();
-        merge();
+        coalesce(block);
+        shrink();
     }
 
     @Override
@@ -324,7 +529,8 @@ final public class ByteArrayHeap implements Heap {
             return newReference;
 
         // copy bytes from the old block to the new block
-        System.arraycopy(memory, reference, memory, newReference, size);
+        System.arraycopy(memory, block.offset, memory, getBlock
+                (newReference).offset, size);
         free(reference);
 
         return newReference;
@@ -352,7 +558,7 @@ final public class ByteArrayHeap implements Heap {
         if (block.size < data.length) return INSUFFICIENT_MEMORY;
 
         //write to Heap
-        System.arraycopy(data, 0, memory, reference, data.length);
+        System.arraycopy(data, 0, memory, block.offset, data.length);
 
         return data.length;
     }
@@ -368,13 +574,44 @@ final public class ByteArrayHeap implements Heap {
         if (block == null || block.free) return null;
 
         try {
-            return Arrays.copyOfRange(memory, reference, reference + block.size);
+            return Arrays.copyOfRange(memory, block.offset, block.offset +
+                    block.size);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, e.toString());
             return null;
         }
     }
 
+    /**
+     * The view wraps the current byte[]. If the heap grows while the view is
+     * borrowed, the view keeps reading the previous byte[], which still holds
+     * the content of the block.
+     */
+    @Override
+    public synchronized ByteBuffer view(int reference) {
+        if (reference < 0) return null;
+
+        HeapBlock block = getBlock(reference);
+        if (block == null || block.free) return null;
+
+        block.pins++;
+        return ByteBuffer.wrap(memory, block.offset, block.size).slice()
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void release(int reference) {
+        HeapBlock block = getBlock(reference);
+
+        if (block == null || block.pins == 0) throw new IllegalStateException(
+                "The referred block " + reference + " has not been borrowed!");
+
+        if (--block.pins == 0 && block.freeOnRelease) {
+            block.freeOnRelease = false;
+            free(reference);
+        }
+    }
+
     @Override
     public synchronized byte[] getMemory() {
         return memory;
@@ -1,5 +1,7 @@
 package com.force.react.toolbox;
 
+import com.force.react.Heap;
+import com.force.react.HeapUtil;
 import com.force.react.IPCResponse;
 import com.force.react.NetworkResponse;
 import com.force.react.Request;
@@ -7,6 +9,7 @@ import com.force.react.Response;
 
 import org.apache.http.HttpStatus;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,8 +21,20 @@ import java.util.Map;
 
 public class ByteRequest extends Request<ByteRequest.ByteResponse> {
 
+    private static final String TAG = ByteRequest.class.getName();
+
     private final Response.Listener<ByteRequest.ByteResponse> mListener;
 
+    /**
+     * True, if Heap responses are delivered as views instead of copies
+     */
+    private boolean mHeapView = false;
+
+    /**
+     * The heap block borrowed for the response, until the request finishes
+     */
+    private volatile int mHeapReference = Heap.NULL_REFERENCE;
+
     /**
      * Creates a new request with the given method.
      *
@@ -84,6 +99,17 @@ public class ByteRequest extends Request<ByteRequest.ByteResponse> {
 
         ByteResponse byteResponse = new ByteResponse();
 
+        // keep the view of the Heap until the request finishes
+        if (response.buffer != null) {
+            byteResponse.statusCode = response.buffer.hasRemaining() ?
+                    HttpStatus.SC_OK : HttpStatus.SC_NOT_FOUND;
+            byteResponse.buffer = response.buffer;
+            byteResponse.reference = mHeapReference = response.takeReference();
+
+            return Response.success(byteResponse, HttpHeaderParser
+                    .parseCacheHeaders(response));
+        }
+
         // TODO: this is only for testing purposes -- very static
         byteResponse.statusCode = response.data != null && response.data
                 .length > 0 ?
@@ -111,6 +137,37 @@ public class ByteRequest extends Request<ByteRequest.ByteResponse> {
         }
     }
 
+    /**
+     * Releases the view of the Heap, if the response was delivered as one.
+     */
+    @Override
+    protected void onFinish() {
+        int reference = mHeapReference;
+        mHeapReference = Heap.NULL_REFERENCE;
+        if (reference >= 0) HeapUtil.releaseBlockData(reference, TAG);
+    }
+
+    /**
+     * Set if responses received over the Heap are delivered as read-only
+     * views of the Heap ({@link ByteResponse#buffer}), instead of copies
+     * ({@link ByteResponse#response}). Views are valid only until the
+     * listener returns.
+     *
+     * @param heapView true, if views, false otherwise.
+     * @return This Request object to allow for chaining.
+     */
+    public ByteRequest setHeapView(boolean heapView) {
+        mHeapView = heapView;
+        return this;
+    }
+
+    /**
+     * Check if Heap responses are delivered as views
+     */
+    public boolean isHeapView() {
+        return mHeapView;
+    }
+
     /**
      * A Class that wraps the response and the HTTP response headers
      */
@@ -122,6 +179,9 @@ public class ByteRequest extends Request<ByteRequest.ByteResponse> {
         // response.data
         public byte[] response = null;
 
+        // view of the response in the Heap, if ByteRequest.setHeapView(true)
+        public ByteBuffer buffer = null;
+
         // status code
         public int statusCode = 0;
 
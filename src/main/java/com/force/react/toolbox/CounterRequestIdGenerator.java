@@ -0,0 +1,35 @@
+package com.force.react.toolbox;
+
+import com.force.react.RequestIdGenerator;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implements a {@link RequestIdGenerator}, that counts requests, after a
+ * random prefix chosen once per generator, i.e., per process. IDs are unique
+ * within the process, and across processes with high probability, but are
+ * predictable.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class CounterRequestIdGenerator implements RequestIdGenerator {
+
+    private final String prefix;
+    private final AtomicLong counter = new AtomicLong(0);
+
+    /**
+     * Creates a {@link CounterRequestIdGenerator} object
+     */
+    public CounterRequestIdGenerator() {
+        prefix = Long.toString(new SecureRandom().nextLong() & Long
+                .MAX_VALUE, 32) + "-";
+    }
+
+    @Override
+    public String nextId() {
+        return prefix + Long.toString(counter.incrementAndGet(), 32);
+    }
+}
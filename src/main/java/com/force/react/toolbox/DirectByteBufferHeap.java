@@ -0,0 +1,412 @@
+package com.force.react.toolbox;
+
+import android.util.Log;
+
+import com.force.react.Heap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Implements a {@link Heap} outside of the Java heap, using direct
+ * {@link ByteBuffer} segments, or segments of a file mapped into memory.
+ * <p>
+ * The reference space is split into slots of segmentSize bytes, and each
+ * segment covers one or more consecutive slots. The heap grows by adding
+ * segments, so existing blocks are never copied, and views borrowed with
+ * {@link #view(int)} stay valid while the heap grows. Blocks are allocated
+ * with the same size-class policy as {@link SizeClassHeap}, and never span
+ * two segments.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final public class DirectByteBufferHeap implements Heap {
+
+    private static final String TAG = DirectByteBufferHeap.class.getName();
+
+    /**
+     * Used for zeroing blocks in calloc()
+     */
+    private static final byte[] ZEROS = new byte[4096];
+
+    /**
+     * Size of a segment, and the granularity of the reference space
+     */
+    private final int segmentSize;
+    /**
+     * Segment covering each slot of the reference space
+     */
+    private final ByteBuffer[] segments;
+    /**
+     * The first slot of the segment covering each slot
+     */
+    private final int[] segmentBase;
+    /**
+     * Free blocks, segregated by size class
+     */
+    private final SizeClassBins bins = new SizeClassBins();
+    /**
+     * All blocks carved from the heap, keyed by reference
+     */
+    private final HashMap<Integer, HeapBlock> blocks = new HashMap<Integer,
+            HeapBlock>();
+    /**
+     * The mapped file, null if segments are direct buffers
+     */
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    /**
+     * Number of slots covered by segments
+     */
+    private int nSlots = 0;
+    /**
+     * Top of the heap, and the end of the last segment
+     */
+    private int top = 0;
+    private int segmentEnd = 0;
+
+    /**
+     * Creates a {@link DirectByteBufferHeap} object of direct buffers, that
+     * grows by DEFAULT_MEM_STEP up to DEFAULT_MAX_MEM_SIZE.
+     */
+    DirectByteBufferHeap() {
+        this(DEFAULT_MEM_STEP, DEFAULT_MAX_MEM_SIZE);
+    }
+
+    /**
+     * Creates a {@link DirectByteBufferHeap} object of direct buffers
+     *
+     * @param segmentSize size of a segment
+     * @param maxSize     maximum size of the heap
+     */
+    DirectByteBufferHeap(int segmentSize, int maxSize) {
+        this.segmentSize = segmentSize;
+        this.segments = new ByteBuffer[Math.max(1, maxSize / segmentSize)];
+        this.segmentBase = new int[segments.length];
+        this.file = null;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a {@link DirectByteBufferHeap} object with segments mapped
+     * from the given file. The file is created if it does not exist.
+     *
+     * @param mappedFile  the file to be used as the memory source
+     * @param segmentSize size of a segment
+     * @param maxSize     maximum size of the heap
+     * @throws IOException if the file cannot be opened
+     */
+    DirectByteBufferHeap(File mappedFile, int segmentSize, int maxSize)
+            throws IOException {
+        this.segmentSize = segmentSize;
+        this.segments = new ByteBuffer[Math.max(1, maxSize / segmentSize)];
+        this.segmentBase = new int[segments.length];
+        this.file = new RandomAccessFile(mappedFile, "rw");
+        this.channel = file.getChannel();
+    }
+
+    /**
+     * Add a segment covering the given number of slots
+     *
+     * @param slots number of slots
+     * @return true, if added, false otherwise.
+     */
+    private boolean addSegment(int slots) {
+        if (nSlots + slots > segments.length) return false;
+
+        int length = slots * segmentSize;
+        ByteBuffer segment;
+        try {
+            segment = channel == null ? ByteBuffer.allocateDirect(length) :
+                    channel.map(FileChannel.MapMode.READ_WRITE, (long) nSlots *
+                            segmentSize, length);
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            return false;
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, e.toString());
+            return false;
+        }
+
+        for (int i = nSlots; i < nSlots + slots; i++) {
+            segments[i] = segment;
+            segmentBase[i] = nSlots;
+        }
+
+        top = nSlots * segmentSize;
+        nSlots = nSlots + slots;
+        segmentEnd = nSlots * segmentSize;
+        return true;
+    }
+
+    /**
+     * Carve a new block of memory from the last segment, or from a new
+     * segment if it does not fit. The remainder of the last segment is not
+     * reused in that case.
+     *
+     * @param capacity required block capacity
+     * @return new instance of {@link HeapBlock}, otherwise null.
+     */
+    synchronized HeapBlock requestMemory(int capacity) {
+        if (segmentEnd - top < capacity &&
+                !addSegment((capacity + segmentSize - 1) / segmentSize))
+            return null; // asking too much space
+
+        HeapBlock newBlock = new HeapBlock();
+        newBlock.reference = top;
+        newBlock.capacity = capacity;
+        blocks.put(newBlock.reference, newBlock);
+
+        top = top + capacity;
+
+        return newBlock;
+    }
+
+    /**
+     * Get a buffer over the memory of a block, that does not share the
+     * position and the limit with the segment.
+     *
+     * @param reference reference to the memory block
+     * @param length    number of bytes covered by the buffer
+     * @return writable buffer with position 0 and limit length
+     */
+    private ByteBuffer slice(int reference, int length) {
+        int slot = reference / segmentSize;
+        int offset = reference - segmentBase[slot] * segmentSize;
+        ByteBuffer buffer = segments[slot].duplicate();
+        buffer.limit(offset + length);
+        buffer.position(offset);
+        return buffer.slice();
+    }
+
+    /**
+     * The view stays valid while the heap grows.
+     */
+    @Override
+    public synchronized ByteBuffer view(int reference) {
+        if (reference < 0) return null;
+
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return null;
+
+        block.pins++;
+        return slice(reference, block.size).asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void release(int reference) {
+        HeapBlock block = blocks.get(reference);
+
+        if (block == null || block.pins == 0) throw new IllegalStateException(
+                "The referred block " + reference + " has not been borrowed!");
+
+        if (--block.pins == 0 && block.freeOnRelease) {
+            block.freeOnRelease = false;
+            free(reference);
+        }
+    }
+
+    @Override
+    public synchronized int malloc(int size) {
+        if (size <= 0) return NULL_REFERENCE;
+
+        HeapBlock block = bins.take(size);
+        if (block == null) block = requestMemory(SizeClassBins.capacityOf(size));
+
+        // failed requestingMemory -- ran out of memory
+        if (block == null) return INSUFFICIENT_MEMORY;
+
+        block.size = size;
+        block.free = false;
+        return block.reference;
+    }
+
+    @Override
+    public synchronized void free(int reference) {
+        if (reference < 0) throw new IllegalArgumentException("Invalid " +
+                "Reference" + reference);
+
+        HeapBlock block = blocks.get(reference);
+
+        if (block == null)
+            throw new IllegalArgumentException("Memory block "
+                    + reference + " could not be found! in Heap of size " +
+                    blocks.size());
+
+        if (block.free || block.freeOnRelease) throw new
+                IllegalStateException("The referred  block has already been " +
+                "freed!");
+
+        // free when the last view is released
+        if (block.pins > 0) {
+            block.freeOnRelease = true;
+            return;
+        }
+
+        block.free = true;
+        bins.put(block);
+    }
+
+    @Override
+    public synchronized int realloc(int reference, int size) {
+        if (reference < 0) return malloc(size);
+
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return INVALID_REFERENCE;
+
+        // does not need moving
+        if (block.capacity >= size) {
+            if (block.size < size) block.size = size;
+            return reference;
+        }
+
+        // need to move the block
+        int newReference = malloc(size);
+
+        // could not allocate a new block
+        if (newReference < 0) return newReference;
+
+        // copy bytes from the old block to the new block
+        slice(newReference, block.size).put(slice(reference, block.size));
+        free(reference);
+
+        return newReference;
+    }
+
+    @Override
+    public synchronized int calloc(int nelem, int elsize) {
+        if (nelem <= 0 || elsize <= 0 || nelem > Integer.MAX_VALUE / elsize)
+            return NULL_REFERENCE;
+
+        int size = nelem * elsize;
+        int reference = malloc(size);
+
+        // direct buffers are zeroed, but reused blocks are not
+        if (reference >= 0) {
+            ByteBuffer buffer = slice(reference, size);
+            while (buffer.hasRemaining())
+                buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+        }
+
+        return reference;
+    }
+
+    @Override
+    public synchronized int write(int reference, byte[] data) {
+        //reference can't be less than 0
+        if (reference < 0) return NULL_REFERENCE;
+
+        //check if the reference is valid
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return INVALID_REFERENCE;
+
+        //check bounds
+        if (block.size < data.length) return INSUFFICIENT_MEMORY;
+
+        //write to Heap
+        slice(reference, data.length).put(data);
+
+        return data.length;
+    }
+
+    @Override
+    public synchronized byte[] read(int reference) {
+        //reference can't be less negative
+        if (reference < 0) return null;
+
+        //check if the reference is valid
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return null;
+
+        byte[] data = new byte[block.size];
+        slice(reference, block.size).get(data);
+        return data;
+    }
+
+    /**
+     * The memory is not a byte[], therefore, always returns null.
+     */
+    @Override
+    public byte[] getMemory() {
+        return null;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return nSlots * segmentSize;
+    }
+
+    @Override
+    public synchronized int getNBlocks() {
+        return blocks.size();
+    }
+
+    @Override
+    public synchronized int getNFreeBlocks() {
+        return freeSpace().nBlocks;
+    }
+
+    @Override
+    public synchronized int getLargestFreeBlock() {
+        return freeSpace().largest;
+    }
+
+    @Override
+    public synchronized float getFragmentation() {
+        return freeSpace().getFragmentation();
+    }
+
+    /**
+     * Get the free blocks, and the free memory above the top of the last segment
+     */
+    private FreeSpace freeSpace() {
+        FreeSpace freeSpace = new FreeSpace();
+        for (HeapBlock block : blocks.values())
+            if (block.free) freeSpace.addBlock(block.capacity);
+        return freeSpace.addSpace(segmentEnd - top);
+    }
+
+    /**
+     * Blocks are not kept in a list, therefore, this returns a snapshot of
+     * the blocks in no particular order.
+     */
+    @Override
+    public synchronized LinkedList<HeapBlock> getBlocks() {
+        return new LinkedList<HeapBlock>(blocks.values());
+    }
+
+    @Override
+    public synchronized HeapBlock getBlock(int reference) {
+        if (reference == NULL_REFERENCE) return null;
+        return blocks.get(reference);
+    }
+
+    /**
+     * Get the number of segments added to the heap
+     */
+    synchronized int getNSegments() {
+        int nSegments = 0;
+        for (int i = 0; i < nSlots; i++)
+            if (segmentBase[i] == i) nSegments++;
+        return nSegments;
+    }
+
+    /**
+     * Close the mapped file, if any. The heap must not be used afterwards.
+     */
+    public synchronized void close() {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+}
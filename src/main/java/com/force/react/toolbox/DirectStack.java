@@ -0,0 +1,86 @@
+package com.force.react.toolbox;
+
+import android.util.Log;
+
+import com.force.react.IPCResponse;
+import com.force.react.RejectedError;
+import com.force.react.TimeoutError;
+import com.force.react.Request;
+import com.force.react.VolleyError;
+import com.force.react.VolleyIPCFunction;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Implements an {@link IPCStack}, that calls a function of the same process
+ * directly, without Intents. The function handles the request on its
+ * workers, and the dispatcher waits for the result, up to the timeout of
+ * the request.
+ * <p>
+ * Requests rejected by the workers of the function fail with a
+ * {@link RejectedError}.
+ * <p>
+ * Requests to functions that batch requests are handed to the
+ * {@link IPCBatcher} of the function.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public class DirectStack implements IPCStack {
+    public static final String TAG = DirectStack.class.getName();
+
+    @Override
+    public IPCResponse performRequest(final Request<?> request, String
+            functionName, final VolleyIPCFunction functionInterface, long
+            timeoutMs) throws IOException, VolleyError {
+        if (functionInterface == null) {
+            Log.e(TAG, "The function is not in this process " + functionName);
+            // falls back to another IPC type
+            return null;
+        }
+
+        if (functionInterface.getBatchMaxItems() > 1)
+            return IPCBatcher.getInstance(functionInterface).performRequest
+                    (request, functionName, timeoutMs);
+
+        VolleyIPCFunction.HandlerCall call = new VolleyIPCFunction
+                .HandlerCall();
+        Future<Object> result;
+        try {
+            result = functionInterface.submitDirect(request, call);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, e.toString());
+            throw new RejectedError("Rejected by " + functionName);
+        }
+
+        try {
+            return HeapStack.toIPCResponse(request, result.get(timeoutMs,
+                    TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            Log.e(TAG, "Timed out waiting for " + functionName);
+            // frees the result, if the function returns it later
+            call.abandon();
+            result.cancel(true);
+            throw new TimeoutError();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof VolleyError)
+                throw (VolleyError) e.getCause();
+            Log.e(TAG, e.getCause().toString());
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Log.e(TAG, e.toString());
+            call.abandon();
+            result.cancel(true);
+            // the dispatcher may have been told to quit
+            Thread.currentThread().interrupt();
+            // the handler may be running, not to be sent again
+            throw new TimeoutError();
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implements a {@link Heap} for short-lived blocks, that bump allocates from
+ * a ring of fixed size regions with a CAS on the top of the heap, and
+ * reclaims a region as a whole once every block allocated in it has been
+ * freed.
+ * <p>
+ * Each region is an epoch: the top moves to the next region when the
+ * current one is full, whose blocks of the previous epoch have all been
+ * freed, skipping the regions that still hold live blocks. If every region
+ * holds live blocks, malloc() returns INSUFFICIENT_MEMORY.
+ * Blocks carry their metadata in a header in front of the data, therefore,
+ * the heap keeps no list of blocks, and free() never merges blocks. A block
+ * that is never freed keeps its region from being reused.
+ * <p>
+ * malloc() does not lock, unless it moves the top to another region.
+ * free(), view() and release() lock the region of the block only. The
+ * content of a block is published to other threads by the handover of its
+ * reference, as in the IPC path.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final public class EpochHeap implements Heap {
+
+    /**
+     * Block header: capacity, size, state, and number of views borrowed
+     */
+    static final int HEADER_SIZE = 16;
+    private static final int CAPACITY = 0;
+    private static final int SIZE = 4;
+    private static final int STATE = 8;
+    private static final int PINS = 12;
+
+    /**
+     * Block states
+     */
+    private static final int ALLOCATED = 0x52454143;
+    private static final int FREE_ON_RELEASE = 0x52454144;
+    private static final int FREED = 0x52454145;
+
+    /**
+     * Returned by advance() if the top has moved meanwhile
+     */
+    private static final int RETRY = Integer.MIN_VALUE;
+
+    /**
+     * The heap
+     */
+    private final byte[] memory;
+    /**
+     * Absolute access to the block headers
+     */
+    private final ByteBuffer headers;
+    /**
+     * Size of a region
+     */
+    private final int regionSize;
+    /**
+     * Number of blocks allocated in each region, and not freed yet
+     */
+    private final AtomicIntegerArray live;
+    /**
+     * Where the top left each region, to walk its blocks
+     */
+    private final AtomicIntegerArray regionTop;
+    /**
+     * Locks of the regions, for free(), view() and release()
+     */
+    private final Object[] locks;
+    /**
+     * Top of the heap, counted from the creation of the heap. The offset
+     * in memory is top % memory.length.
+     */
+    private final AtomicLong top = new AtomicLong(0);
+    /**
+     * Serializes the moves of the top to another region
+     */
+    private final Object advanceLock = new Object();
+
+    /**
+     * Creates an {@link EpochHeap} object of DEFAULT_MEM_STEP regions, of
+     * size DEFAULT_MAX_MEM_SIZE.
+     */
+    EpochHeap() {
+        this(DEFAULT_MEM_STEP, DEFAULT_MAX_MEM_SIZE / DEFAULT_MEM_STEP);
+    }
+
+    /**
+     * Creates an {@link EpochHeap} object
+     *
+     * @param regionSize size of a region, larger than the largest block
+     *                   plus HEADER_SIZE
+     * @param nRegions   number of regions
+     */
+    EpochHeap(int regionSize, int nRegions) {
+        if (regionSize <= HEADER_SIZE || nRegions <= 0 || nRegions >
+                Integer.MAX_VALUE / regionSize)
+            throw new IllegalArgumentException("Invalid regions " + nRegions
+                    + " x " + regionSize);
+
+        this.memory = new byte[regionSize * nRegions];
+        this.headers = ByteBuffer.wrap(memory);
+        this.regionSize = regionSize;
+        this.live = new AtomicIntegerArray(nRegions);
+        this.regionTop = new AtomicIntegerArray(nRegions);
+        this.locks = new Object[nRegions];
+        for (int i = 0; i < nRegions; i++) locks[i] = new Object();
+    }
+
+    /**
+     * Get the region of a reference
+     */
+    private int regionOf(int reference) {
+        return (reference - HEADER_SIZE) / regionSize;
+    }
+
+    /**
+     * Get the state of a block, if the reference points to a block header
+     *
+     * @param reference reference to the memory block
+     * @return the state, or 0 if the reference is invalid.
+     */
+    private int stateOf(int reference) {
+        if (reference < HEADER_SIZE || reference >= memory.length) return 0;
+
+        int state = headers.getInt(reference - HEADER_SIZE + STATE);
+        return state == ALLOCATED || state == FREE_ON_RELEASE || state ==
+                FREED ? state : 0;
+    }
+
+    private int sizeOf(int reference) {
+        return headers.getInt(reference - HEADER_SIZE + SIZE);
+    }
+
+    @Override
+    public int malloc(int size) {
+        if (size <= 0) return NULL_REFERENCE;
+
+        // asking too much space
+        if (size >= regionSize - HEADER_SIZE) return INSUFFICIENT_MEMORY;
+
+        int capacity = size + HEADER_SIZE;
+
+        while (true) {
+            long current = top.get();
+            int offset = (int) (current % memory.length);
+            int region = offset / regionSize;
+
+            // a block never ends at the end of a region, so that the top
+            // enters another region only through advance()
+            if ((region + 1) * regionSize - offset <= capacity) {
+                int reference = advance(current, size, capacity);
+                if (reference == RETRY) continue;
+                return reference;
+            }
+
+            // count the block before publishing the new top, so that the
+            // region is not reclaimed underneath it
+            live.incrementAndGet(region);
+            if (!top.compareAndSet(current, current + capacity)) {
+                live.decrementAndGet(region);
+                continue;
+            }
+            return initBlock(offset, size, capacity);
+        }
+    }
+
+    /**
+     * Move the top to the next region whose blocks have all been freed, i.e.,
+     * the next epoch, skipping the regions that still hold live blocks, and
+     * allocate the block at its start. The moves are serialized, so that
+     * one move does not take another for a live block.
+     *
+     * @param current  the top the current region was found full at
+     * @param size     requested memory size
+     * @param capacity size of the block, with its header
+     * @return the reference, or RETRY if the top has moved meanwhile, or
+     * INSUFFICIENT_MEMORY if every region holds live blocks.
+     */
+    private int advance(long current, int size, int capacity) {
+        synchronized (advanceLock) {
+            if (top.get() != current) return RETRY;
+
+            int offset = (int) (current % memory.length);
+            int region = offset / regionSize;
+            int regionEnd = (region + 1) * regionSize;
+            int nRegions = live.length();
+
+            // the current region is tried last, i.e., with one region
+            for (int skip = 0; skip < nRegions; skip++) {
+                int next = (region + 1 + skip) % nRegions;
+                // claimed only if no block is counted in it, the count of a
+                // thread about to fail its CAS is dropped shortly
+                if (live.incrementAndGet(next) != 1) {
+                    live.decrementAndGet(next);
+                    continue;
+                }
+
+                long newTop = current + (regionEnd - offset) + (long) skip *
+                        regionSize + capacity;
+                // a smaller block was bumped into the current region
+                if (!top.compareAndSet(current, newTop)) {
+                    live.decrementAndGet(next);
+                    return RETRY;
+                }
+
+                regionTop.set(region, offset);
+                return initBlock(next * regionSize, size, capacity);
+            }
+            return top.get() != current ? RETRY : INSUFFICIENT_MEMORY;
+        }
+    }
+
+    /**
+     * Write the header of a new block
+     *
+     * @return the reference to the block
+     */
+    private int initBlock(int start, int size, int capacity) {
+        headers.putInt(start + CAPACITY, capacity);
+        headers.putInt(start + SIZE, size);
+        headers.putInt(start + PINS, 0);
+        headers.putInt(start + STATE, ALLOCATED);
+        return start + HEADER_SIZE;
+    }
+
+    @Override
+    public void free(int reference) {
+        if (reference < 0) throw new IllegalArgumentException("Invalid " +
+                "Reference" + reference);
+
+        int state = stateOf(reference);
+
+        if (state == 0)
+            throw new IllegalArgumentException("Memory block "
+                    + reference + " could not be found! in Heap of size " +
+                    memory.length);
+
+        int region = regionOf(reference);
+        synchronized (locks[region]) {
+            state = headers.getInt(reference - HEADER_SIZE + STATE);
+            if (state != ALLOCATED) throw new
+                    IllegalStateException("The referred  block has already " +
+                    "been freed!");
+
+            // free when the last view is released
+            if (headers.getInt(reference - HEADER_SIZE + PINS) > 0) {
+                headers.putInt(reference - HEADER_SIZE + STATE,
+                        FREE_ON_RELEASE);
+                return;
+            }
+
+            headers.putInt(reference - HEADER_SIZE + STATE, FREED);
+        }
+
+        live.decrementAndGet(region);
+    }
+
+    /**
+     * Blocks are never grown in place. Shrinking keeps the block.
+     */
+    @Override
+    public int realloc(int reference, int size) {
+        if (reference < 0) return malloc(size);
+
+        if (stateOf(reference) != ALLOCATED) return INVALID_REFERENCE;
+
+        int oldSize = sizeOf(reference);
+
+        // does not need moving
+        if (size <= oldSize) {
+            if (size > 0) headers.putInt(reference - HEADER_SIZE + SIZE,
+                    size);
+            return reference;
+        }
+
+        // need to move the block
+        int newReference = malloc(size);
+
+        // could not allocate a new block
+        if (newReference < 0) return newReference;
+
+        // copy bytes from the old block to the new block
+        System.arraycopy(memory, reference, memory, newReference, oldSize);
+        free(reference);
+
+        return newReference;
+    }
+
+    @Override
+    public int calloc(int nelem, int elsize) {
+        if (nelem <= 0 || elsize <= 0 || nelem > Integer.MAX_VALUE / elsize)
+            return NULL_REFERENCE;
+
+        int size = nelem * elsize;
+        int reference = malloc(size);
+
+        // regions are reused without clearing
+        if (reference >= 0) Arrays.fill(memory, reference, reference + size,
+                (byte) 0);
+
+        return reference;
+    }
+
+    @Override
+    public int write(int reference, byte[] data) {
+        //reference can't be less than 0
+        if (reference < 0) return NULL_REFERENCE;
+
+        //check if the reference is valid
+        int state = stateOf(reference);
+        if (state == 0 || state == FREED) return INVALID_REFERENCE;
+
+        //check bounds
+        if (sizeOf(reference) < data.length) return INSUFFICIENT_MEMORY;
+
+        //write to Heap
+        System.arraycopy(data, 0, memory, reference, data.length);
+
+        return data.length;
+    }
+
+    @Override
+    public byte[] read(int reference) {
+        //reference can't be less negative
+        if (reference < 0) return null;
+
+        //check if the reference is valid
+        int state = stateOf(reference);
+        if (state == 0 || state == FREED) return null;
+
+        return Arrays.copyOfRange(memory, reference, reference + sizeOf
+                (reference));
+    }
+
+    @Override
+    public ByteBuffer view(int reference) {
+        if (reference < 0 || stateOf(reference) == 0) return null;
+
+        synchronized (locks[regionOf(reference)]) {
+            if (headers.getInt(reference - HEADER_SIZE + STATE) == FREED)
+                return null;
+
+            headers.putInt(reference - HEADER_SIZE + PINS, headers.getInt
+                    (reference - HEADER_SIZE + PINS) + 1);
+        }
+
+        return ByteBuffer.wrap(memory, reference, sizeOf(reference)).slice()
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public void release(int reference) {
+        if (reference < 0 || stateOf(reference) == 0) throw new
+                IllegalStateException("The referred block " + reference +
+                " has not been borrowed!");
+
+        int region = regionOf(reference);
+        synchronized (locks[region]) {
+            int pins = headers.getInt(reference - HEADER_SIZE + PINS);
+            if (pins == 0) throw new IllegalStateException("The referred " +
+                    "block " + reference + " has not been borrowed!");
+            headers.putInt(reference - HEADER_SIZE + PINS, --pins);
+
+            if (pins > 0 || headers.getInt(reference - HEADER_SIZE + STATE)
+                    != FREE_ON_RELEASE) return;
+
+            headers.putInt(reference - HEADER_SIZE + STATE, FREED);
+        }
+
+        live.decrementAndGet(region);
+    }
+
+    @Override
+    public byte[] getMemory() {
+        return memory;
+    }
+
+    @Override
+    public int getSize() {
+        return memory.length;
+    }
+
+    /**
+     * Get the number of blocks allocated, and not freed yet
+     */
+    @Override
+    public int getNBlocks() {
+        int nBlocks = 0;
+        for (int i = 0; i < live.length(); i++) nBlocks += live.get(i);
+        return nBlocks;
+    }
+
+    /**
+     * Freed blocks are not reused individually, therefore, this returns the
+     * number of regions that can be reclaimed.
+     */
+    @Override
+    public int getNFreeBlocks() {
+        return freeSpace().nBlocks;
+    }
+
+    /**
+     * Get the remainder of the current region, or the size of a region if
+     * any region can be reclaimed
+     */
+    @Override
+    public int getLargestFreeBlock() {
+        return freeSpace().largest;
+    }
+
+    @Override
+    public float getFragmentation() {
+        return freeSpace().getFragmentation();
+    }
+
+    /**
+     * Get the regions that can be reclaimed, and the remainder of the
+     * current region
+     */
+    private FreeSpace freeSpace() {
+        FreeSpace freeSpace = new FreeSpace();
+        int offset = (int) (top.get() % memory.length);
+        int current = offset / regionSize;
+
+        for (int region = 0; region < live.length(); region++)
+            if (region != current && live.get(region) == 0)
+                freeSpace.addBlock(regionSize);
+        return freeSpace.addSpace((current + 1) * regionSize - offset);
+    }
+
+    /**
+     * Blocks are not kept in a list, therefore, this walks the headers of
+     * each region, and returns a snapshot of the blocks of the current
+     * epochs. Meant for debugging only.
+     */
+    @Override
+    public LinkedList<HeapBlock> getBlocks() {
+        LinkedList<HeapBlock> blocks = new LinkedList<HeapBlock>();
+        int offset = (int) (top.get() % memory.length);
+        int current = offset / regionSize;
+
+        for (int region = 0; region < live.length(); region++) {
+            int end = region == current ? offset : regionTop.get(region);
+            int start = region * regionSize;
+
+            while (start < end) {
+                HeapBlock block = getBlock(start + HEADER_SIZE);
+                if (block == null) break;
+                blocks.add(block);
+                start += block.capacity;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns a snapshot of the header of the block, that does not change
+     * with the block.
+     */
+    @Override
+    public HeapBlock getBlock(int reference) {
+        int state = stateOf(reference);
+        if (state == 0) return null;
+
+        HeapBlock block = new HeapBlock();
+        block.reference = reference;
+        block.capacity = headers.getInt(reference - HEADER_SIZE + CAPACITY);
+        block.size = sizeOf(reference);
+        block.free = state == FREED;
+        block.freeOnRelease = state == FREE_ON_RELEASE;
+        block.pins = headers.getInt(reference - HEADER_SIZE + PINS);
+        return block;
+    }
+
+    /**
+     * Get the number of regions
+     */
+    int getNRegions() {
+        return live.length();
+    }
+}
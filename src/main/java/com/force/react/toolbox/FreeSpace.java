@@ -0,0 +1,71 @@
+package com.force.react.toolbox;
+
+/**
+ * Accumulates the free memory of a {@link com.force.react.Heap}, for its
+ * fragmentation stats.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final class FreeSpace {
+
+    /**
+     * Number of free blocks
+     */
+    int nBlocks = 0;
+    /**
+     * Size of the largest contiguous free space
+     */
+    int largest = 0;
+    /**
+     * Total free memory
+     */
+    long total = 0;
+
+    /**
+     * Add a free block
+     *
+     * @param size size of the block
+     * @return this
+     */
+    FreeSpace addBlock(int size) {
+        nBlocks++;
+        return addSpace(size);
+    }
+
+    /**
+     * Add free memory that is not a block, e.g., above the top of the heap
+     *
+     * @param size size of the free memory
+     * @return this
+     */
+    FreeSpace addSpace(int size) {
+        if (size > largest) largest = size;
+        total += size;
+        return this;
+    }
+
+    /**
+     * Add the free memory of another heap, e.g., an arena
+     *
+     * @param other free memory of the other heap
+     * @return this
+     */
+    FreeSpace add(FreeSpace other) {
+        nBlocks += other.nBlocks;
+        if (other.largest > largest) largest = other.largest;
+        total += other.total;
+        return this;
+    }
+
+    /**
+     * Get the external fragmentation, i.e., 1 - (largest / total)
+     *
+     * @return 0 if the free memory is contiguous, closer to 1 as it is split
+     * into smaller blocks.
+     */
+    float getFragmentation() {
+        return total == 0 ? 0 : 1 - (float) largest / total;
+    }
+}
@@ -0,0 +1,193 @@
+package com.force.react.toolbox;
+
+import android.os.Messenger;
+
+import com.force.react.IPCUtil;
+import com.force.react.VolleyIPCFunction;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of {@link HelperVirtDevService#lookup}, keyed by the
+ * domain name of the function, so that the dispatchers look up each
+ * function once per TTL. Results of functions that are not local are cached
+ * as well, therefore, requests offloaded to the network skip the lookup too.
+ * <p>
+ * {@link HelperVirtDevService} invalidates the result of a function when it
+ * is registered or deregistered. Functions registered by other processes
+ * are seen when the result expires. A lookup that began before an
+ * invalidation is not cached, as its result may be stale, i.e., miss a
+ * function registered meanwhile.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class FunctionLookupCache {
+
+    public static final long DEFAULT_TTL_MS = 30000;
+
+    private static final FunctionLookupCache instance = new
+            FunctionLookupCache();
+
+    private final ConcurrentHashMap<String, Entry> entries = new
+            ConcurrentHashMap<String, Entry>();
+    private volatile long ttlMs = DEFAULT_TTL_MS;
+    /**
+     * Incremented by each invalidation
+     */
+    private final AtomicLong generation = new AtomicLong(0);
+
+    FunctionLookupCache() {
+    }
+
+    /**
+     * Get the cache shared by the dispatchers
+     */
+    public static FunctionLookupCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Set how long the results are kept
+     *
+     * @param ttlMs the TTL in milliseconds, 0 disables caching
+     */
+    public FunctionLookupCache setTtl(long ttlMs) {
+        if (ttlMs < 0) throw new IllegalArgumentException("Invalid TTL " +
+                ttlMs);
+        this.ttlMs = ttlMs;
+        if (ttlMs == 0) invalidateAll();
+        return this;
+    }
+
+    /**
+     * Get the result of the last lookup of a function
+     *
+     * @param functionName domain name of the function
+     * @return the result, or null if not cached or expired.
+     */
+    public Entry get(String functionName) {
+        Entry entry = entries.get(functionName);
+        if (entry == null) return null;
+
+        if (entry.expiresAt - now() <= 0) {
+            entries.remove(functionName, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Get the generation of the cache, to be taken before a lookup, and
+     * handed to {@link #put(String, IPCUtil.Properties, long)}
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Cache the result of a lookup
+     *
+     * @param functionName domain name of the function
+     * @param properties   the properties the lookup was made with
+     * @return the cached result
+     */
+    public Entry put(String functionName, IPCUtil.Properties properties) {
+        return put(functionName, properties, generation.get());
+    }
+
+    /**
+     * Cache the result of a lookup, unless the cache has been invalidated
+     * since the lookup began
+     *
+     * @param functionName domain name of the function
+     * @param properties   the properties the lookup was made with
+     * @param generation   the generation taken before the lookup
+     * @return the result, cached or not
+     */
+    public Entry put(String functionName, IPCUtil.Properties properties,
+                     long generation) {
+        Entry entry = properties.isBypassFuncLocal() ? new Entry(null, null,
+                null, now() + ttlMs) : new Entry(properties.getLookupResponse(),
+                properties.getFunctionInterface(), properties
+                .getFunctionMessenger(), now() + ttlMs);
+        if (ttlMs <= 0 || this.generation.get() != generation) return entry;
+
+        entries.put(functionName, entry);
+        // invalidated meanwhile, the generation is moved before removing
+        if (this.generation.get() != generation)
+            entries.remove(functionName, entry);
+        return entry;
+    }
+
+    /**
+     * Drop the result of a function
+     *
+     * @param functionName domain name of the function
+     */
+    public void invalidate(String functionName) {
+        generation.incrementAndGet();
+        entries.remove(functionName);
+    }
+
+    /**
+     * Drop all results
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Result of a lookup
+     */
+    public static final class Entry {
+        private final int[] supportedIPCs;
+        private final VolleyIPCFunction functionInterface;
+        private final Messenger functionMessenger;
+        private final long expiresAt;
+
+        Entry(int[] supportedIPCs, VolleyIPCFunction functionInterface,
+              Messenger functionMessenger, long expiresAt) {
+            this.supportedIPCs = supportedIPCs;
+            this.functionInterface = functionInterface;
+            this.functionMessenger = functionMessenger;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Check if the function is local, i.e., requests are sent over IPC
+         */
+        public boolean isLocal() {
+            return supportedIPCs != null;
+        }
+
+        /**
+         * Get the IPC mechanisms supported by the function, null if not local
+         */
+        public int[] getSupportedIPCs() {
+            return supportedIPCs;
+        }
+
+        /**
+         * Get the function, if registered in this process
+         */
+        public VolleyIPCFunction getFunctionInterface() {
+            return functionInterface;
+        }
+
+        /**
+         * Get the {@link Messenger} of the function, if it supports
+         * FORCE_ANDROID_IPC_TYPE_MESSENGER
+         */
+        public Messenger getFunctionMessenger() {
+            return functionMessenger;
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.force.react.toolbox;
 
-import java.util.ArrayList;
-
 import static com.force.react.Heap.NULL_REFERENCE;
 
 /**
@@ -10,10 +8,34 @@ import static com.force.react.Heap.NULL_REFERENCE;
 
 // Holds metadata of a memory block
 final public class HeapBlock {
-    private final ArrayList<String> accessLog = new ArrayList<>();
     int reference = NULL_REFERENCE;
+    /**
+     * Position of the block in the memory, if it is not the reference
+     * (i.e., relocatable {@link ByteArrayHeap}).
+     */
+    int offset;
     int size;
+    /**
+     * Bytes reserved for the block, if the {@link com.force.react.Heap}
+     * rounds requests up (i.e., {@link SizeClassHeap}).
+     */
+    int capacity;
     boolean free = false;
+    /**
+     * Number of views borrowed, and not released yet
+     */
+    int pins = 0;
+    /**
+     * True, if free() was called while the block was borrowed
+     */
+    boolean freeOnRelease = false;
+    /**
+     * The blocks next to this block in the memory, if the
+     * {@link com.force.react.Heap} coalesces free blocks (i.e.,
+     * {@link ByteArrayHeap}).
+     */
+    HeapBlock prev;
+    HeapBlock next;
 
     /**
      * Get the reference of the memory block
@@ -41,20 +63,6 @@ final public class HeapBlock {
     @Override
     public synchronized String toString() {
         return "The Heap block\n[Reference: " + reference + "\nSize: " + size
-                + "\nFree = " + free + "\n " +
-                "Access log:\n" + accessLog + "]\n";
-    }
-
-    /**
-     * Add a name to the access log
-     *
-     * @param name name of the accessing entity
-     */
-    public synchronized void addAccess(String name) {
-        accessLog.add(name);
-    }
-
-    public synchronized void clearAccessLog() {
-        accessLog.clear();
+                + "\nFree = " + free + "]\n";
     }
 }
@@ -0,0 +1,131 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+/**
+ * Sizing of the {@link ByteArrayHeap}s created by {@link HeapFactory}.
+ * <p>
+ * An elastic heap grows when a request does not fit, by a fixed step, or by
+ * doubling its size, up to the maximum size. Either way, growing copies the
+ * heap; {@link HeapFactory#HEAP_TYPE_DIRECT} heaps grow without copying. An
+ * elastic heap with a shrink ratio set also shrinks back, down to the
+ * initial size, once the top of the heap has stayed below that ratio of its
+ * size for a number of frees, and a time since the heap was last resized,
+ * so that a heap used around the ratio is not copied back and forth. By
+ * default, heaps do not shrink, as before.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class HeapConfig {
+
+    /**
+     * Growth policies
+     */
+    public static final int GROWTH_STEP = 0;
+    public static final int GROWTH_GEOMETRIC = 1;
+
+    /**
+     * Frees, and time, below the shrink ratio before the heap shrinks
+     */
+    public static final int DEFAULT_SHRINK_FREES = 64;
+    public static final long DEFAULT_SHRINK_INTERVAL_MS = 1000;
+
+    int initialSize = Heap.DEFAULT_MAX_MEM_SIZE;
+    int maxSize = Integer.MAX_VALUE;
+    int growthPolicy = GROWTH_STEP;
+    int growthStep = Heap.DEFAULT_MEM_STEP;
+    float shrinkRatio = 0;
+    int shrinkFrees = DEFAULT_SHRINK_FREES;
+    long shrinkIntervalMs = DEFAULT_SHRINK_INTERVAL_MS;
+    boolean elastic = true;
+
+    /**
+     * Set the size of the heap when created, and the size it shrinks to
+     *
+     * @param initialSize the size in bytes
+     */
+    public HeapConfig setInitialSize(int initialSize) {
+        if (initialSize <= 0) throw new IllegalArgumentException("Invalid " +
+                "size " + initialSize);
+        this.initialSize = initialSize;
+        return this;
+    }
+
+    /**
+     * Set the size the heap does not grow beyond
+     *
+     * @param maxSize the size in bytes
+     */
+    public HeapConfig setMaxSize(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("Invalid size " +
+                maxSize);
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Set how the heap grows
+     *
+     * @param growthPolicy GROWTH_STEP or GROWTH_GEOMETRIC
+     */
+    public HeapConfig setGrowthPolicy(int growthPolicy) {
+        if (growthPolicy != GROWTH_STEP && growthPolicy != GROWTH_GEOMETRIC)
+            throw new IllegalArgumentException("Unknown growth policy " +
+                    growthPolicy);
+        this.growthPolicy = growthPolicy;
+        return this;
+    }
+
+    /**
+     * Set the step of GROWTH_STEP
+     *
+     * @param growthStep the step in bytes
+     */
+    public HeapConfig setGrowthStep(int growthStep) {
+        if (growthStep <= 0) throw new IllegalArgumentException("Invalid " +
+                "step " + growthStep);
+        this.growthStep = growthStep;
+        return this;
+    }
+
+    /**
+     * Set the ratio of the size of the heap, that the top of the heap has to
+     * fall below for the heap to shrink.
+     *
+     * @param shrinkRatio between 0 and 0.5, 0, the default, never shrinks.
+     */
+    public HeapConfig setShrinkRatio(float shrinkRatio) {
+        if (shrinkRatio < 0 || shrinkRatio > 0.5f) throw new
+                IllegalArgumentException("Invalid ratio " + shrinkRatio);
+        this.shrinkRatio = shrinkRatio;
+        return this;
+    }
+
+    /**
+     * Set how long the top of the heap has to stay below the shrink ratio
+     * for the heap to shrink
+     *
+     * @param nFrees     the number of frees in a row that leave the top below
+     *                   the ratio
+     * @param intervalMs the time since the heap was last resized
+     */
+    public HeapConfig setShrinkHysteresis(int nFrees, long intervalMs) {
+        if (nFrees < 1 || intervalMs < 0) throw new IllegalArgumentException
+                ("Invalid hysteresis " + nFrees + " " + intervalMs);
+        this.shrinkFrees = nFrees;
+        this.shrinkIntervalMs = intervalMs;
+        return this;
+    }
+
+    /**
+     * Set if the heap grows and shrinks
+     *
+     * @param elastic true, if yes, false otherwise.
+     */
+    public HeapConfig setElastic(boolean elastic) {
+        this.elastic = elastic;
+        return this;
+    }
+}
@@ -1,7 +1,12 @@
 package com.force.react.toolbox;
 
+import android.util.Log;
+
 import com.force.react.Heap;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Factory for creating {@link Heap} singleton instance.
  * <p>
@@ -10,14 +15,173 @@ import com.force.react.Heap;
 
 public final class HeapFactory {
 
+    /**
+     * {@link Heap} types
+     */
+    public static final int HEAP_TYPE_BYTE_ARRAY = 0;
+    public static final int HEAP_TYPE_SIZE_CLASS = 1;
+    public static final int HEAP_TYPE_DIRECT = 2;
+    public static final int HEAP_TYPE_MAPPED = 3;
+    public static final int HEAP_TYPE_ARENA = 4;
+    public static final int HEAP_TYPE_EPOCH = 5;
+    public static final int HEAP_TYPE_RELOCATABLE = 6;
+    public static final int HEAP_TYPE_SHARED = 7;
+
+    private static final String TAG = HeapFactory.class.getName();
+
     private static volatile Heap instance = null;
 
+    private static int heapType = HEAP_TYPE_BYTE_ARRAY;
+
+    /**
+     * The file backing HEAP_TYPE_MAPPED and HEAP_TYPE_SHARED heaps
+     */
+    private static File mappedFile = null;
+
+    /**
+     * The sizing of HEAP_TYPE_BYTE_ARRAY and HEAP_TYPE_RELOCATABLE heaps
+     */
+    private static HeapConfig config = new HeapConfig();
+
+    /**
+     * True, if the heap is wrapped in an {@link InstrumentedHeap}
+     */
+    private static boolean instrumented = false;
+
     public synchronized static Heap getInstance() {
-        return instance == null ? (instance = new ByteArrayHeap()
-                .setHeapElastic(true)) : instance;
+        if (instance == null) instance = instrumented ? new InstrumentedHeap
+                (createHeap()) : createHeap();
+        return instance;
     }
 
     public synchronized static void eraseMemory() {
         instance = null;
     }
+
+    /**
+     * Set the type of the {@link Heap} to be created. Takes effect the next
+     * time the instance is created, i.e., after {@link #eraseMemory()}.
+     *
+     * @param type one of the HEAP_TYPE_* constants
+     */
+    public synchronized static void setHeapType(int type) {
+        if (type < HEAP_TYPE_BYTE_ARRAY || type > HEAP_TYPE_SHARED)
+            throw new IllegalArgumentException("Unknown heap type " + type);
+        heapType = type;
+    }
+
+    /**
+     * Set the file to be mapped by HEAP_TYPE_MAPPED and HEAP_TYPE_SHARED
+     * heaps. A HEAP_TYPE_SHARED file should be in a tmpfs (e.g., /dev/shm).
+     *
+     * @param file the file, created if it does not exist
+     */
+    public synchronized static void setMappedFile(File file) {
+        mappedFile = file;
+    }
+
+    /**
+     * Get the file of the heap, if it is shared with the other processes.
+     * Does not create the heap, if it has not been created yet.
+     *
+     * @return the file, or null if there is no heap, or the heap is not a
+     * {@link SharedMemoryHeap}
+     */
+    public static File getSharedFile() {
+        Heap heap = instance;
+        if (heap instanceof InstrumentedHeap)
+            heap = ((InstrumentedHeap) heap).getHeap();
+        return heap instanceof SharedMemoryHeap ? ((SharedMemoryHeap) heap)
+                .getFile() : null;
+    }
+
+    /**
+     * Use the heap shared by another process, so that references of it can
+     * be exchanged. Does not replace a heap that has already been created by
+     * this process, since its references would be lost.
+     *
+     * @param file the file of the shared heap
+     * @return true, if the heap is, or will be, the shared heap
+     */
+    public synchronized static boolean attachSharedHeap(File file) {
+        if (file == null) return false;
+        if (instance != null) return file.equals(getSharedFile());
+
+        heapType = HEAP_TYPE_SHARED;
+        mappedFile = file;
+        return true;
+    }
+
+    /**
+     * Set the sizing of HEAP_TYPE_BYTE_ARRAY and HEAP_TYPE_RELOCATABLE heaps.
+     * Takes effect the next time the instance is created.
+     *
+     * @param heapConfig the sizing, or null for the defaults
+     */
+    public synchronized static void setConfig(HeapConfig heapConfig) {
+        config = heapConfig == null ? new HeapConfig() : heapConfig;
+    }
+
+    /**
+     * Set if the heap records {@link HeapMetrics}. Takes effect the next time
+     * the instance is created.
+     *
+     * @param enabled true, if yes, false otherwise.
+     */
+    public synchronized static void setInstrumented(boolean enabled) {
+        instrumented = enabled;
+    }
+
+    /**
+     * Get the metrics of the heap
+     *
+     * @return the metrics, or null if the heap is not instrumented
+     */
+    public synchronized static HeapMetrics getMetrics() {
+        Heap heap = getInstance();
+        return heap instanceof InstrumentedHeap ? ((InstrumentedHeap) heap)
+                .getMetrics() : null;
+    }
+
+    private static Heap createHeap() {
+        switch (heapType) {
+            case HEAP_TYPE_SIZE_CLASS:
+                return new SizeClassHeap().setHeapElastic(true);
+            case HEAP_TYPE_MAPPED:
+                if (mappedFile != null) {
+                    try {
+                        return new DirectByteBufferHeap(mappedFile, Heap
+                                .DEFAULT_MEM_STEP, Heap.DEFAULT_MAX_MEM_SIZE);
+                    } catch (IOException e) {
+                        Log.e(TAG, e.toString());
+                    }
+                } else Log.e(TAG, "The mapped file has not been set!");
+
+                // fall back to direct buffers
+                return new DirectByteBufferHeap();
+            case HEAP_TYPE_SHARED:
+                if (mappedFile != null) {
+                    try {
+                        return new SharedMemoryHeap(mappedFile, Heap
+                                .DEFAULT_MAX_MEM_SIZE);
+                    } catch (IOException e) {
+                        Log.e(TAG, e.toString());
+                    }
+                } else Log.e(TAG, "The shared file has not been set!");
+
+                // fall back to a heap private to the process
+                return new ByteArrayHeap(config);
+            case HEAP_TYPE_DIRECT:
+                return new DirectByteBufferHeap();
+            case HEAP_TYPE_ARENA:
+                return new ArenaHeap();
+            case HEAP_TYPE_EPOCH:
+                return new EpochHeap();
+            case HEAP_TYPE_RELOCATABLE:
+                return new ByteArrayHeap(config).setRelocatable(true);
+            case HEAP_TYPE_BYTE_ARRAY:
+            default:
+                return new ByteArrayHeap(config);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.force.react.toolbox;
 
+import android.content.Intent;
 import android.os.Build;
 import android.support.annotation.RequiresApi;
 import android.support.v4.content.LocalBroadcastManager;
@@ -10,18 +11,38 @@ import com.force.react.HeapUtil;
 import com.force.react.IPCResponse;
 import com.force.react.IPCUtil;
 import com.force.react.Request;
+import com.force.react.VolleyError;
 import com.force.react.VolleyIPCFunction;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
+ * Implements an {@link IPCStack} over LocalBroadcasts, with the responses,
+ * and the request bodies larger than a threshold, carried over the
+ * {@link com.force.react.Heap}, only their references are sent.
+ * <p>
+ * The function owns the block of a request body once it receives the
+ * request, and frees it once the request is handled, so that it is never
+ * freed while the function reads it. Functions read the bodies with
+ * {@link IPCUtil#getRequestBody(Intent, String)}, or
+ * {@link IPCUtil#borrowRequestBody(Intent, String)}.
+ * <p>
+ *
  * @author Chathura Sarathchandra
  */
 
 public class HeapLBStack implements IPCStack {
     public static final String TAG = HeapLBStack.class.getName();
 
+    /**
+     * Request bodies of at least this many bytes are sent over the Heap
+     */
+    public static final int DEFAULT_HEAP_BODY_THRESHOLD = 16 * 1024;
+
+    private static volatile int heapBodyThreshold =
+            DEFAULT_HEAP_BODY_THRESHOLD;
+
     /***
      * The local broadcast manager
      */
@@ -39,67 +60,87 @@ public class HeapLBStack implements IPCStack {
 
     @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
     @Override
-    public IPCResponse performRequest(Request<?> request, String functionName, VolleyIPCFunction functionClass) throws IOException, AuthFailureError {
-        switch (request.getMethod()) {
-            case Request.Method.DEPRECATED_GET_OR_POST:
-                Log.e(TAG, "DEPRECATED_GET_OR_POST");
-                break;
-            case Request.Method.GET:
-//                // Not necessary to set the request method because connection defaults to GET but
-//                // being explicit here.
-                Log.i(TAG, "Entering Request.Method.GET");
-
-                Log.i(TAG, "The function name " + functionName);
-
-                byte[] postBody = request.getPostBody();
-                if (postBody == null) {
-                    reqID = IPCUtil.generateReqID();
-
-                    IPCUtil.Properties
-                            properties = new IPCUtil.Properties();
-
-                    IPCUtil.sendMessage(reqID, functionName, request,
-                            IPCUtil.IPC_GET,
-                            localBroadcastManager, properties);
-
-                    byte[] response = properties
-                            .getRequestResponse();
-
-                    int reference = ByteArrayHeap.NULL_REFERENCE;
-                    if (response != null) { // if a valid response
-                        // do not have to use 'instanceof' as we know exactly
-                        // which class in use.
-                        if (request.getClass() == ByteRequest.class) {
-                            reference = ByteBuffer.wrap(response).getInt(0);
-                            response = HeapUtil.getBlockData(reference, TAG);
-                        }
-                    } else Log.e(TAG, "Null response received! ");
-                    return new IPCResponse(response);
-                }
-                break;
-            case Request.Method.DELETE:
-                break;
-            case Request.Method.POST:
-                break;
-            case Request.Method.PUT:
-                break;
-            case Request.Method.HEAD:
-//                connection.setRequestMethod("HEAD");
-                break;
-            case Request.Method.OPTIONS:
-//                connection.setRequestMethod("OPTIONS");
-                break;
-            case Request.Method.TRACE:
-//                connection.setRequestMethod("TRACE");
-                break;
-            case Request.Method.PATCH:
-//                connection.setRequestMethod("PATCH");
-//                addBodyIfExists(connection, request);
-                break;
-            default:
-                throw new IllegalStateException("Unknown method type.");
-        }
-        return null;
+    public IPCResponse performRequest(Request<?> request, String functionName, VolleyIPCFunction functionClass,
+                                      long timeoutMs) throws IOException, VolleyError {
+        Log.i(TAG, "The function name " + functionName);
+
+        reqID = IPCUtil.generateReqID();
+
+        IPCUtil.Properties
+                properties = new IPCUtil.Properties();
+        // freed by the receiver of the replies, if it arrives late
+        properties.setRequestReplyInHeap(request.getClass() == ByteRequest
+                .class);
+
+        IPCUtil.sendMessage(reqID, buildRequestIntent(functionName,
+                request, reqID), request, localBroadcastManager,
+                properties, timeoutMs);
+
+        // falls back to another IPC type
+        if (properties.isRequestUnsupported()) return null;
+
+        byte[] response = properties
+                .getRequestResponse();
+
+        int reference = ByteArrayHeap.NULL_REFERENCE;
+        if (response != null) { // if a valid response
+            // do not have to use 'instanceof' as we know exactly
+            // which class in use.
+            if (request.getClass() == ByteRequest.class) {
+                reference = ByteBuffer.wrap(response).getInt(0);
+
+                // parse directly from the Heap
+                if (((ByteRequest) request).isHeapView())
+                    return IPCResponse.fromHeap(reference);
+
+                response = HeapUtil.getBlockData(reference, TAG);
+            }
+        } else Log.e(TAG, "Null response received! ");
+        return new IPCResponse(response);
+    }
+
+    /**
+     * Build the Intent of the request, with the body in the Heap if it is
+     * larger than the threshold
+     */
+    private static Intent buildRequestIntent(String functionName,
+                                             Request<?> request, String
+                                                     reqID) throws AuthFailureError {
+        byte[] body = IPCUtil.getBody(request);
+        int threshold = heapBodyThreshold;
+        if (body == null || threshold < 0 || body.length < threshold)
+            return IPCUtil.buildRequestIntent(functionName, request, body,
+                    reqID);
+
+        // sent in the Intent if the Heap is full
+        int reference = HeapUtil.putBlockData(body, TAG);
+        if (reference < 0)
+            return IPCUtil.buildRequestIntent(functionName, request, body,
+                    reqID);
+
+        Intent iVidIntent = IPCUtil.buildRequestIntent(functionName,
+                request, null, reqID);
+        iVidIntent.putExtra(IPCUtil.BODY_CONTENT_TYPE_EXTRA_NAME, request
+                .getBodyContentType());
+        iVidIntent.putExtra(IPCUtil.POSTBODY_REF_EXTRA_NAME, reference);
+        return iVidIntent;
+    }
+
+    /**
+     * Set the size of the request bodies sent over the Heap
+     *
+     * @param bytes the minimum size, 0 sends all bodies over the Heap, and
+     *              a negative size none.
+     */
+    public static void setHeapBodyThreshold(int bytes) {
+        heapBodyThreshold = bytes;
+    }
+
+    /**
+     * Get the size of the request bodies sent over the Heap
+     */
+    public static int getHeapBodyThreshold() {
+        return heapBodyThreshold;
     }
 
 }
@@ -0,0 +1,179 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocation metrics of a {@link Heap}, recorded by {@link InstrumentedHeap}.
+ * <p>
+ * Counters are atomic, and recording does not lock or allocate, therefore,
+ * the metrics can be left on in production.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class HeapMetrics {
+
+    /**
+     * Recorded operations
+     */
+    public static final int OP_MALLOC = 0;
+    public static final int OP_FREE = 1;
+    public static final int OP_REALLOC = 2;
+    public static final int OP_CALLOC = 3;
+    public static final int OP_WRITE = 4;
+    private static final int N_OPS = 5;
+
+    /**
+     * Number of size histogram buckets, bucket i counts sizes in
+     * (2^(i-1), 2^i]
+     */
+    public static final int N_SIZE_BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(N_OPS);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(N_OPS);
+    private final AtomicLongArray maxNanos = new AtomicLongArray(N_OPS);
+    /**
+     * Failures of each error code, indexed by -code - 1
+     */
+    private final AtomicLongArray failures = new AtomicLongArray(3);
+    private final AtomicLongArray sizeHistogram = new AtomicLongArray
+            (N_SIZE_BUCKETS);
+    private final AtomicLong liveBytes = new AtomicLong(0);
+    private final AtomicLong highWaterMark = new AtomicLong(0);
+
+    /**
+     * Record the latency of an operation
+     *
+     * @param op    one of the OP_* constants
+     * @param nanos the latency in nanoseconds
+     */
+    void record(int op, long nanos) {
+        counts.incrementAndGet(op);
+        totalNanos.addAndGet(op, nanos);
+
+        long max = maxNanos.get(op);
+        while (nanos > max && !maxNanos.compareAndSet(op, max, nanos))
+            max = maxNanos.get(op);
+    }
+
+    /**
+     * Record a failed operation
+     *
+     * @param code NULL_REFERENCE, INSUFFICIENT_MEMORY or INVALID_REFERENCE
+     */
+    void recordFailure(int code) {
+        if (code <= Heap.NULL_REFERENCE && code >= Heap.INVALID_REFERENCE)
+            failures.incrementAndGet(-code - 1);
+    }
+
+    /**
+     * Record an allocated block
+     *
+     * @param size size of the block
+     */
+    void recordAllocation(int size) {
+        sizeHistogram.incrementAndGet(bucketOf(size));
+
+        long live = liveBytes.addAndGet(size);
+        long max = highWaterMark.get();
+        while (live > max && !highWaterMark.compareAndSet(max, live))
+            max = highWaterMark.get();
+    }
+
+    /**
+     * Record a freed block
+     *
+     * @param size size of the block
+     */
+    void recordFree(int size) {
+        liveBytes.addAndGet(-size);
+    }
+
+    /**
+     * Get the size histogram bucket of a size
+     */
+    static int bucketOf(int size) {
+        return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Get the number of calls of an operation
+     *
+     * @param op one of the OP_* constants
+     */
+    public long getCount(int op) {
+        return counts.get(op);
+    }
+
+    /**
+     * Get the mean latency of an operation
+     *
+     * @param op one of the OP_* constants
+     * @return the latency in nanoseconds, or 0 if never called.
+     */
+    public long getMeanNanos(int op) {
+        long count = counts.get(op);
+        return count == 0 ? 0 : totalNanos.get(op) / count;
+    }
+
+    /**
+     * Get the highest latency of an operation
+     *
+     * @param op one of the OP_* constants
+     * @return the latency in nanoseconds
+     */
+    public long getMaxNanos(int op) {
+        return maxNanos.get(op);
+    }
+
+    /**
+     * Get the number of operations that returned an error code
+     *
+     * @param code NULL_REFERENCE, INSUFFICIENT_MEMORY or INVALID_REFERENCE
+     */
+    public long getFailures(int code) {
+        return code <= Heap.NULL_REFERENCE && code >= Heap.INVALID_REFERENCE
+                ? failures.get(-code - 1) : 0;
+    }
+
+    /**
+     * Get the bytes allocated, and not freed yet
+     */
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    /**
+     * Get the highest live bytes seen
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Get a copy of the size histogram, where bucket i counts the
+     * allocations of sizes in (2^(i-1), 2^i]
+     */
+    public long[] getSizeHistogram() {
+        long[] histogram = new long[N_SIZE_BUCKETS];
+        for (int i = 0; i < N_SIZE_BUCKETS; i++)
+            histogram[i] = sizeHistogram.get(i);
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "Heap metrics\n[malloc: " + getCount(OP_MALLOC) + " (" +
+                getMeanNanos(OP_MALLOC) + " ns)\nfree: " + getCount(OP_FREE) +
+                " (" + getMeanNanos(OP_FREE) + " ns)\nrealloc: " + getCount
+                (OP_REALLOC) + "\ncalloc: " + getCount(OP_CALLOC) +
+                "\nLive bytes: " + getLiveBytes() + "\nHigh water mark: " +
+                getHighWaterMark() + "\nInsufficient memory: " + getFailures
+                (Heap.INSUFFICIENT_MEMORY) + "\nInvalid reference: " +
+                getFailures(Heap.INVALID_REFERENCE) + "]\n";
+    }
+}
@@ -5,11 +5,11 @@ import android.support.annotation.RequiresApi;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
-import com.force.react.AuthFailureError;
 import com.force.react.HeapUtil;
 import com.force.react.IPCResponse;
 import com.force.react.IPCUtil;
 import com.force.react.Request;
+import com.force.react.VolleyError;
 import com.force.react.VolleyIPCFunction;
 
 import java.io.IOException;
@@ -40,77 +40,49 @@ public class HeapStack implements IPCStack {
     @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
     @Override
     public IPCResponse performRequest(Request<?> request, String
-            functionName, VolleyIPCFunction functionInterface) throws
-            IOException, AuthFailureError {
-        switch (request.getMethod()) {
-            case Request.Method.DEPRECATED_GET_OR_POST:
-                Log.e(TAG, "DEPRECATED_GET_OR_POST");
-                break;
-            case Request.Method.GET:
-//                // Not necessary to set the request method because connection defaults to GET but
-//                // being explicit here.
-                Log.i(TAG, "Entering Request.Method.GET");
-
-                Log.i(TAG, "The function name " + functionName);
-
-                byte[] postBody = request.getPostBody();
-                if (postBody == null) {
-
-//                    AsyncTask<Void, Void, Integer> responseTask =
-//                            functionInterface.handleGETreq(null);
-//
-//                    responseTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            functionName, VolleyIPCFunction functionInterface, long
+            timeoutMs) throws IOException, VolleyError {
+        Log.i(TAG, "The function name " + functionName);
+        if (functionInterface == null) {
+            Log.e(TAG, "The function is not in this process " + functionName);
+            return null;
+        }
 
-                    Integer response = null;
-//                    try {
-//                        response = responseTask.get();
-//                    } catch (InterruptedException e) {
-//                        e.printStackTrace();
-//                    } catch (ExecutionException e) {
-//                        e.printStackTrace();
-//                    }
+        // the function handles the request on this thread
+        return toIPCResponse(request, functionInterface.handleDirectreq
+                (request));
+    }
 
-                    functionInterface.handleGETreq(null, request).run();
-                    response = (Integer) functionInterface.getResponse();
+    /**
+     * Convert the response of a function, i.e., a reference to a block of
+     * the Heap, or a body returned by an override of handleDirectreq()
+     *
+     * @param request the request
+     * @param result  the reference, or the body, or null
+     * @return the response, or null if the function has no handler for the
+     * request, or returned no response
+     */
+    public static IPCResponse toIPCResponse(Request<?> request, Object
+            result) {
+        if (result instanceof byte[]) return new IPCResponse((byte[]) result);
+        // no handler, or no response, falls back to another IPC type
+        if (!(result instanceof Integer)) {
+            Log.e(TAG, "Null response received! ");
+            return null;
+        }
 
-                    // check if the response contains an exception
-                    if (response == null) {
-//                        Log.e(TAG, "Null response received! ");
-                        return new IPCResponse(null);
-                    }
+        Integer response = (Integer) result;
 
-                    if (request.getClass() == ByteRequest.class && response.intValue() > 0) {
-                        byte[] result = HeapUtil.getBlockData(response.intValue(), TAG);
-                        return new IPCResponse(result);
-                    }
+        if (request.getClass() == ByteRequest.class && response.intValue() > 0) {
+            // parse directly from the Heap
+            if (((ByteRequest) request).isHeapView())
+                return IPCResponse.fromHeap(response.intValue());
 
-                    return new IPCResponse(ByteBuffer.allocate(4).putInt
-                            (response).array());
-                }
-                break;
-            case Request.Method.DELETE:
-                break;
-            case Request.Method.POST:
-                break;
-            case Request.Method.PUT:
-                break;
-            case Request.Method.HEAD:
-//                connection.setRequestMethod("HEAD");
-                break;
-            case Request.Method.OPTIONS:
-//                connection.setRequestMethod("OPTIONS");
-                break;
-            case Request.Method.TRACE:
-//                connection.setRequestMethod("TRACE");
-                break;
-            case Request.Method.PATCH:
-//                connection.setRequestMethod("PATCH");
-//                addBodyIfExists(connection, request);
-                break;
-            default:
-                throw new IllegalStateException("Unknown method type.");
+            return new IPCResponse(HeapUtil.getBlockData(response
+                    .intValue(), TAG));
         }
-        return null;
-    }
 
+        return new IPCResponse(ByteBuffer.allocate(4).putInt
+                (response).array());
+    }
 }
@@ -1,13 +1,9 @@
 package com.force.react.toolbox;
 
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
-import android.os.AsyncTask;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
@@ -15,7 +11,6 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
-import android.support.annotation.RequiresApi;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 import android.util.Pair;
@@ -23,9 +18,9 @@ import android.util.Pair;
 import com.force.react.IPCUtil;
 import com.force.react.VolleyIPCFunction;
 
+import java.io.File;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Chathura Sarathchandra
@@ -39,11 +34,13 @@ public final class HelperVirtDevService {
 
     private static String TAG = HelperVirtDevService.class.getName();
     /**
-     * Intra-process function catalogue
+     * Intra-process function catalogue, keyed by the reversed domain names of
+     * the functions. Read by the dispatchers without locking, while functions
+     * register and deregister.
      */
-    private static HashMap<String, Pair<int[], VolleyIPCFunction>> functionCatalogue =
-            new
-                    HashMap<>();
+    private static final ConcurrentHashMap<String, Pair<int[],
+            VolleyIPCFunction>> functionCatalogue = new
+            ConcurrentHashMap<String, Pair<int[], VolleyIPCFunction>>();
 
     /**
      * Register a virtDev function
@@ -78,12 +75,17 @@ public final class HelperVirtDevService {
         if (localReg) {
             functionCatalogue.put(funcName, new Pair<int[], VolleyIPCFunction>
                     (supportedIPCs, functionClass));
+            // the catalogue is keyed by the reversed domain name
+            FunctionLookupCache.getInstance().invalidate(IPCUtil
+                    .reverseDomain(funcName));
             serviceProperties.setRegisteredLocally(true);
         }
 
         Log.i(TAG, "Local catalogue status " + functionCatalogue);
 
         if (remoteReg) {
+            final Messenger functionMessenger = functionClass == null ? null
+                    : functionClass.getMessenger();
 
             /**
              * Service Connection used for connecting to the VirtDev Service.
@@ -95,7 +97,8 @@ public final class HelperVirtDevService {
                 public void onServiceConnected(ComponentName name, IBinder service) {
                     mService = new Messenger(service);
                     try {
-                        doSendRegistrationMessage(funcName, supportedIPCs, mService,
+                        doSendRegistrationMessage(funcName, supportedIPCs,
+                                functionMessenger, mService,
                                 serviceProperties.getReplyToMessenger());
 
                         doUnbindService(context, this);
@@ -152,12 +155,14 @@ public final class HelperVirtDevService {
      *
      * @param funcName         The name for the function to be registered against.
      * @param supportedIPCs    Supproted IPC mechanisms
+     * @param functionMessenger {@link Messenger} of the function, if any
      * @param mService         {@link IBinder} object returned from virtDevService
      * @param replyToMessenger The replyTo {@link Messenger} object
      * @throws RemoteException
      */
     private static void doSendRegistrationMessage(String funcName, int[]
-            supportedIPCs, Messenger mService, Messenger replyToMessenger) throws RemoteException {
+            supportedIPCs, Messenger functionMessenger, Messenger mService,
+                                                  Messenger replyToMessenger) throws RemoteException {
         Bundle bundle = new Bundle();
 
         //Request ID
@@ -172,6 +177,17 @@ public final class HelperVirtDevService {
         bundle.putIntArray(IPCUtil
                 .IPC_AVAILABILITY_MSG_REGISTER_SERVICE, supportedIPCs);
 
+        // handed to the clients of the function by their lookups
+        if (functionMessenger != null)
+            bundle.putParcelable(IPCUtil
+                    .FUNCTION_MESSENGER_MSG_REGISTER_SERVICE, functionMessenger);
+
+        // the clients attach to the Heap, to be replied with references
+        File sharedFile = HeapFactory.getSharedFile();
+        if (functionMessenger != null && sharedFile != null)
+            bundle.putString(IPCUtil.SHARED_HEAP_MSG_REGISTER_SERVICE,
+                    sharedFile.getPath());
+
         Message msg = Message.obtain(null, IPCUtil.MSG_REGISTER_SERVICE,
                 bundle);
 
@@ -202,6 +218,9 @@ public final class HelperVirtDevService {
 
         if (localDereg) {
             functionCatalogue.remove(funcName);
+            FunctionLookupCache.getInstance().invalidate(IPCUtil
+                    .reverseDomain(funcName));
+            MessengerStack.invalidate(IPCUtil.reverseDomain(funcName));
             properties.setRegisteredLocally(false);
         }
 
@@ -309,25 +328,8 @@ public final class HelperVirtDevService {
     public static IPCUtil.Properties createConnection() {
         final IPCUtil.Properties virtDevServiceConnection =
                 new IPCUtil.Properties();
-        ServiceConnection mConnection = new ServiceConnection() {
-            @Override
-            public void onServiceConnected(ComponentName name, IBinder service) {
-                virtDevServiceConnection.setServiceBinder(service);
-                Log.i(TAG, "Service connected! Got a new IBinder object = " +
-                        (virtDevServiceConnection.getServiceBinder() != null));
-            }
-
-            @Override
-            public void onServiceDisconnected(ComponentName name) {
-                // cant clean the HelperVirtDevService object as its 'final'.
-                virtDevServiceConnection.setServiceBinder(null);
-                virtDevServiceConnection.setServiceConnection(null);
-
-                Log.i(TAG, "Service disconnected!");
-            }
-        };
-
-        virtDevServiceConnection.setServiceConnection(mConnection);
+        virtDevServiceConnection.setServiceConnection(new
+                VirtServiceConnection(virtDevServiceConnection));
 
         return virtDevServiceConnection;
     }
@@ -367,13 +369,17 @@ public final class HelperVirtDevService {
     public static void doUnbindService(Context context, ServiceConnection
             mConnection) {
         context.unbindService(mConnection);
+        // onServiceDisconnected() is not called when unbinding
+        if (mConnection instanceof VirtServiceConnection)
+            ((VirtServiceConnection) mConnection).onServiceDisconnected(null);
 //        mIsBound = false;
         Log.i(TAG, "Service Unbinding.");
     }
 
     /**
-     * Registers a {@link BroadcastReceiver} for receiving the sendMessage
-     * response - listening for the response addressed to the request ID.
+     * Registers a request for receiving the sendMessage response - listening
+     * for the response addressed to the request ID, by the reply receiver of
+     * the process.
      *
      * @param reqID                 ID used for the request
      * @param localBroadcastManager {@link LocalBroadcastManager} of the
@@ -384,31 +390,24 @@ public final class HelperVirtDevService {
      */
     public static void registerBReceiver(final String reqID, LocalBroadcastManager
             localBroadcastManager, final IPCUtil.Properties properties) {
-        BroadcastReceiver broadcastReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-
-                Log.i(TAG, "Hello: reqID " + intent.getAction());
-
-                switch (intent.getStringExtra(IPCUtil.METHOD_EXTRA_NAME)) {
-                    case IPCUtil.IPC_GET_REPLY:
-                        properties.setRequestResponse(intent.getByteArrayExtra(IPCUtil
-                                .GET_REPLYBODY_EXTRA_NAME));
-
-                        properties.setRequestResponseReceived(true);
-                        // the following throws errors in case of null
-                        // responses
-//                        Log.i(TAG, "HTTP GET response " + response.toString());
-                        break;
-                }
-                //}
-            }
-        };
+        IPCReplyReceiver.getInstance(localBroadcastManager).expect(reqID,
+                properties);
+    }
 
-        //register the broadcast receiver here.
-        IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(reqID);
-        localBroadcastManager.registerReceiver(broadcastReceiver, intentFilter);
+    /**
+     * Stops listening for the sendMessage response, once received or timed
+     * out.
+     *
+     * @param reqID                 ID used for the request
+     * @param localBroadcastManager {@link LocalBroadcastManager} of the
+     *                              application.
+     * @return false, if the response has been received meanwhile
+     */
+    public static boolean unregisterBReceiver(final String reqID,
+                                              LocalBroadcastManager
+                                                      localBroadcastManager) {
+        return IPCReplyReceiver.getInstance(localBroadcastManager).cancel
+                (reqID);
     }
 
     /**
@@ -419,13 +418,11 @@ public final class HelperVirtDevService {
      * Looks up from intra-process catalogue first, then from inter-process
      * one if the first lookup does not return a match.
      */
-    @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
     public static void lookup(final String functionName,
                               IBinder
                                       serviceBinder, final IPCUtil.Properties properties, Context context, int
                                       WAIT_FOR_VIRT_SERVICE, boolean remoteLookup)
-            throws
-            ExecutionException, InterruptedException {
+            throws InterruptedException {
 
         Pair<int[], VolleyIPCFunction> result = functionCatalogue.get(IPCUtil
                 .reverseDomain(functionName));
@@ -440,14 +437,16 @@ public final class HelperVirtDevService {
         }
 
         if (supportIPC != null) {
-            Log.i(TAG, "Found in local catalogue " + functionName +
-                    " " + functionCatalogue.toString());
             properties.setLookupResponse(supportIPC);
             properties.setBypassFuncLocal(false);
             properties.setFunctionInterface(functionClass);
-        } else if (remoteLookup && serviceBinder != null) {
-            Log.i(TAG, "Not found in local catalogue " + functionName +
-                    " " + functionCatalogue.toString());
+            properties.setFunctionMessenger(functionClass == null ? null :
+                    functionClass.getMessenger());
+        } else if (remoteLookup && serviceBinder != null && serviceBinder
+                .isBinderAlive()) {
+            // the binder may have been bound by the application, instead
+            // of createConnection()
+            Log.i(TAG, "Not found in local catalogue " + functionName);
             Messenger mMessenger = new Messenger(new Handler(Looper.getMainLooper()) {
                 @Override
                 public void handleMessage(Message msg) {
@@ -459,8 +458,16 @@ public final class HelperVirtDevService {
                                     (IPCUtil.
                                             IPC_AVAILABILITY_MSG_QUERY_SERVICE);
 
+                            properties.setFunctionMessenger((Messenger)
+                                    ((Bundle) msg.obj).getParcelable(IPCUtil
+                                            .FUNCTION_MESSENGER_MSG_QUERY_SERVICE));
+                            String sharedPath = ((Bundle) msg.obj).getString
+                                    (IPCUtil.SHARED_HEAP_MSG_QUERY_SERVICE);
+                            if (sharedPath != null) HeapFactory
+                                    .attachSharedHeap(new File(sharedPath));
                             properties.setLookupResponse(functionMeta);
                             properties.setBypassFuncLocal(false);
+                            properties.completeLookup();
                             Log.i(TAG, "Service meta received for " + functionName +
                                     " " + Arrays
                                     .toString(functionMeta) + " Req ID " + ((Bundle)
@@ -469,6 +476,7 @@ public final class HelperVirtDevService {
                         case IPCUtil.MSG_NO_REGISTERED_SERVICE:
                             Log.i(TAG, "The service does not exist locally");
                             properties.setBypassFuncLocal(true);
+                            properties.completeLookup();
                             break;
                         default:
                             super.handleMessage(msg);
@@ -500,10 +508,11 @@ public final class HelperVirtDevService {
 
             } catch (RemoteException e) {
                 Log.e(TAG, e.toString());
+                // the service died, do not wait for the reply
+                properties.completeLookup();
             }
 
-            waitForVirtService(functionName, context,
-                    WAIT_FOR_VIRT_SERVICE,
+            waitForVirtService(functionName, WAIT_FOR_VIRT_SERVICE,
                     properties);
         } else {
 //            if (serviceBinder == null) Log.e(TAG, "The service binder is not " +
@@ -513,49 +522,53 @@ public final class HelperVirtDevService {
     }
 
     /**
-     * Waits for the lookup response from virtDevService.
+     * Waits for the lookup response from virtDevService. The calling thread
+     * sleeps until the reply is handled, or the timeout.
      *
      * @param waitForVirtS Waiting time
      * @param properties
-     * @throws ExecutionException
      * @throws InterruptedException
      */
-    @RequiresApi(api = Build.VERSION_CODES.HONEYCOMB)
-    private static void waitForVirtService(final String functionName, final Context
-            context, final int waitForVirtS, final IPCUtil.Properties properties)
-            throws ExecutionException, InterruptedException {
-        // '.get()' blocks until the result
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-                long cTime = System.currentTimeMillis();
-                long endTime = cTime + waitForVirtS;
-                Log.i(TAG, "Waiting for response");
-
-                // does not wait if the service does not exist
-                // The sendMessage service name should look as below
-                // com.interdigital.force.virtdevservice.VirtDevService
-                properties.setBypassFuncLocal(!IPCUtil
-                        .isServiceRunning(IPCUtil
-                                        .FORCE_SERVICE_PACKAGE_NAME + "." + IPCUtil.FORCE_SERVICE_NAME,
-                                context));
-
-                Log.i(TAG, "is virtDevService running for " + functionName
-                        + " " + !properties.isBypassFuncLocal());
-
-                while (!properties.isBypassFuncLocal() && properties.getLookupResponse() ==
-                        null && System
-                        .currentTimeMillis() <
-                        endTime) {
-                }
+    private static void waitForVirtService(final String functionName, final
+    int waitForVirtS, final IPCUtil.Properties properties)
+            throws InterruptedException {
+        Log.i(TAG, "Waiting for response");
+        properties.awaitLookup(waitForVirtS);
+
+        // When the query times out, offload the request to the network.
+        if (properties.getLookupResponse() == null) properties
+                .setBypassFuncLocal(true);
+        Log.i(TAG, "Waiting for response - Done " + functionName + " " +
+                properties.getLookupResponse() + " " + properties.isBypassFuncLocal());
+    }
 
-                // When the query times out, offload the request to the network.
-                if (properties.getLookupResponse() == null) properties
-                        .setBypassFuncLocal(true);
-                Log.i(TAG, "Waiting for response - Done " + functionName + " " +
-                        properties.getLookupResponse() + " " + properties.isBypassFuncLocal());
-                return null;
-            }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR).get();
+    /**
+     * Connection to virtDevService, that keeps the {@link IBinder} in its
+     * properties, while the service is connected.
+     */
+    private static final class VirtServiceConnection implements
+            ServiceConnection {
+        private final IPCUtil.Properties virtDevServiceConnection;
+
+        VirtServiceConnection(IPCUtil.Properties virtDevServiceConnection) {
+            this.virtDevServiceConnection = virtDevServiceConnection;
+        }
+
+        @Override
+        public synchronized void onServiceConnected(ComponentName name,
+                                                    IBinder service) {
+            virtDevServiceConnection.setServiceBinder(service);
+            Log.i(TAG, "Service connected! Got a new IBinder object = " +
+                    (virtDevServiceConnection.getServiceBinder() != null));
+        }
+
+        @Override
+        public synchronized void onServiceDisconnected(ComponentName name) {
+            // cant clean the HelperVirtDevService object as its 'final'.
+            virtDevServiceConnection.setServiceBinder(null);
+            virtDevServiceConnection.setServiceConnection(null);
+
+            Log.i(TAG, "Service disconnected!");
+        }
     }
 }
@@ -122,8 +122,16 @@ public class HttpHeaderParser {
         return entry;
     }
 
+    /**
+     * Extracts a {@link Cache.Entry} from an {@link IPCResponse}.
+     *
+     * @param response The IPC response
+     * @return a cache entry for the given response, or null if the response
+     * is a view of the Heap, or has no body, i.e., is not cacheable.
+     */
     public static Cache.Entry parseCacheHeaders(IPCResponse response) {
-        long now = System.currentTimeMillis();
+        // views of the Heap are released once the request finishes
+        if (response.data == null) return null;
 
         Cache.Entry entry = new Cache.Entry();
 
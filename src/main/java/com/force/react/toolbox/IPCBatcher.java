@@ -0,0 +1,253 @@
+package com.force.react.toolbox;
+
+import android.util.Log;
+
+import com.force.react.HeapUtil;
+import com.force.react.IPCResponse;
+import com.force.react.RejectedError;
+import com.force.react.Request;
+import com.force.react.TimeoutError;
+import com.force.react.VolleyError;
+import com.force.react.VolleyIPCFunction;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects the requests of the dispatchers to a function of the same
+ * process into batches, handled by one call of
+ * {@link VolleyIPCFunction#handleBatchreq(Request[])}, if the function has
+ * been set with {@link VolleyIPCFunction#setBatching(int, long)}.
+ * <p>
+ * The first request of a batch waits for the window of the function, or
+ * until the batch is full, then submits the batch to the workers of the
+ * function, and hands the responses, read from one block of the Heap, to
+ * the requests of the batch. The requests whose callers stop waiting are
+ * not handled, unless the function has reached them already.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class IPCBatcher {
+    private static final String TAG = IPCBatcher.class.getName();
+
+    /**
+     * Batchers of the functions
+     */
+    private static final ConcurrentHashMap<VolleyIPCFunction, IPCBatcher>
+            batchers = new ConcurrentHashMap<VolleyIPCFunction, IPCBatcher>();
+
+    private final VolleyIPCFunction function;
+
+    /**
+     * The batch collecting requests, if any
+     */
+    private Batch open = null;
+
+    IPCBatcher(VolleyIPCFunction function) {
+        this.function = function;
+    }
+
+    /**
+     * Get the batcher of a function
+     */
+    public static IPCBatcher getInstance(VolleyIPCFunction function) {
+        IPCBatcher batcher = batchers.get(function);
+        if (batcher != null) return batcher;
+
+        batchers.putIfAbsent(function, new IPCBatcher(function));
+        return batchers.get(function);
+    }
+
+    /**
+     * Drop the batcher of a function, i.e., when it is stopped
+     */
+    public static void invalidate(VolleyIPCFunction function) {
+        batchers.remove(function);
+    }
+
+    /**
+     * Perform a request in a batch, and wait for its response
+     *
+     * @param request      the request
+     * @param functionName The name of the function (reversed domain name)
+     * @param timeoutMs    the longest time to wait for the response
+     * @return the response
+     * @throws IOException  if the batch could not be handled
+     * @throws VolleyError  if the batch is rejected, or times out, or the
+     *                      error of the function
+     */
+    public IPCResponse performRequest(Request<?> request, String
+            functionName, long timeoutMs) throws IOException, VolleyError {
+        Batch batch;
+        int index;
+        boolean first;
+        synchronized (this) {
+            first = open == null;
+            if (first) open = new Batch(function.getBatchMaxItems());
+            batch = open;
+            index = batch.add(request);
+            if (batch.isFull()) {
+                open = null;
+                batch.full.countDown();
+            }
+        }
+
+        long deadline = System.nanoTime() / 1000000 + timeoutMs;
+        try {
+            if (first) lead(batch, functionName, deadline);
+
+            if (!batch.done.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.e(TAG, "Timed out waiting for " + functionName);
+                batch.abandon(index);
+                throw new TimeoutError();
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, e.toString());
+            batch.abandon(index);
+            // the dispatcher may have been told to quit
+            Thread.currentThread().interrupt();
+            // the function may have reached it, not to be sent again
+            throw new TimeoutError();
+        }
+
+        request.addMarker("ipc-batch-" + batch.size);
+        if (batch.ioError != null) throw batch.ioError;
+        if (batch.error != null) throw batch.error;
+        // the function has no handler, or no response, for the request
+        if (batch.bodies[index] == null) return null;
+        return new IPCResponse(batch.bodies[index]);
+    }
+
+    /**
+     * Wait for the window, or until the batch is full, then handle the
+     * batch, with what is left of the timeout of the first request. The
+     * requests of a batch that is not handled, i.e., if the first request is
+     * interrupted, are failed, instead of waiting for their timeout.
+     */
+    private void lead(Batch batch, String functionName, long deadline)
+            throws InterruptedException {
+        boolean windowed = false;
+        try {
+            batch.full.await(function.getBatchWindowMs(), TimeUnit
+                    .MILLISECONDS);
+            windowed = true;
+        } finally {
+            synchronized (this) {
+                if (open == batch) open = null;
+            }
+            if (windowed) handle(batch, functionName, Math.max(0, deadline -
+                    System.nanoTime() / 1000000));
+            else {
+                batch.ioError = new IOException("Batch of " + functionName
+                        + " not submitted");
+                batch.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Handle a batch on the workers of the function
+     */
+    private void handle(Batch batch, String functionName, long timeoutMs) {
+        Request<?>[] requests = batch.submit();
+
+        VolleyIPCFunction.HandlerCall call = new VolleyIPCFunction
+                .HandlerCall();
+        Future<Object> result = null;
+        try {
+            result = function.submitBatch(requests, call);
+            Object reference = result.get(timeoutMs, TimeUnit.MILLISECONDS);
+
+            byte[][] bodies = reference instanceof Integer ? HeapUtil
+                    .getBatchData((Integer) reference, TAG) : null;
+            if (bodies == null || bodies.length != batch.size)
+                batch.ioError = new IOException("Invalid batch of " +
+                        functionName);
+            else batch.bodies = bodies;
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, e.toString());
+            batch.error = new RejectedError("Rejected by " + functionName);
+        } catch (TimeoutException e) {
+            Log.e(TAG, "Timed out waiting for " + functionName);
+            // frees the block of the responses, if returned later
+            call.abandon();
+            result.cancel(true);
+            batch.error = new TimeoutError();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof VolleyError)
+                batch.error = (VolleyError) e.getCause();
+            else batch.ioError = new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Log.e(TAG, e.toString());
+            call.abandon();
+            result.cancel(true);
+            batch.ioError = new IOException(e.toString());
+            Thread.currentThread().interrupt();
+        } finally {
+            batch.done.countDown();
+        }
+    }
+
+    /**
+     * Requests of a batch, and their responses
+     */
+    private static final class Batch {
+        private final Request<?>[] requests;
+        private int size = 0;
+        /**
+         * The requests handed to the function, once the batch is closed
+         */
+        private Request<?>[] submitted = null;
+        /**
+         * Released when the batch is full, or by the window
+         */
+        private final CountDownLatch full = new CountDownLatch(1);
+        /**
+         * Released when the batch has been handled
+         */
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile byte[][] bodies = null;
+        private volatile VolleyError error = null;
+        private volatile IOException ioError = null;
+
+        Batch(int maxItems) {
+            requests = new Request<?>[Math.max(1, maxItems)];
+        }
+
+        int add(Request<?> request) {
+            requests[size] = request;
+            return size++;
+        }
+
+        boolean isFull() {
+            return size == requests.length;
+        }
+
+        /**
+         * Get the requests to hand to the function, without the requests
+         * whose callers have stopped waiting
+         */
+        synchronized Request<?>[] submit() {
+            submitted = Arrays.copyOf(requests, size);
+            return submitted;
+        }
+
+        /**
+         * Drop a request whose caller has stopped waiting, so that the
+         * function skips it, if it has not reached it yet
+         */
+        synchronized void abandon(int index) {
+            requests[index] = null;
+            if (submitted != null) submitted[index] = null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.force.react.toolbox;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a health score of each IPC type, i.e., the moving averages of its
+ * failure rate and its latency, shared by the dispatchers. {@link
+ * AndroidIPC} tries the demoted IPC types of a function after the others.
+ * <p>
+ * An IPC type is demoted while it fails at least half of the requests, or
+ * takes longer than the slow threshold, on average. It is given another
+ * chance once it has not been used for RETRY_DEMOTED_MS.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class IPCHealth {
+
+    public static final long DEFAULT_SLOW_MS = 1000;
+    public static final long RETRY_DEMOTED_MS = 30000;
+    /**
+     * Weight of the latest request in the moving averages
+     */
+    private static final double ALPHA = 0.2;
+    private static final double DEMOTE_FAILURE_RATE = 0.5;
+
+    private static final IPCHealth instance = new IPCHealth();
+
+    private final ConcurrentHashMap<Integer, Score> scores = new
+            ConcurrentHashMap<Integer, Score>();
+    private volatile long slowMs = DEFAULT_SLOW_MS;
+
+    IPCHealth() {
+    }
+
+    /**
+     * Get the scores shared by the dispatchers
+     */
+    public static IPCHealth getInstance() {
+        return instance;
+    }
+
+    /**
+     * Set the average latency of a slow IPC type
+     *
+     * @param slowMs the latency in milliseconds
+     */
+    public IPCHealth setSlowThreshold(long slowMs) {
+        if (slowMs <= 0) throw new IllegalArgumentException("Invalid " +
+                "threshold " + slowMs);
+        this.slowMs = slowMs;
+        return this;
+    }
+
+    /**
+     * Record a request completed over an IPC type
+     *
+     * @param ipcType      the IPC type, e.g.,
+     *                     IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP
+     * @param latencyNanos the time taken
+     */
+    public void recordSuccess(int ipcType, long latencyNanos) {
+        getScore(ipcType).record(false, latencyNanos / 1000000.0);
+    }
+
+    /**
+     * Record a request failed, or timed out, over an IPC type
+     *
+     * @param ipcType the IPC type
+     */
+    public void recordFailure(int ipcType) {
+        getScore(ipcType).record(true, 0);
+    }
+
+    /**
+     * Check if an IPC type is to be tried after the others
+     *
+     * @param ipcType the IPC type
+     */
+    public boolean isDemoted(int ipcType) {
+        Score score = scores.get(ipcType);
+        return score != null && score.isDemoted(slowMs);
+    }
+
+    /**
+     * Get the average failure rate of an IPC type, from 0 to 1
+     */
+    public double getFailureRate(int ipcType) {
+        Score score = scores.get(ipcType);
+        return score == null ? 0 : score.getFailureRate();
+    }
+
+    /**
+     * Get the average latency of the requests completed over an IPC type
+     */
+    public double getLatencyMs(int ipcType) {
+        Score score = scores.get(ipcType);
+        return score == null ? 0 : score.getLatencyMs();
+    }
+
+    /**
+     * Forget the scores of all IPC types
+     */
+    public void reset() {
+        scores.clear();
+    }
+
+    private Score getScore(int ipcType) {
+        Score score = scores.get(ipcType);
+        if (score != null) return score;
+
+        Score newScore = new Score();
+        score = scores.putIfAbsent(ipcType, newScore);
+        return score == null ? newScore : score;
+    }
+
+    /**
+     * Moving averages of an IPC type
+     */
+    private static final class Score {
+        private double failureRate = 0;
+        private double latencyMs = 0;
+        private boolean hasLatency = false;
+        private long lastUsed;
+
+        synchronized void record(boolean failed, double latencyMs) {
+            failureRate += ALPHA * ((failed ? 1 : 0) - failureRate);
+            if (!failed) {
+                this.latencyMs = hasLatency ? this.latencyMs + ALPHA *
+                        (latencyMs - this.latencyMs) : latencyMs;
+                hasLatency = true;
+            }
+            lastUsed = System.nanoTime();
+        }
+
+        synchronized boolean isDemoted(long slowMs) {
+            if ((System.nanoTime() - lastUsed) / 1000000 >= RETRY_DEMOTED_MS)
+                return false;
+            return failureRate >= DEMOTE_FAILURE_RATE || latencyMs >= slowMs;
+        }
+
+        synchronized double getFailureRate() {
+            return failureRate;
+        }
+
+        synchronized double getLatencyMs() {
+            return latencyMs;
+        }
+    }
+}
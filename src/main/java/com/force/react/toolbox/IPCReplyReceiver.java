@@ -0,0 +1,161 @@
+package com.force.react.toolbox;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import com.force.react.HeapUtil;
+import com.force.react.IPCUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Receives the replies of all {@link LocalBroadcastStack} and
+ * {@link HeapLBStack} requests of the process, addressed to
+ * {@link IPCUtil#IPC_REPLY_ACTION}, and hands each reply to the request
+ * waiting for it, by the request ID.
+ * <p>
+ * One receiver is registered for the lifetime of the process, therefore,
+ * the cost of dispatching a reply does not grow with the number of requests
+ * sent. A request is removed when its reply is received, or when it stops
+ * waiting, i.e., times out. The late reply of a request replied with a
+ * reference to the Heap, i.e., by {@link HeapLBStack}, frees the block.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final class IPCReplyReceiver extends BroadcastReceiver {
+
+    private static final String TAG = IPCReplyReceiver.class.getName();
+
+    /**
+     * The largest number of abandoned requests kept, whose replies may never
+     * arrive, i.e., if the function has died
+     */
+    private static final int MAX_ABANDONED = 256;
+
+    private static IPCReplyReceiver instance = null;
+    private static LocalBroadcastManager registeredWith = null;
+
+    /**
+     * Requests waiting for replies, by request ID
+     */
+    private final ConcurrentHashMap<String, IPCUtil.Properties> pending = new
+            ConcurrentHashMap<String, IPCUtil.Properties>();
+    /**
+     * Requests that timed out, whose replies are references to the Heap
+     */
+    private final Set<String> abandoned = Collections.newSetFromMap(Collections
+            .synchronizedMap(new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean>
+                                                            eldest) {
+                    return size() > MAX_ABANDONED;
+                }
+            }));
+
+    private IPCReplyReceiver() {
+    }
+
+    /**
+     * Get the receiver of the process, registered with a
+     * {@link LocalBroadcastManager}, and only with the last one given
+     *
+     * @param localBroadcastManager {@link LocalBroadcastManager} of the
+     *                              application.
+     */
+    static synchronized IPCReplyReceiver getInstance(LocalBroadcastManager
+                                                             localBroadcastManager) {
+        if (instance == null) instance = new IPCReplyReceiver();
+
+        if (registeredWith != localBroadcastManager) {
+            // replies would be delivered twice otherwise
+            if (registeredWith != null) registeredWith.unregisterReceiver
+                    (instance);
+            localBroadcastManager.registerReceiver(instance, new IntentFilter
+                    (IPCUtil.IPC_REPLY_ACTION));
+            registeredWith = localBroadcastManager;
+        }
+        return instance;
+    }
+
+    /**
+     * Wait for the reply of a request
+     *
+     * @param reqID      ID of the request
+     * @param properties where the reply is stored, and signalled
+     */
+    void expect(String reqID, IPCUtil.Properties properties) {
+        pending.put(reqID, properties);
+    }
+
+    /**
+     * Stop waiting for the reply of a request, if not received. The block of
+     * the reply is freed when it arrives, if the request is replied with a
+     * reference to the Heap.
+     *
+     * @param reqID ID of the request
+     * @return false, if the reply has been received meanwhile
+     */
+    boolean cancel(String reqID) {
+        IPCUtil.Properties properties = pending.remove(reqID);
+        if (properties == null) return false;
+
+        if (properties.isRequestReplyInHeap()) abandoned.add(reqID);
+        return true;
+    }
+
+    /**
+     * Get the number of requests waiting for replies
+     */
+    int getNPending() {
+        return pending.size();
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String reqID = intent.getStringExtra(IPCUtil.REQ_ID_EXTRA_NAME);
+        IPCUtil.Properties properties = reqID == null ? null : pending.remove
+                (reqID);
+
+        String method = intent.getStringExtra(IPCUtil.METHOD_EXTRA_NAME);
+        if (properties == null) {
+            Log.e(TAG, "Reply of unknown or timed out request " + reqID);
+            if (reqID != null && abandoned.remove(reqID) && IPCUtil
+                    .IPC_GET_REPLY.equals(method))
+                free(intent.getByteArrayExtra(IPCUtil
+                        .GET_REPLYBODY_EXTRA_NAME));
+            return;
+        }
+
+        // the requester waits for a reply it has not been able to cancel
+        if (IPCUtil.IPC_GET_REPLY.equals(method)) {
+            properties.setRequestResponse(intent.getByteArrayExtra(IPCUtil
+                    .GET_REPLYBODY_EXTRA_NAME));
+        } else if (IPCUtil.IPC_ERROR_REPLY.equals(method)) {
+            properties.setRequestError(intent.getStringExtra(IPCUtil
+                    .ERROR_EXTRA_NAME));
+        } else if (IPCUtil.IPC_UNSUPPORTED_REPLY.equals(method)) {
+            properties.setRequestUnsupported(true);
+        }
+        properties.setRequestResponseReceived(true);
+    }
+
+    /**
+     * Free the block of a late reply, i.e., the reference to the Heap
+     */
+    private static void free(byte[] body) {
+        if (body == null || body.length != 4) return;
+        // runs on the main looper, which an invalid reference must not stop
+        HeapUtil.freeBlockData(ByteBuffer.wrap(body).getInt(0), TAG);
+    }
+}
@@ -0,0 +1,212 @@
+package com.force.react.toolbox;
+
+import android.util.Log;
+
+import com.force.react.AuthFailureError;
+import com.force.react.IPCResponse;
+import com.force.react.NetworkError;
+import com.force.react.NoConnectionError;
+import com.force.react.RejectedError;
+import com.force.react.TimeoutError;
+import com.force.react.VolleyError;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical IPC requests in flight, shared by the dispatchers.
+ * The first request of a key calls the function, and the requests of the
+ * same key received until it completes wait for its result, instead of
+ * calling the function again.
+ * <p>
+ * The waiting requests are given a copy of the response, shared by all of
+ * them, since a view of the {@link com.force.react.Heap} is released by
+ * the first request, or a copy of the error each, since the dispatchers
+ * set the errors they deliver. A waiting request that times out calls the
+ * function on its own, with what is left of its timeout.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class IPCSingleFlight {
+    private static final String TAG = IPCSingleFlight.class.getName();
+
+    private static final IPCSingleFlight instance = new IPCSingleFlight();
+
+    private final ConcurrentHashMap<String, Flight> flights = new
+            ConcurrentHashMap<String, Flight>();
+    private final AtomicLong nCoalesced = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    IPCSingleFlight() {
+    }
+
+    /**
+     * Get the requests in flight of the dispatchers
+     */
+    public static IPCSingleFlight getInstance() {
+        return instance;
+    }
+
+    /**
+     * Set if identical requests are coalesced
+     *
+     * @param enabled true, if yes, false otherwise.
+     */
+    public IPCSingleFlight setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the number of requests given the response of another request
+     */
+    public long getNCoalesced() {
+        return nCoalesced.get();
+    }
+
+    /**
+     * Perform a call, or wait for the identical call in flight
+     *
+     * @param key       identifies identical calls, e.g., the function name
+     *                  and the URL
+     * @param timeoutMs the longest time to wait for the call in flight, and
+     *                  to perform the call
+     * @param call      the call
+     * @return the response of the call, or of the identical call in flight
+     * @throws VolleyError the error of the call, or of the identical call in
+     *                     flight
+     */
+    public IPCResponse execute(String key, long timeoutMs, Call call) throws
+            VolleyError {
+        if (!enabled) return call.perform(timeoutMs);
+
+        long deadline = System.nanoTime() / 1000000 + timeoutMs;
+        while (true) {
+            Flight flight = new Flight();
+            Flight inFlight = flights.putIfAbsent(key, flight);
+
+            if (inFlight == null) return lead(key, flight, call, Math.max(0,
+                    deadline - System.nanoTime() / 1000000));
+
+            // completed meanwhile, try again
+            if (!inFlight.join()) continue;
+
+            try {
+                long remainingMs = deadline - System.nanoTime() / 1000000;
+                if (remainingMs <= 0 || !inFlight.latch.await(remainingMs,
+                        TimeUnit.MILLISECONDS)) {
+                    Log.e(TAG, "Timed out waiting for " + key);
+                    return call.perform(Math.max(0, deadline - System
+                            .nanoTime() / 1000000));
+                }
+            } catch (InterruptedException e) {
+                Log.e(TAG, e.toString());
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            nCoalesced.incrementAndGet();
+            call.coalesced();
+            if (inFlight.error != null) throw copyOf(inFlight.error);
+            return inFlight.responded ? new IPCResponse(inFlight.data) : null;
+        }
+    }
+
+    private IPCResponse lead(String key, Flight flight, Call call, long
+            timeoutMs) throws VolleyError {
+        IPCResponse response = null;
+        VolleyError error = null;
+        try {
+            response = call.perform(timeoutMs);
+            return response;
+        } catch (VolleyError e) {
+            error = e;
+            throw e;
+        } finally {
+            flight.complete(response, error);
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Copy the error of a call for a waiting request, of the same type, with
+     * the error as its cause. Errors of other types than those of the IPC
+     * stacks are copied as a {@link VolleyError}.
+     */
+    static VolleyError copyOf(VolleyError error) {
+        if (error instanceof RejectedError)
+            return (VolleyError) new RejectedError(error.getMessage())
+                    .initCause(error);
+        if (error instanceof TimeoutError)
+            return (VolleyError) new TimeoutError().initCause(error);
+        if (error instanceof NoConnectionError)
+            return new NoConnectionError(error);
+        if (error instanceof NetworkError) return new NetworkError(error);
+        if (error instanceof AuthFailureError)
+            return new AuthFailureError(error.getMessage(), error);
+        return new VolleyError(error.getMessage(), error);
+    }
+
+    /**
+     * A call of a function
+     */
+    public static abstract class Call {
+
+        /**
+         * Perform the call
+         *
+         * @param timeoutMs what is left of the timeout of the request
+         * @return the response, or null to send the request over the network
+         */
+        public abstract IPCResponse perform(long timeoutMs) throws
+                VolleyError;
+
+        /**
+         * Called if the response of an identical call is returned instead
+         */
+        public void coalesced() {
+        }
+    }
+
+    /**
+     * A call in flight, and the requests waiting for it
+     */
+    private static final class Flight {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private int nWaiting = 0;
+        private boolean completed = false;
+        private volatile byte[] data = null;
+        private volatile boolean responded = false;
+        private volatile VolleyError error = null;
+
+        /**
+         * Wait for the call
+         *
+         * @return false, if the call has already completed
+         */
+        synchronized boolean join() {
+            if (completed) return false;
+            nWaiting++;
+            return true;
+        }
+
+        synchronized void complete(IPCResponse response, VolleyError error) {
+            completed = true;
+            if (nWaiting > 0) {
+                // copied out of the Heap, before released by the caller
+                if (response != null) data = response.getRawResponse();
+                responded = response != null;
+                this.error = error;
+            }
+            latch.countDown();
+        }
+    }
+}
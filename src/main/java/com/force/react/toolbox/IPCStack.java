@@ -3,6 +3,7 @@ package com.force.react.toolbox;
 import com.force.react.AuthFailureError;
 import com.force.react.IPCResponse;
 import com.force.react.Request;
+import com.force.react.VolleyError;
 import com.force.react.VolleyIPCFunction;
 
 import java.io.IOException;
@@ -18,14 +19,23 @@ public interface IPCStack {
     /**
      * Performs an HTTP request with the given parameters.
      * <p>
-     * <p>A GET request is sent if request.getPostBody() == null. A POST request is sent otherwise,
-     * and the Content-Type header is set to request.getPostBodyContentType().</p>
+     * <p>The request is sent with its method, i.e., IPCUtil.getIPCMethod(),
+     * and the bodies of POST, PUT and PATCH requests.</p>
      *
      * @param request      the request to perform
      * @param functionName The name of the function (reversed domain name)
-     * @param functionClass
-     * @return the HTTP response
+     * @param functionClass the function, if it is in this process
+     * @param timeoutMs    the longest time to wait for the response, i.e.,
+     *                     the remainder of the timeout of the request
+     * @return the HTTP response, or null if the request cannot be sent over
+     * this IPC type, i.e., the function has no handler for it, so that
+     * another IPC type is tried
+     * @throws VolleyError i.e., {@link AuthFailureError}, or
+     *                     {@link com.force.react.RejectedError} if the
+     *                     function rejected the request, or
+     *                     {@link com.force.react.TimeoutError} if the
+     *                     function did not respond in time.
      */
-    IPCResponse performRequest(Request<?> request, String functionName, VolleyIPCFunction functionClass)
-            throws IOException, AuthFailureError;
+    IPCResponse performRequest(Request<?> request, String functionName, VolleyIPCFunction functionClass,
+                               long timeoutMs) throws IOException, VolleyError;
 }
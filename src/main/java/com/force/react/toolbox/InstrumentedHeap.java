@@ -0,0 +1,299 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps a {@link Heap}, and records {@link HeapMetrics} of its operations.
+ * <p>
+ * Optionally tracks allocated blocks, to report the blocks that have not
+ * been freed for longer than a threshold, with their allocating caller.
+ * Tracking keeps the stack trace of each allocation, and resolves the
+ * caller only when leaks are reported.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class InstrumentedHeap implements Heap {
+
+    private final Heap heap;
+    private final HeapMetrics metrics = new HeapMetrics();
+    /**
+     * Blocks allocated, and not freed yet, if tracking leaks
+     */
+    private final ConcurrentHashMap<Integer, Allocation> allocations = new
+            ConcurrentHashMap<Integer, Allocation>();
+    /**
+     * Age of a block to be reported as a leak, 0 if not tracking leaks
+     */
+    private volatile long leakThreshold = 0;
+
+    /**
+     * Creates an {@link InstrumentedHeap} object
+     *
+     * @param heap the heap to be instrumented
+     */
+    InstrumentedHeap(Heap heap) {
+        this.heap = heap;
+    }
+
+    /**
+     * Set the age of a block to be reported as a leak
+     *
+     * @param thresholdMillis the age in milliseconds, 0 stops tracking
+     */
+    public InstrumentedHeap setLeakTracking(long thresholdMillis) {
+        this.leakThreshold = thresholdMillis;
+        if (thresholdMillis <= 0) allocations.clear();
+        return this;
+    }
+
+    /**
+     * Get the metrics of the heap
+     */
+    public HeapMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the instrumented heap
+     */
+    public Heap getHeap() {
+        return heap;
+    }
+
+    /**
+     * Get the blocks that have not been freed for longer than the leak
+     * threshold
+     *
+     * @return the leaks, empty if not tracking leaks
+     */
+    public List<Leak> getLeaks() {
+        List<Leak> leaks = new ArrayList<Leak>();
+        long now = System.currentTimeMillis();
+        long threshold = leakThreshold;
+
+        if (threshold <= 0) return leaks;
+
+        for (Map.Entry<Integer, Allocation> entry : allocations.entrySet()) {
+            Allocation allocation = entry.getValue();
+            if (now - allocation.time >= threshold)
+                leaks.add(new Leak(entry.getKey(), allocation.size, now -
+                        allocation.time, allocation.getCaller()));
+        }
+        return leaks;
+    }
+
+    private void track(int reference, int size) {
+        if (leakThreshold > 0) allocations.put(reference, new Allocation
+                (size));
+    }
+
+    private void untrack(int reference) {
+        if (leakThreshold > 0) allocations.remove(reference);
+    }
+
+    /**
+     * Get the size of a block, before it is freed or moved
+     */
+    private int sizeOf(int reference) {
+        HeapBlock block = heap.getBlock(reference);
+        return block == null ? 0 : block.getSize();
+    }
+
+    @Override
+    public int malloc(int size) {
+        long start = System.nanoTime();
+        int reference = heap.malloc(size);
+        metrics.record(HeapMetrics.OP_MALLOC, System.nanoTime() - start);
+
+        if (reference < 0) {
+            metrics.recordFailure(reference);
+        } else {
+            metrics.recordAllocation(size);
+            track(reference, size);
+        }
+        return reference;
+    }
+
+    @Override
+    public void free(int reference) {
+        int size = sizeOf(reference);
+
+        long start = System.nanoTime();
+        try {
+            heap.free(reference);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(INVALID_REFERENCE);
+            throw e;
+        }
+        metrics.record(HeapMetrics.OP_FREE, System.nanoTime() - start);
+
+        metrics.recordFree(size);
+        untrack(reference);
+    }
+
+    @Override
+    public int realloc(int reference, int size) {
+        int oldSize = reference < 0 ? 0 : sizeOf(reference);
+
+        long start = System.nanoTime();
+        int newReference = heap.realloc(reference, size);
+        metrics.record(HeapMetrics.OP_REALLOC, System.nanoTime() - start);
+
+        if (newReference < 0) {
+            metrics.recordFailure(newReference);
+            return newReference;
+        }
+
+        int newSize = sizeOf(newReference);
+        metrics.recordFree(oldSize);
+        metrics.recordAllocation(newSize);
+        if (reference >= 0) untrack(reference);
+        track(newReference, newSize);
+
+        return newReference;
+    }
+
+    @Override
+    public int calloc(int nelem, int elsize) {
+        long start = System.nanoTime();
+        int reference = heap.calloc(nelem, elsize);
+        metrics.record(HeapMetrics.OP_CALLOC, System.nanoTime() - start);
+
+        if (reference < 0) {
+            metrics.recordFailure(reference);
+        } else {
+            metrics.recordAllocation(nelem * elsize);
+            track(reference, nelem * elsize);
+        }
+        return reference;
+    }
+
+    @Override
+    public int write(int reference, byte[] data) {
+        long start = System.nanoTime();
+        int written = heap.write(reference, data);
+        metrics.record(HeapMetrics.OP_WRITE, System.nanoTime() - start);
+
+        if (written < 0) metrics.recordFailure(written);
+        return written;
+    }
+
+    @Override
+    public byte[] read(int reference) {
+        return heap.read(reference);
+    }
+
+    @Override
+    public ByteBuffer view(int reference) {
+        return heap.view(reference);
+    }
+
+    @Override
+    public void release(int reference) {
+        heap.release(reference);
+    }
+
+    @Override
+    public byte[] getMemory() {
+        return heap.getMemory();
+    }
+
+    @Override
+    public int getSize() {
+        return heap.getSize();
+    }
+
+    @Override
+    public int getNBlocks() {
+        return heap.getNBlocks();
+    }
+
+    @Override
+    public int getNFreeBlocks() {
+        return heap.getNFreeBlocks();
+    }
+
+    @Override
+    public int getLargestFreeBlock() {
+        return heap.getLargestFreeBlock();
+    }
+
+    @Override
+    public float getFragmentation() {
+        return heap.getFragmentation();
+    }
+
+    @Override
+    public LinkedList<HeapBlock> getBlocks() {
+        return heap.getBlocks();
+    }
+
+    @Override
+    public HeapBlock getBlock(int reference) {
+        return heap.getBlock(reference);
+    }
+
+    /**
+     * A tracked allocation
+     */
+    private static final class Allocation {
+        final long time = System.currentTimeMillis();
+        final int size;
+        /**
+         * Holds the stack trace of the allocation, without resolving it
+         */
+        final Throwable site = new Throwable();
+
+        Allocation(int size) {
+            this.size = size;
+        }
+
+        /**
+         * Get the first caller outside of the heap
+         */
+        String getCaller() {
+            String heap = InstrumentedHeap.class.getName();
+            for (StackTraceElement element : site.getStackTrace()) {
+                String name = element.getClassName();
+                if (!name.equals(heap) && !name.startsWith(heap + "$"))
+                    return element.toString();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A block that has not been freed for longer than the leak threshold
+     */
+    public static final class Leak {
+        public final int reference;
+        public final int size;
+        public final long ageMillis;
+        /**
+         * The allocating caller, i.e., class.method(file:line)
+         */
+        public final String caller;
+
+        Leak(int reference, int size, long ageMillis, String caller) {
+            this.reference = reference;
+            this.size = size;
+            this.ageMillis = ageMillis;
+            this.caller = caller;
+        }
+
+        @Override
+        public String toString() {
+            return "Heap leak [Reference: " + reference + " Size: " + size +
+                    " Age: " + ageMillis + " ms Caller: " + caller + "]";
+        }
+    }
+}
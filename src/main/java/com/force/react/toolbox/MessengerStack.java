@@ -0,0 +1,272 @@
+package com.force.react.toolbox;
+
+import android.os.Bundle;
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.force.react.HeapUtil;
+import com.force.react.IPCResponse;
+import com.force.react.IPCUtil;
+import com.force.react.RejectedError;
+import com.force.react.Request;
+import com.force.react.TimeoutError;
+import com.force.react.VolleyError;
+import com.force.react.VolleyIPCFunction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implements an {@link IPCStack} over the {@link Messenger} of a function,
+ * i.e., of another process, returned by the lookup.
+ * <p>
+ * The {@link Messenger} of each function is kept for the lifetime of its
+ * {@link android.os.IBinder}, and shared by the requests to the function,
+ * which are sent without waiting for the replies of each other. The replies
+ * of all requests of the process are received by one {@link Messenger},
+ * and matched to their requests by the request ID.
+ * <p>
+ * Bodies larger than IPCUtil.MESSENGER_FD_THRESHOLD are sent through pipes,
+ * instead of the Binder transaction. If the requester, and the function,
+ * share a {@link SharedMemoryHeap}, the function replies with a reference
+ * to the response in the Heap, instead of the response.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public class MessengerStack implements IPCStack {
+    public static final String TAG = MessengerStack.class.getName();
+
+    /**
+     * {@link Messenger}s of the functions, by the function name
+     */
+    private static final ConcurrentHashMap<String, Messenger> messengers = new
+            ConcurrentHashMap<String, Messenger>();
+    /**
+     * Requests waiting for replies, by request ID
+     */
+    private static final ConcurrentHashMap<String, IPCUtil.Properties>
+            pending = new ConcurrentHashMap<String, IPCUtil.Properties>();
+
+    private static Messenger replyTo = null;
+
+    /**
+     * {@link Messenger} of the function, returned by the lookup
+     */
+    private final Messenger functionMessenger;
+
+    /**
+     * Request ID to uniquely identify the request and response.
+     */
+    private String reqID;
+
+    /**
+     * @param functionMessenger {@link Messenger} of the function, returned
+     *                          by the lookup
+     */
+    public MessengerStack(Messenger functionMessenger) {
+        reqID = "";
+        this.functionMessenger = functionMessenger;
+    }
+
+    /**
+     * Get the {@link Messenger} receiving the replies of the process
+     */
+    private static synchronized Messenger getReplyTo() {
+        if (replyTo != null) return replyTo;
+
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        replyTo = new Messenger(new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case IPCUtil.MSG_FUNCTION_REPLY:
+                        onReply((Bundle) msg.obj);
+                        break;
+                    default:
+                        super.handleMessage(msg);
+                }
+            }
+        });
+        return replyTo;
+    }
+
+    /**
+     * Hand a reply to its request, or drop it if the request has timed out
+     */
+    static void onReply(Bundle bundle) {
+        String reqID = bundle.getString(IPCUtil.REQ_ID_EXTRA_NAME);
+        IPCUtil.Properties properties = reqID == null ? null : pending.remove
+                (reqID);
+        // timed out already
+        if (properties == null) {
+            // an invalid reference must not stop the replies of the process
+            if (bundle.containsKey(IPCUtil.REPLYBODY_REF_EXTRA_NAME))
+                HeapUtil.freeBlockData(bundle.getInt(IPCUtil
+                        .REPLYBODY_REF_EXTRA_NAME), TAG);
+            ParcelFileDescriptor fd = bundle.getParcelable(IPCUtil
+                    .REPLYBODY_FD_EXTRA_NAME);
+            if (fd != null) {
+                try {
+                    fd.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+            return;
+        }
+
+        // the requester waits for a reply it has not been able to drop
+        try {
+            String error = bundle.getString(IPCUtil.ERROR_EXTRA_NAME);
+            if (error != null) {
+                properties.setRequestError(error);
+            } else if (bundle.getBoolean(IPCUtil.UNSUPPORTED_EXTRA_NAME)) {
+                properties.setRequestUnsupported(true);
+            } else if (bundle.containsKey(IPCUtil.REPLYBODY_REF_EXTRA_NAME)) {
+                properties.setRequestResponseReference(bundle.getInt(IPCUtil
+                        .REPLYBODY_REF_EXTRA_NAME));
+            } else {
+                try {
+                    properties.setRequestResponse(IPCUtil.getMessageBody
+                            (bundle, IPCUtil.GET_REPLYBODY_EXTRA_NAME, IPCUtil
+                                    .REPLYBODY_FD_EXTRA_NAME));
+                } catch (IOException e) {
+                    // not rejected by the function
+                    Log.e(TAG, e.toString());
+                    properties.setRequestIOError(e.toString());
+                }
+            }
+        } finally {
+            properties.setRequestResponseReceived(true);
+        }
+    }
+
+    /**
+     * Get the {@link Messenger} of a function, kept until its binder dies
+     */
+    private Messenger getMessenger(String functionName) {
+        Messenger messenger = messengers.get(functionName);
+        if (messenger != null && messenger.getBinder().isBinderAlive())
+            return messenger;
+
+        if (functionMessenger == null) return null;
+        messengers.put(functionName, functionMessenger);
+        return functionMessenger;
+    }
+
+    /**
+     * Get the number of requests waiting for replies
+     */
+    static int getNPending() {
+        return pending.size();
+    }
+
+    /**
+     * Drop the {@link Messenger} of a function, i.e., when its process dies
+     *
+     * @param functionName The name of the function (reversed domain name)
+     */
+    public static void invalidate(String functionName) {
+        messengers.remove(functionName);
+    }
+
+    @Override
+    public IPCResponse performRequest(Request<?> request, String
+            functionName, VolleyIPCFunction functionClass, long timeoutMs)
+            throws IOException, VolleyError {
+        Messenger messenger = getMessenger(functionName);
+        if (messenger == null) {
+            Log.e(TAG, "No messenger for " + functionName);
+            return null;
+        }
+
+        reqID = IPCUtil.generateReqID();
+
+        Bundle bundle = new Bundle();
+        bundle.putString(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        bundle.putString(IPCUtil.METHOD_EXTRA_NAME, IPCUtil.getIPCMethod
+                (request));
+        bundle.putString(IPCUtil.FUNCURL_EXTRA_NAME, request.getUrl());
+        byte[] body = IPCUtil.getBody(request);
+        if (body != null)
+            bundle.putString(IPCUtil.BODY_CONTENT_TYPE_EXTRA_NAME, request
+                    .getBodyContentType());
+        IPCUtil.putMessageBody(bundle, IPCUtil.POSTBODY_EXTRA_NAME, IPCUtil
+                .POSTBODY_FD_EXTRA_NAME, body);
+
+        // the function replies with a reference, if it shares the Heap
+        File sharedFile = HeapFactory.getSharedFile();
+        if (sharedFile != null)
+            bundle.putString(IPCUtil.SHARED_HEAP_EXTRA_NAME, sharedFile
+                    .getPath());
+
+        Message msg = Message.obtain(null, IPCUtil.MSG_FUNCTION_REQUEST,
+                bundle);
+        msg.replyTo = getReplyTo();
+
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        pending.put(reqID, properties);
+        boolean sent = false;
+        boolean received = false;
+        try {
+            try {
+                messenger.send(msg);
+                sent = true;
+            } finally {
+                IPCUtil.closeMessageBody(bundle, IPCUtil
+                        .POSTBODY_FD_EXTRA_NAME, messenger, sent);
+            }
+            received = properties.awaitRequestResponse(timeoutMs);
+        } catch (DeadObjectException e) {
+            messengers.remove(functionName, messenger);
+            FunctionLookupCache.getInstance().invalidate(functionName);
+            throw new IOException(e.toString());
+        } catch (RemoteException e) {
+            throw new IOException(e.toString());
+        } catch (InterruptedException e) {
+            Log.e(TAG, e.toString());
+            // the dispatcher may have been told to quit
+            Thread.currentThread().interrupt();
+        } finally {
+            // a reply in flight is used, or its block would not be freed
+            if (pending.remove(reqID) == null && !received) {
+                properties.awaitRequestResponse();
+                received = true;
+            }
+        }
+
+        if (properties.getRequestIOError() != null)
+            throw new IOException(properties.getRequestIOError());
+        if (properties.getRequestError() != null)
+            throw new RejectedError(properties.getRequestError());
+        if (!received) throw new TimeoutError();
+        // falls back to another IPC type
+        if (properties.isRequestUnsupported()) return null;
+
+        int reference = properties.getRequestResponseReference();
+        if (reference >= 0) {
+            // parse directly from the Heap
+            if (request.getClass() == ByteRequest.class && ((ByteRequest)
+                    request).isHeapView())
+                return IPCResponse.fromHeap(reference);
+
+            return new IPCResponse(HeapUtil.getBlockData(reference, TAG));
+        }
+
+        return new IPCResponse(properties.getRequestResponse());
+    }
+
+    public String getReqID() {
+        return reqID;
+    }
+}
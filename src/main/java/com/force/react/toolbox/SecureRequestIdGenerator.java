@@ -0,0 +1,32 @@
+package com.force.react.toolbox;
+
+import com.force.react.RequestIdGenerator;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+/**
+ * Implements a {@link RequestIdGenerator}, that chooses 130 bits from a
+ * cryptographically secure random bit generator, and encodes them in
+ * base-32, for IDs that cannot be guessed by other processes.
+ * <p>
+ * Complies with:
+ * RFC 1750: Randomness Recommendations for Security.
+ * FIPS 140-2, Security Requirements for Cryptographic Modules, section
+ * 4.9.1 tests
+ * <p>
+ * The generator is seeded once, and shared by all requests.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+public final class SecureRequestIdGenerator implements RequestIdGenerator {
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Override
+    public String nextId() {
+        return new BigInteger(130, random).toString(32);
+    }
+}
@@ -0,0 +1,569 @@
+package com.force.react.toolbox;
+
+import android.util.Log;
+
+import com.force.react.Heap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements a {@link Heap} in a file mapped into the memory of each
+ * process that opens it, e.g., a file of a tmpfs, therefore, a reference
+ * allocated by one process may be read, and freed, by another.
+ * <p>
+ * All metadata is kept in the file. Each block is preceded by a header of
+ * BLOCK_HEADER_SIZE bytes, with its capacity, and its size, or FREE.
+ * Blocks are allocated first-fit, split if the remainder is large enough,
+ * and merged with the free blocks that follow them while searching. The
+ * processes are serialised by a lock on the header of the file, and the
+ * instances of a process over the same file by a lock of the process.
+ * <p>
+ * Views borrowed with {@link #view(int)} are pinned within the process
+ * only; a block freed by another process while it is borrowed may be
+ * reused.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final public class SharedMemoryHeap implements Heap {
+
+    private static final String TAG = SharedMemoryHeap.class.getName();
+
+    /**
+     * Marks an initialised file, and the header of each block
+     */
+    private static final int MAGIC = 0x46524345;
+    private static final int BLOCK_MAGIC = 0x424c4b48;
+    /**
+     * Marks a free block, in place of its size
+     */
+    private static final int FREE = -1;
+
+    /**
+     * File header: magic, size, top, number of blocks
+     */
+    static final int HEADER_SIZE = 16;
+    private static final int HEADER_SIZE_OFFSET = 4;
+    private static final int HEADER_TOP_OFFSET = 8;
+    private static final int HEADER_NBLOCKS_OFFSET = 12;
+
+    /**
+     * Block header: magic, capacity, size, reserved
+     */
+    static final int BLOCK_HEADER_SIZE = 16;
+    private static final int BLOCK_CAPACITY_OFFSET = 4;
+    private static final int BLOCK_SIZE_OFFSET = 8;
+
+    /**
+     * Blocks are aligned to this many bytes
+     */
+    private static final int ALIGNMENT = 8;
+
+    /**
+     * Locks of the processes, by the canonical path of the file
+     */
+    private static final ConcurrentHashMap<String, ReentrantLock>
+            processLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+    /**
+     * Used for zeroing blocks in calloc()
+     */
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final MappedByteBuffer memory;
+    private final int size;
+    /**
+     * Serialises the instances of this process over the same file, since
+     * a {@link FileLock} is held on behalf of the whole process
+     */
+    private final ReentrantLock processLock;
+    /**
+     * Views borrowed by this process, and their blocks freed while borrowed
+     */
+    private final HashMap<Integer, Integer> pins = new HashMap<Integer,
+            Integer>();
+    private final HashMap<Integer, Boolean> freeOnRelease = new
+            HashMap<Integer, Boolean>();
+
+    /**
+     * Creates a {@link SharedMemoryHeap} object, mapping the given file. The
+     * file is created, and initialised, if it does not exist, or it has not
+     * been initialised by another process.
+     *
+     * @param sharedFile the file to be shared with the other processes
+     * @param size       size of the heap, if created by this process
+     * @throws IOException if the file cannot be opened, or mapped
+     */
+    SharedMemoryHeap(File sharedFile, int size) throws IOException {
+        this.file = sharedFile;
+        this.randomAccessFile = new RandomAccessFile(sharedFile, "rw");
+        this.channel = randomAccessFile.getChannel();
+
+        String path = sharedFile.getCanonicalPath();
+        processLocks.putIfAbsent(path, new ReentrantLock());
+        this.processLock = processLocks.get(path);
+
+        processLock.lock();
+        FileLock lock = null;
+        try {
+            lock = channel.lock(0, HEADER_SIZE, false);
+            if (channel.size() >= HEADER_SIZE && readHeader(0) == MAGIC)
+                size = readHeader(HEADER_SIZE_OFFSET);
+            else if (channel.size() < size)
+                randomAccessFile.setLength(size);
+
+            this.size = size;
+            this.memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            if (memory.getInt(0) != MAGIC) {
+                memory.putInt(HEADER_SIZE_OFFSET, size);
+                memory.putInt(HEADER_TOP_OFFSET, HEADER_SIZE);
+                memory.putInt(HEADER_NBLOCKS_OFFSET, 0);
+                memory.putInt(0, MAGIC);
+            }
+        } finally {
+            if (lock != null) lock.release();
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Read an int of the header, before the file is mapped
+     */
+    private int readHeader(int offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        channel.read(buffer, offset);
+        buffer.flip();
+        return buffer.getInt();
+    }
+
+    /**
+     * Get the file shared with the other processes
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Lock the heap against the other processes. The threads of this
+     * process are serialised by the monitor of the heap.
+     */
+    private FileLock lock() {
+        processLock.lock();
+        try {
+            return channel.lock(0, HEADER_SIZE, false);
+        } catch (IOException e) {
+            processLock.unlock();
+            throw new IllegalStateException("The shared heap cannot be " +
+                    "locked " + e.toString());
+        }
+    }
+
+    private void unlock(FileLock lock) {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private int getTop() {
+        return memory.getInt(HEADER_TOP_OFFSET);
+    }
+
+    private int capacityOf(int header) {
+        return memory.getInt(header + BLOCK_CAPACITY_OFFSET);
+    }
+
+    private int sizeOf(int header) {
+        return memory.getInt(header + BLOCK_SIZE_OFFSET);
+    }
+
+    /**
+     * Check if a reference refers to an allocated block
+     */
+    private boolean isAllocated(int reference) {
+        int header = reference - BLOCK_HEADER_SIZE;
+        return header >= HEADER_SIZE && reference % ALIGNMENT == 0 &&
+                reference < getTop() && memory.getInt(header) == BLOCK_MAGIC
+                && sizeOf(header) != FREE;
+    }
+
+    /**
+     * Get a buffer over the memory of a block, that does not share the
+     * position and the limit with the heap.
+     */
+    private ByteBuffer slice(int reference, int length) {
+        ByteBuffer buffer = memory.duplicate();
+        buffer.limit(reference + length);
+        buffer.position(reference);
+        return buffer.slice();
+    }
+
+    private void writeBlockHeader(int header, int capacity, int size) {
+        memory.putInt(header + BLOCK_CAPACITY_OFFSET, capacity);
+        memory.putInt(header + BLOCK_SIZE_OFFSET, size);
+        memory.putInt(header, BLOCK_MAGIC);
+    }
+
+    /**
+     * Allocate a block, while locked
+     */
+    private int allocate(int size) {
+        int capacity = (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        int top = getTop();
+
+        // first fit
+        int header = HEADER_SIZE;
+        while (header < top) {
+            int blockCapacity = capacityOf(header);
+
+            if (sizeOf(header) == FREE) {
+                // merge with the free blocks that follow
+                int next = header + BLOCK_HEADER_SIZE + blockCapacity;
+                while (next < top && sizeOf(next) == FREE) {
+                    blockCapacity += BLOCK_HEADER_SIZE + capacityOf(next);
+                    memory.putInt(next, 0);
+                    memory.putInt(HEADER_NBLOCKS_OFFSET, memory.getInt
+                            (HEADER_NBLOCKS_OFFSET) - 1);
+                    next = header + BLOCK_HEADER_SIZE + blockCapacity;
+                }
+
+                if (blockCapacity >= capacity) {
+                    int remainder = blockCapacity - capacity -
+                            BLOCK_HEADER_SIZE;
+                    if (remainder >= ALIGNMENT) {
+                        writeBlockHeader(header + BLOCK_HEADER_SIZE +
+                                capacity, remainder, FREE);
+                        memory.putInt(HEADER_NBLOCKS_OFFSET, memory.getInt
+                                (HEADER_NBLOCKS_OFFSET) + 1);
+                        blockCapacity = capacity;
+                    }
+                    writeBlockHeader(header, blockCapacity, size);
+                    return header + BLOCK_HEADER_SIZE;
+                }
+                memory.putInt(header + BLOCK_CAPACITY_OFFSET, blockCapacity);
+            }
+            header = header + BLOCK_HEADER_SIZE + blockCapacity;
+        }
+
+        // carve a new block from the top
+        if ((long) top + BLOCK_HEADER_SIZE + capacity > this.size)
+            return INSUFFICIENT_MEMORY;
+
+        writeBlockHeader(top, capacity, size);
+        memory.putInt(HEADER_TOP_OFFSET, top + BLOCK_HEADER_SIZE + capacity);
+        memory.putInt(HEADER_NBLOCKS_OFFSET, memory.getInt
+                (HEADER_NBLOCKS_OFFSET) + 1);
+        return top + BLOCK_HEADER_SIZE;
+    }
+
+    @Override
+    public synchronized int malloc(int size) {
+        if (size <= 0) return NULL_REFERENCE;
+
+        FileLock lock = lock();
+        try {
+            return allocate(size);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public synchronized void free(int reference) {
+        if (reference < 0) throw new IllegalArgumentException("Invalid " +
+                "Reference" + reference);
+
+        FileLock lock = lock();
+        try {
+            int header = reference - BLOCK_HEADER_SIZE;
+            if (header < HEADER_SIZE || reference >= getTop() || memory.getInt
+                    (header) != BLOCK_MAGIC)
+                throw new IllegalArgumentException("Memory block " +
+                        reference + " could not be found! in Heap of size " +
+                        size);
+
+            if (sizeOf(header) == FREE || freeOnRelease.containsKey
+                    (reference))
+                throw new IllegalStateException("The referred  block has " +
+                        "already been freed!");
+
+            // free when the last view of this process is released
+            if (pins.containsKey(reference)) {
+                freeOnRelease.put(reference, Boolean.TRUE);
+                return;
+            }
+
+            memory.putInt(header + BLOCK_SIZE_OFFSET, FREE);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public synchronized int realloc(int reference, int size) {
+        if (reference < 0) return malloc(size);
+
+        FileLock lock = lock();
+        try {
+            if (!isAllocated(reference)) return INVALID_REFERENCE;
+
+            int header = reference - BLOCK_HEADER_SIZE;
+            int oldSize = sizeOf(header);
+
+            // does not need moving
+            if (capacityOf(header) >= size) {
+                if (oldSize < size)
+                    memory.putInt(header + BLOCK_SIZE_OFFSET, size);
+                return reference;
+            }
+
+            // need to move the block
+            int newReference = allocate(size);
+
+            // could not allocate a new block
+            if (newReference < 0) return newReference;
+
+            // copy bytes from the old block to the new block
+            slice(newReference, oldSize).put(slice(reference, oldSize));
+
+            // free the old block, unless borrowed by this process
+            if (pins.containsKey(reference))
+                freeOnRelease.put(reference, Boolean.TRUE);
+            else memory.putInt(header + BLOCK_SIZE_OFFSET, FREE);
+
+            return newReference;
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public synchronized int calloc(int nelem, int elsize) {
+        if (nelem <= 0 || elsize <= 0 || nelem > Integer.MAX_VALUE / elsize)
+            return NULL_REFERENCE;
+
+        int size = nelem * elsize;
+        int reference = malloc(size);
+
+        // reused blocks are not zeroed
+        if (reference >= 0) {
+            ByteBuffer buffer = slice(reference, size);
+            while (buffer.hasRemaining())
+                buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+        }
+
+        return reference;
+    }
+
+    @Override
+    public synchronized int write(int reference, byte[] data) {
+        //reference can't be less than 0
+        if (reference < 0) return NULL_REFERENCE;
+
+        FileLock lock = lock();
+        try {
+            //check if the reference is valid
+            if (!isAllocated(reference)) return INVALID_REFERENCE;
+
+            //check bounds
+            if (sizeOf(reference - BLOCK_HEADER_SIZE) < data.length)
+                return INSUFFICIENT_MEMORY;
+        } finally {
+            unlock(lock);
+        }
+
+        //write to Heap, the block is owned by the caller
+        slice(reference, data.length).put(data);
+
+        return data.length;
+    }
+
+    @Override
+    public synchronized byte[] read(int reference) {
+        //reference can't be less negative
+        if (reference < 0) return null;
+
+        int size;
+        FileLock lock = lock();
+        try {
+            //check if the reference is valid
+            if (!isAllocated(reference)) return null;
+            size = sizeOf(reference - BLOCK_HEADER_SIZE);
+        } finally {
+            unlock(lock);
+        }
+
+        byte[] data = new byte[size];
+        slice(reference, size).get(data);
+        return data;
+    }
+
+    @Override
+    public synchronized ByteBuffer view(int reference) {
+        if (reference < 0) return null;
+
+        int size;
+        FileLock lock = lock();
+        try {
+            if (!isAllocated(reference)) return null;
+            size = sizeOf(reference - BLOCK_HEADER_SIZE);
+        } finally {
+            unlock(lock);
+        }
+
+        Integer nPins = pins.get(reference);
+        pins.put(reference, nPins == null ? 1 : nPins + 1);
+        return slice(reference, size).asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void release(int reference) {
+        Integer nPins = pins.get(reference);
+
+        if (nPins == null) throw new IllegalStateException("The referred " +
+                "block " + reference + " has not been borrowed!");
+
+        if (nPins > 1) {
+            pins.put(reference, nPins - 1);
+            return;
+        }
+
+        pins.remove(reference);
+        if (freeOnRelease.remove(reference) != null) free(reference);
+    }
+
+    /**
+     * The memory is not a byte[], therefore, always returns null.
+     */
+    @Override
+    public byte[] getMemory() {
+        return null;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized int getNBlocks() {
+        FileLock lock = lock();
+        try {
+            return memory.getInt(HEADER_NBLOCKS_OFFSET);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public synchronized int getNFreeBlocks() {
+        return freeSpace().nBlocks;
+    }
+
+    @Override
+    public synchronized int getLargestFreeBlock() {
+        return freeSpace().largest;
+    }
+
+    @Override
+    public synchronized float getFragmentation() {
+        return freeSpace().getFragmentation();
+    }
+
+    /**
+     * Get the free blocks, and the free memory above the top of the heap
+     */
+    private FreeSpace freeSpace() {
+        FreeSpace freeSpace = new FreeSpace();
+        for (HeapBlock block : getBlocks())
+            if (block.free) freeSpace.addBlock(block.capacity);
+
+        FileLock lock = lock();
+        try {
+            return freeSpace.addSpace(Math.max(0, size - getTop() -
+                    BLOCK_HEADER_SIZE));
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the blocks, in the order of their references.
+     */
+    @Override
+    public synchronized LinkedList<HeapBlock> getBlocks() {
+        LinkedList<HeapBlock> blocks = new LinkedList<HeapBlock>();
+
+        FileLock lock = lock();
+        try {
+            int top = getTop();
+            for (int header = HEADER_SIZE; header < top; header = header +
+                    BLOCK_HEADER_SIZE + capacityOf(header))
+                blocks.add(toHeapBlock(header + BLOCK_HEADER_SIZE));
+        } finally {
+            unlock(lock);
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns a snapshot of the block.
+     */
+    @Override
+    public synchronized HeapBlock getBlock(int reference) {
+        if (reference < 0) return null;
+
+        FileLock lock = lock();
+        try {
+            int header = reference - BLOCK_HEADER_SIZE;
+            if (header < HEADER_SIZE || reference >= getTop() || memory.getInt
+                    (header) != BLOCK_MAGIC)
+                return null;
+            return toHeapBlock(reference);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    private HeapBlock toHeapBlock(int reference) {
+        int header = reference - BLOCK_HEADER_SIZE;
+        HeapBlock block = new HeapBlock();
+        block.reference = reference;
+        block.capacity = capacityOf(header);
+        block.size = sizeOf(header) == FREE ? 0 : sizeOf(header);
+        block.free = sizeOf(header) == FREE;
+        Integer nPins = pins.get(reference);
+        block.pins = nPins == null ? 0 : nPins;
+        block.freeOnRelease = freeOnRelease.containsKey(reference);
+        return block;
+    }
+
+    /**
+     * Close the mapped file. The heap must not be used afterwards.
+     */
+    public synchronized void close() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.force.react.toolbox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Segregated free lists of {@link HeapBlock}s, shared by the {@link
+ * com.force.react.Heap} types that round requests up to size classes.
+ * <p>
+ * Requests of up to {@link #MAX_SMALL_SIZE} bytes are rounded up to the next
+ * power of two, and are served from the bin of that size class in O(1).
+ * Larger requests are served best-fit from a size ordered map in O(log n).
+ * Not thread safe, the owning Heap must synchronize.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final class SizeClassBins {
+
+    /**
+     * The smallest size class, 2^4 = 16 bytes
+     */
+    static final int MIN_SIZE_CLASS = 4;
+    /**
+     * The largest size class served from a bin, 2^20 = 1 MB
+     */
+    static final int MAX_SIZE_CLASS = 20;
+    /**
+     * Requests larger than this are served from the large block map
+     */
+    static final int MAX_SMALL_SIZE = 1 << MAX_SIZE_CLASS;
+
+    /**
+     * Free blocks of each size class, indexed by the class (log2 capacity)
+     */
+    private final List<ArrayDeque<HeapBlock>> bins = new
+            ArrayList<ArrayDeque<HeapBlock>>(MAX_SIZE_CLASS + 1);
+    /**
+     * Free blocks larger than MAX_SMALL_SIZE, keyed by capacity
+     */
+    private final TreeMap<Integer, ArrayDeque<HeapBlock>> largeBins = new
+            TreeMap<Integer, ArrayDeque<HeapBlock>>();
+
+    SizeClassBins() {
+        // the bins below MIN_SIZE_CLASS stay empty
+        for (int i = 0; i <= MAX_SIZE_CLASS; i++)
+            bins.add(new ArrayDeque<HeapBlock>());
+    }
+
+    /**
+     * Get the size class of a small request, i.e., log2 of the smallest
+     * power of two that is not less than the size.
+     *
+     * @param size requested memory size
+     * @return the size class
+     */
+    static int sizeClassOf(int size) {
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return sizeClass < MIN_SIZE_CLASS ? MIN_SIZE_CLASS : sizeClass;
+    }
+
+    /**
+     * Get the capacity of the block that serves a request
+     *
+     * @param size requested memory size
+     * @return the size rounded up to its size class, or the size itself if
+     * larger than MAX_SMALL_SIZE.
+     */
+    static int capacityOf(int size) {
+        return size <= MAX_SMALL_SIZE ? 1 << sizeClassOf(size) : size;
+    }
+
+    /**
+     * Take a free block that fits the given size
+     *
+     * @param size required memory size
+     * @return null if no suitable block found, otherwise, the
+     * {@link HeapBlock} of the suitable memory block.
+     */
+    HeapBlock take(int size) {
+        if (size <= MAX_SMALL_SIZE)
+            return bins.get(sizeClassOf(size)).pollFirst();
+
+        Map.Entry<Integer, ArrayDeque<HeapBlock>> entry = largeBins
+                .ceilingEntry(size);
+        if (entry == null) return null;
+
+        HeapBlock block = entry.getValue().pollFirst();
+        if (entry.getValue().isEmpty()) largeBins.remove(entry.getKey());
+        return block;
+    }
+
+    /**
+     * Return a free block to its bin. Most recently freed blocks are reused
+     * first.
+     *
+     * @param block the freed block
+     */
+    void put(HeapBlock block) {
+        if (block.capacity <= MAX_SMALL_SIZE) {
+            bins.get(sizeClassOf(block.capacity)).addFirst(block);
+            return;
+        }
+
+        ArrayDeque<HeapBlock> bin = largeBins.get(block.capacity);
+        if (bin == null) {
+            bin = new ArrayDeque<HeapBlock>();
+            largeBins.put(block.capacity, bin);
+        }
+        bin.addFirst(block);
+    }
+}
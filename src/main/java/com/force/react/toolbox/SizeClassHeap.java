@@ -0,0 +1,328 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Implements a {@link Heap}, that uses a byte[] as a contiguous memory
+ * space, and keeps free blocks in segregated size-class bins instead of a
+ * single list of blocks.
+ * <p>
+ * Requests of up to {@link SizeClassBins#MAX_SMALL_SIZE} bytes are rounded
+ * up to the next power of two, and are served from the free bin of that size
+ * class in O(1). Larger requests are served best-fit from a size ordered map
+ * in O(log n). Every block is indexed by its reference, therefore read(),
+ * write() and free() never scan the heap. Freed blocks keep their capacity,
+ * and are neither split nor merged.
+ * <p>
+ *
+ * @author Chathura Sarathchandra
+ */
+
+final public class SizeClassHeap implements Heap {
+
+    /**
+     * Free blocks, segregated by size class
+     */
+    private final SizeClassBins bins = new SizeClassBins();
+    /**
+     * All blocks carved from the heap, keyed by reference
+     */
+    private final HashMap<Integer, HeapBlock> blocks = new HashMap<Integer,
+            HeapBlock>();
+    /**
+     * The heap
+     */
+    private byte[] memory;
+    /**
+     * Top of the heap
+     */
+    private int top = 0;
+    /**
+     * True, if the array is scalable, otherwise, false.
+     */
+    private boolean elasticHeap = false;
+    /**
+     * Reference of the first byte of the heap
+     */
+    private final int base;
+
+    /**
+     * Creates a {@link SizeClassHeap} object of size DEFAULT_MAX_MEM_SIZE
+     */
+    SizeClassHeap() {
+        this(DEFAULT_MAX_MEM_SIZE);
+    }
+
+    /**
+     * Creates a {@link SizeClassHeap} object with the given heap size
+     *
+     * @param size desired size of the memory
+     */
+    SizeClassHeap(int size) {
+        this(size, 0);
+    }
+
+    /**
+     * Creates a {@link SizeClassHeap} object with the given heap size, whose
+     * references start from the given base. Used by {@link ArenaHeap} to
+     * keep the references of its arenas apart.
+     *
+     * @param size desired size of the memory
+     * @param base reference of the first byte of the heap
+     */
+    SizeClassHeap(int size, int base) {
+        memory = new byte[size];
+        this.base = base;
+    }
+
+    /**
+     * Carve a new block of memory from the top of the heap byte[]
+     *
+     * @param capacity required block capacity
+     * @return new instance of {@link HeapBlock}, otherwise null.
+     */
+    synchronized HeapBlock requestMemory(int capacity) {
+        // check for overflow
+        if (memory.length - top < capacity) {
+            // Same policy as ByteArrayHeap, scale by DEFAULT_MEM_STEP only
+            // if it helps.
+            if (elasticHeap && (memory.length - top + DEFAULT_MEM_STEP)
+                    >= capacity) {
+                memory = Arrays.copyOf(memory, memory.length +
+                        DEFAULT_MEM_STEP);
+            } else return null; // asking too much space
+        }
+
+        HeapBlock newBlock = new HeapBlock();
+        newBlock.reference = base + top;
+        newBlock.capacity = capacity;
+        blocks.put(newBlock.reference, newBlock);
+
+        top = top + capacity;
+
+        return newBlock;
+    }
+
+    @Override
+    public synchronized int malloc(int size) {
+        if (size <= 0) return NULL_REFERENCE;
+
+        HeapBlock block = bins.take(size);
+        if (block == null) block = requestMemory(SizeClassBins.capacityOf(size));
+
+        // failed requestingMemory -- ran out of memory
+        if (block == null) return INSUFFICIENT_MEMORY;
+
+        block.size = size;
+        block.free = false;
+        return block.reference;
+    }
+
+    @Override
+    public synchronized void free(int reference) {
+        if (reference < 0) throw new IllegalArgumentException("Invalid " +
+                "Reference" + reference);
+
+        HeapBlock block = blocks.get(reference);
+
+        if (block == null)
+            throw new IllegalArgumentException("Memory block "
+                    + reference + " could not be found! in Heap of size " +
+                    blocks.size());
+
+        if (block.free || block.freeOnRelease) throw new
+                IllegalStateException("The referred  block has already been " +
+                "freed!");
+
+        // free when the last view is released
+        if (block.pins > 0) {
+            block.freeOnRelease = true;
+            return;
+        }
+
+        block.free = true;
+        bins.put(block);
+    }
+
+    @Override
+    public synchronized int realloc(int reference, int size) {
+        if (reference < 0) return malloc(size);
+
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return INVALID_REFERENCE;
+
+        // does not need moving
+        if (block.capacity >= size) {
+            if (block.size < size) block.size = size;
+            return reference;
+        }
+
+        // need to move the block
+        int newReference = malloc(size);
+
+        // could not allocate a new block
+        if (newReference < 0) return newReference;
+
+        // copy bytes from the old block to the new block
+        System.arraycopy(memory, reference - base, memory, newReference - base,
+                block.size);
+        free(reference);
+
+        return newReference;
+    }
+
+    @Override
+    public synchronized int calloc(int nelem, int elsize) {
+        if (nelem <= 0 || elsize <= 0 || nelem > Integer.MAX_VALUE / elsize)
+            return NULL_REFERENCE;
+
+        int size = nelem * elsize;
+        int reference = malloc(size);
+
+        // reused blocks still hold their previous content
+        if (reference >= 0) Arrays.fill(memory, reference - base, reference -
+                base + size, (byte) 0);
+
+        return reference;
+    }
+
+    @Override
+    public synchronized int write(int reference, byte[] data) {
+        //reference can't be less than 0
+        if (reference < 0) return NULL_REFERENCE;
+
+        //check if the reference is valid
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return INVALID_REFERENCE;
+
+        //check bounds
+        if (block.size < data.length) return INSUFFICIENT_MEMORY;
+
+        //write to Heap
+        System.arraycopy(data, 0, memory, reference - base, data.length);
+
+        return data.length;
+    }
+
+    @Override
+    public synchronized byte[] read(int reference) {
+        //reference can't be less negative
+        if (reference < 0) return null;
+
+        //check if the reference is valid
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return null;
+
+        return Arrays.copyOfRange(memory, reference - base, reference - base +
+                block.size);
+    }
+
+    /**
+     * The view wraps the current byte[]. If the heap grows while the view is
+     * borrowed, the view keeps reading the previous byte[], which still holds
+     * the content of the block.
+     */
+    @Override
+    public synchronized ByteBuffer view(int reference) {
+        if (reference < 0) return null;
+
+        HeapBlock block = blocks.get(reference);
+        if (block == null || block.free) return null;
+
+        block.pins++;
+        return ByteBuffer.wrap(memory, reference - base, block.size).slice()
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void release(int reference) {
+        HeapBlock block = blocks.get(reference);
+
+        if (block == null || block.pins == 0) throw new IllegalStateException(
+                "The referred block " + reference + " has not been borrowed!");
+
+        if (--block.pins == 0 && block.freeOnRelease) {
+            block.freeOnRelease = false;
+            free(reference);
+        }
+    }
+
+    @Override
+    public synchronized byte[] getMemory() {
+        return memory;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return memory.length;
+    }
+
+    @Override
+    public synchronized int getNBlocks() {
+        return blocks.size();
+    }
+
+    @Override
+    public synchronized int getNFreeBlocks() {
+        return freeSpace().nBlocks;
+    }
+
+    @Override
+    public synchronized int getLargestFreeBlock() {
+        return freeSpace().largest;
+    }
+
+    @Override
+    public synchronized float getFragmentation() {
+        return freeSpace().getFragmentation();
+    }
+
+    /**
+     * Get the free blocks, and the free memory above the top of the heap
+     */
+    synchronized FreeSpace freeSpace() {
+        FreeSpace freeSpace = new FreeSpace();
+        for (HeapBlock block : blocks.values())
+            if (block.free) freeSpace.addBlock(block.capacity);
+        return freeSpace.addSpace(memory.length - top);
+    }
+
+    /**
+     * Blocks are not kept in a list, therefore, this returns a snapshot of
+     * the blocks in no particular order.
+     */
+    @Override
+    public synchronized LinkedList<HeapBlock> getBlocks() {
+        return new LinkedList<HeapBlock>(blocks.values());
+    }
+
+    @Override
+    public synchronized HeapBlock getBlock(int reference) {
+        if (reference == NULL_REFERENCE) return null;
+        return blocks.get(reference);
+    }
+
+    /**
+     * Set if the Heap is scalable.
+     *
+     * @param elastic true, if yes, false otherwise.
+     */
+    public synchronized SizeClassHeap setHeapElastic(boolean elastic) {
+        this.elasticHeap = elastic;
+        return this;
+    }
+
+    /**
+     * Get the reference to the top of the heap
+     *
+     * @return top
+     */
+    synchronized int getTop() {
+        return top;
+    }
+}
@@ -0,0 +1,64 @@
+package com.force.react;
+
+import com.force.react.toolbox.HeapFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link HeapUtil}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class HeapUtilTest {
+
+    @After
+    public void eraseMemory() {
+        HeapFactory.eraseMemory();
+    }
+
+    @Test
+    public void putBlockDataTest() {
+        System.out.println("putBlockDataTest");
+        byte[] data = {1, 2, 3, 4, 5};
+
+        int reference = HeapUtil.putBlockData(data, "HeapUtilTest");
+        assertTrue(reference >= 0);
+
+        ByteBuffer view = HeapUtil.borrowBlockData(reference, "HeapUtilTest");
+        assertEquals(data.length, view.remaining());
+        byte[] read = new byte[data.length];
+        view.get(read);
+        assertArrayEquals(data, read);
+
+        HeapUtil.releaseBlockData(reference, "HeapUtilTest");
+        assertNull(HeapFactory.getInstance().read(reference));
+    }
+
+    @Test
+    public void batchDataTest() {
+        System.out.println("batchDataTest");
+        byte[][] bodies = {{1, 2, 3}, null, {}, {4, 5}};
+
+        int reference = HeapUtil.putBatchData(bodies, "HeapUtilTest");
+        assertTrue(reference >= 0);
+
+        // one block, i.e., the count, the lengths, and the bodies
+        assertEquals(4 * 5 + 5, HeapFactory.getInstance().read(reference)
+                .length);
+
+        byte[][] read = HeapUtil.getBatchData(reference, "HeapUtilTest");
+        assertEquals(bodies.length, read.length);
+        for (int i = 0; i < bodies.length; i++)
+            assertArrayEquals(bodies[i], read[i]);
+        assertNull(HeapFactory.getInstance().read(reference));
+    }
+}
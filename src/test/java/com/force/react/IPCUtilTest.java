@@ -0,0 +1,190 @@
+package com.force.react;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.force.react.mock.TestRequest;
+import com.force.react.toolbox.HeapFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link IPCUtil}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class IPCUtilTest {
+
+    @Test
+    public void waitForResponseTest() throws InterruptedException {
+        System.out.println("waitForResponseTest");
+        final IPCUtil.Properties properties = new IPCUtil.Properties();
+        final byte[] response = {1, 2, 3};
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                properties.setRequestResponse(response);
+                properties.setRequestResponseReceived(true);
+            }
+        }).start();
+
+        long start = System.currentTimeMillis();
+        assertTrue(IPCUtil.waitForResponse(10000, properties));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertArrayEquals(response, properties.getRequestResponse());
+    }
+
+    @Test
+    public void waitForResponseTimeoutTest() throws InterruptedException {
+        System.out.println("waitForResponseTimeoutTest");
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+
+        long start = System.currentTimeMillis();
+        assertFalse(IPCUtil.waitForResponse(50, properties));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertFalse(properties.isRequestResponseReceived());
+    }
+
+    @Test
+    public void awaitLookupTest() throws InterruptedException {
+        System.out.println("awaitLookupTest");
+        final IPCUtil.Properties properties = new IPCUtil.Properties();
+        assertFalse(properties.awaitLookup(10));
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                properties.setLookupResponse(new int[]{IPCUtil
+                        .FORCE_ANDROID_IPC_TYPE_HEAP});
+                properties.setBypassFuncLocal(false);
+                properties.completeLookup();
+            }
+        }).start();
+
+        assertTrue(properties.awaitLookup(10000));
+        assertFalse(properties.isBypassFuncLocal());
+    }
+
+    @Test
+    public void reverseDomainTest() {
+        System.out.println("reverseDomainTest");
+        assertEquals("com.force.function", IPCUtil.reverseDomain
+                ("function.force.com"));
+        assertEquals("localhost", IPCUtil.reverseDomain("localhost"));
+        // cached
+        assertSame(IPCUtil.reverseDomain("function.force.com"), IPCUtil
+                .reverseDomain("function.force.com"));
+    }
+
+    @Test
+    public void ipcMethodTest() throws AuthFailureError {
+        System.out.println("ipcMethodTest");
+        assertEquals(IPCUtil.IPC_GET, IPCUtil.getIPCMethod(new TestRequest
+                .DeprecatedGet()));
+        assertEquals(IPCUtil.IPC_POST, IPCUtil.getIPCMethod(new TestRequest
+                .DeprecatedPost()));
+        assertEquals(IPCUtil.IPC_GET, IPCUtil.getIPCMethod(new TestRequest
+                .Get()));
+        assertEquals(IPCUtil.IPC_POST, IPCUtil.getIPCMethod(new TestRequest
+                .Post()));
+        assertEquals(IPCUtil.IPC_PUT, IPCUtil.getIPCMethod(new TestRequest
+                .Put()));
+        assertEquals(IPCUtil.IPC_DELETE, IPCUtil.getIPCMethod(new TestRequest
+                .Delete()));
+        assertEquals(IPCUtil.IPC_HEAD, IPCUtil.getIPCMethod(new TestRequest
+                .Head()));
+        assertEquals(IPCUtil.IPC_OPTIONS, IPCUtil.getIPCMethod(new TestRequest
+                .Options()));
+        assertEquals(IPCUtil.IPC_TRACE, IPCUtil.getIPCMethod(new TestRequest
+                .Trace()));
+        assertEquals(IPCUtil.IPC_PATCH, IPCUtil.getIPCMethod(new TestRequest
+                .Patch()));
+    }
+
+    @Test
+    public void bodyTest() throws AuthFailureError {
+        System.out.println("bodyTest");
+        assertNotNull(IPCUtil.getBody(new TestRequest.DeprecatedPost()));
+        assertNotNull(IPCUtil.getBody(new TestRequest.PostWithBody()));
+        assertNotNull(IPCUtil.getBody(new TestRequest.PutWithBody()));
+        assertNull(IPCUtil.getBody(new TestRequest.Get()));
+        assertNull(IPCUtil.getBody(new TestRequest.Delete()));
+    }
+
+    @Test
+    public void messageBodyInlineTest() throws IOException {
+        System.out.println("messageBodyInlineTest");
+        byte[] body = new byte[IPCUtil.MESSENGER_FD_THRESHOLD - 1];
+        Arrays.fill(body, (byte) 7);
+
+        Bundle bundle = new Bundle();
+        IPCUtil.putMessageBody(bundle, IPCUtil.POSTBODY_EXTRA_NAME, IPCUtil
+                .POSTBODY_FD_EXTRA_NAME, body);
+        assertNull(bundle.getParcelable(IPCUtil.POSTBODY_FD_EXTRA_NAME));
+        assertArrayEquals(body, bundle.getByteArray(IPCUtil
+                .POSTBODY_EXTRA_NAME));
+        assertArrayEquals(body, IPCUtil.getMessageBody(bundle, IPCUtil
+                .POSTBODY_EXTRA_NAME, IPCUtil.POSTBODY_FD_EXTRA_NAME));
+
+        bundle = new Bundle();
+        IPCUtil.putMessageBody(bundle, IPCUtil.POSTBODY_EXTRA_NAME, IPCUtil
+                .POSTBODY_FD_EXTRA_NAME, null);
+        assertNull(IPCUtil.getMessageBody(bundle, IPCUtil
+                .POSTBODY_EXTRA_NAME, IPCUtil.POSTBODY_FD_EXTRA_NAME));
+    }
+
+    @Test
+    public void messageBodyPipeTest() throws IOException {
+        System.out.println("messageBodyPipeTest");
+        byte[] body = new byte[IPCUtil.MESSENGER_FD_THRESHOLD * 4 + 3];
+        for (int i = 0; i < body.length; i++) body[i] = (byte) i;
+
+        Bundle bundle = new Bundle();
+        IPCUtil.putMessageBody(bundle, IPCUtil.POSTBODY_EXTRA_NAME, IPCUtil
+                .POSTBODY_FD_EXTRA_NAME, body);
+        assertNull(bundle.getByteArray(IPCUtil.POSTBODY_EXTRA_NAME));
+        assertNotNull(bundle.getParcelable(IPCUtil.POSTBODY_FD_EXTRA_NAME));
+        assertArrayEquals(body, IPCUtil.getMessageBody(bundle, IPCUtil
+                .POSTBODY_EXTRA_NAME, IPCUtil.POSTBODY_FD_EXTRA_NAME));
+    }
+
+    @Test
+    public void requestBodyHeapTest() {
+        System.out.println("requestBodyHeapTest");
+        byte[] body = "request body".getBytes();
+        int nBlocks = HeapFactory.getInstance().getNBlocks();
+
+        Intent intent = new Intent("com.force.test");
+        intent.putExtra(IPCUtil.POSTBODY_REF_EXTRA_NAME, HeapUtil
+                .putBlockData(body, "IPCUtilTest"));
+        // only the reference is sent
+        assertNull(intent.getByteArrayExtra(IPCUtil.POSTBODY_EXTRA_NAME));
+        assertArrayEquals(body, IPCUtil.getRequestBody(intent,
+                "IPCUtilTest"));
+
+        // the function frees the block while the view is borrowed
+        ByteBuffer view = IPCUtil.borrowRequestBody(intent, "IPCUtilTest");
+        IPCUtil.freeRequestBody(intent, "IPCUtilTest");
+        assertEquals(nBlocks + 1, HeapFactory.getInstance().getNBlocks());
+        assertEquals(body.length, view.remaining());
+        IPCUtil.releaseRequestBody(intent, "IPCUtilTest");
+        assertEquals(nBlocks, HeapFactory.getInstance().getNBlocks());
+    }
+}
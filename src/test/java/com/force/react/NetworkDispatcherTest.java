@@ -17,10 +17,14 @@
 package com.force.react;
 
 import com.force.react.mock.MockCache;
+import com.force.react.mock.MockFunction;
 import com.force.react.mock.MockNetwork;
 import com.force.react.mock.MockRequest;
 import com.force.react.mock.MockResponseDelivery;
 import com.force.react.mock.WaitableQueue;
+import com.force.react.toolbox.ByteRequest;
+import com.force.react.toolbox.DiskBasedCache;
+import com.force.react.toolbox.FunctionLookupCache;
 
 import org.junit.After;
 import org.junit.Before;
@@ -28,11 +32,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.File;
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
@@ -106,4 +112,46 @@ public class NetworkDispatcherTest {
         assertTrue(Arrays.equals(mCache.entryPut.data, CANNED_DATA));
         assertEquals("bananaphone", mCache.keyPut);
     }
+
+    @Test
+    public void heapViewNotCached() throws Exception {
+        String functionName = "com.force.test";
+        File root = File.createTempFile("cache", null);
+        root.delete();
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+
+        // a function of this process, that replies over the Heap
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        properties.setLookupResponse(new int[]{IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_DIRECT});
+        properties.setBypassFuncLocal(false);
+        properties.setFunctionInterface(new MockFunction().setResponse
+                (HeapUtil.putBlockData(CANNED_DATA, "NetworkDispatcherTest")));
+        FunctionLookupCache.getInstance().put(functionName, properties);
+
+        NetworkDispatcher dispatcher = new NetworkDispatcher(mNetworkQueue,
+                mNetwork, cache, mDelivery);
+        dispatcher.start();
+        try {
+            ByteRequest request = new ByteRequest("http://" + functionName +
+                    "/data", null, null).setHeapView(true);
+            request.setShouldCache(true);
+            mNetworkQueue.add(request);
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!mDelivery.wasEitherResponseCalled() && System
+                    .currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertFalse(mDelivery.postError_called);
+            assertTrue(mDelivery.postResponse_called);
+            assertNull(mNetwork.requestHandled);
+            assertNull(cache.get(request.getCacheKey()));
+        } finally {
+            dispatcher.quit();
+            dispatcher.join();
+            FunctionLookupCache.getInstance().invalidate(functionName);
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package com.force.react;
+
+import android.content.Intent;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the workers of {@link VolleyIPCFunction}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class VolleyIPCFunctionTest {
+
+    @Test
+    public void workerPoolTest() throws Exception {
+        System.out.println("workerPoolTest");
+        final CountDownLatch release = new CountDownLatch(1);
+        BlockingFunction function = new BlockingFunction(release);
+        function.setWorkerPool(1, 1);
+
+        Future<Object> running = function.submitDirect(null);
+        Future<Object> queued = function.submitDirect(null);
+        try {
+            function.submitDirect(null);
+            fail("The request was not rejected");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, function.getNRejected());
+        }
+
+        release.countDown();
+        assertEquals("done", running.get(1, TimeUnit.SECONDS));
+        assertEquals("done", queued.get(1, TimeUnit.SECONDS));
+
+        assertEquals(0, function.getQueueDepth());
+        assertEquals(2, function.getNHandled());
+        assertTrue(function.getMaxHandlerNanos() >= function
+                .getMeanHandlerNanos());
+    }
+
+    @Test
+    public void submitWhileHandlingTest() throws Exception {
+        System.out.println("submitWhileHandlingTest");
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingFunction function = new BlockingFunction(release);
+        function.setWorkerPool(2, 1);
+
+        Future<Object> running = function.submitDirect(null);
+        assertTrue(function.started.await(1, TimeUnit.SECONDS));
+
+        // not blocked by the handler holding the function
+        ExecutorService submitter = Executors.newSingleThreadExecutor();
+        Future<Future<Object>> submitted = submitter.submit(new
+                Callable<Future<Object>>() {
+                    @Override
+                    public Future<Object> call() {
+                        function.getMessenger();
+                        return function.submitDirect(null);
+                    }
+                });
+        Future<Object> queued = submitted.get(1, TimeUnit.SECONDS);
+
+        release.countDown();
+        assertEquals("done", running.get(1, TimeUnit.SECONDS));
+        assertEquals("done", queued.get(1, TimeUnit.SECONDS));
+        submitter.shutdown();
+    }
+
+    /**
+     * Handles direct requests once released, holding the function as the
+     * default handlers do
+     */
+    private static final class BlockingFunction extends VolleyIPCFunction {
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        BlockingFunction(CountDownLatch release) {
+            super(null);
+            this.release = release;
+        }
+
+        @Override
+        public synchronized Object handleDirectreq(Request<?> request) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }
+
+        @Override
+        public Object getResponse() {
+            return null;
+        }
+
+        @Override
+        public Runnable handleUnknownreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handlePATCHreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleTRACEreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleOPTIONSreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleHEADreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleDELETEreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handlePUTreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handlePOSTreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleGETreq(Intent intent, Request<?> request) {
+            return null;
+        }
+    }
+}
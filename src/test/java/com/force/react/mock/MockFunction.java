@@ -0,0 +1,115 @@
+package com.force.react.mock;
+
+import android.content.Intent;
+
+import com.force.react.Request;
+import com.force.react.VolleyIPCFunction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link VolleyIPCFunction} of the same process, that returns a canned
+ * response to direct requests, optionally once released.
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class MockFunction extends VolleyIPCFunction {
+    public final AtomicInteger nHandled = new AtomicInteger(0);
+    private volatile Object response = null;
+    private volatile CountDownLatch release = null;
+
+    public MockFunction() {
+        super(null);
+    }
+
+    /**
+     * @param response the response of direct requests, i.e., a byte[] body,
+     *                 or an Integer reference to a block of the Heap
+     */
+    public MockFunction setResponse(Object response) {
+        this.response = response;
+        return this;
+    }
+
+    /**
+     * @param release handle direct requests once released
+     */
+    public MockFunction setRelease(CountDownLatch release) {
+        this.release = release;
+        return this;
+    }
+
+    /**
+     * Receive requests of other processes, over {@link #getMessenger()}
+     */
+    public MockFunction withMessenger() {
+        startMessenger();
+        return this;
+    }
+
+    @Override
+    public Object handleDirectreq(Request<?> request) {
+        CountDownLatch latch = release;
+        if (latch != null) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        nHandled.incrementAndGet();
+        return response;
+    }
+
+    @Override
+    public Object getResponse() {
+        return response;
+    }
+
+    @Override
+    public Runnable handleUnknownreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handlePATCHreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handleTRACEreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handleOPTIONSreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handleHEADreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handleDELETEreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handlePUTreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handlePOSTreq(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public Runnable handleGETreq(Intent intent, Request<?> request) {
+        return null;
+    }
+}
@@ -0,0 +1,196 @@
+package com.force.react.toolbox;
+
+import com.force.react.DefaultRetryPolicy;
+import com.force.react.IPCResponse;
+import com.force.react.IPCUtil;
+import com.force.react.NetworkError;
+import com.force.react.Request;
+import com.force.react.TimeoutError;
+import com.force.react.VolleyError;
+import com.force.react.VolleyIPCFunction;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link AndroidIPC}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class AndroidIPCTest {
+
+    private static final String FUNCTION_NAME = "com.force.test";
+    private static final String URL = "http://test.force.com/test";
+    private static final int TIMEOUT_MS = 500;
+
+    private static final int[] SUPPORTED = {IPCUtil
+            .FORCE_ANDROID_IPC_TYPE_LBHEAP, IPCUtil
+            .FORCE_ANDROID_IPC_TYPE_LBROADCAST};
+
+    @After
+    public void reset() {
+        IPCHealth.getInstance().reset();
+    }
+
+    /**
+     * An {@link IPCStack} that sleeps, then returns its response, or
+     * throws its error
+     */
+    private static class StubStack implements IPCStack {
+        private final long sleepMs;
+        private final IPCResponse response;
+        private final Exception error;
+        private long timeoutMs = -1;
+
+        StubStack(long sleepMs, IPCResponse response, Exception error) {
+            this.sleepMs = sleepMs;
+            this.response = response;
+            this.error = error;
+        }
+
+        @Override
+        public IPCResponse performRequest(Request<?> request, String
+                functionName, VolleyIPCFunction functionClass, long
+                timeoutMs) throws IOException, VolleyError {
+            this.timeoutMs = timeoutMs;
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (error instanceof IOException) throw (IOException) error;
+            if (error instanceof VolleyError) throw (VolleyError) error;
+            return response;
+        }
+
+        boolean isCalled() {
+            return timeoutMs >= 0;
+        }
+    }
+
+    /**
+     * An {@link AndroidIPC} over the stub stacks, in the order of the chain
+     */
+    private static AndroidIPC stubIPC(final StubStack... stacks) {
+        final List<Integer> chain = new ArrayList<Integer>();
+        AndroidIPC ipc = new AndroidIPC(SUPPORTED) {
+            @Override
+            IPCStack createIPCStack(int ipcType) {
+                chain.add(ipcType);
+                return stacks[chain.size() - 1];
+            }
+        };
+        assertArrayEquals(SUPPORTED, ipc.getChain());
+        return ipc;
+    }
+
+    private static Request<?> request(int method) {
+        Request<?> request = new StringRequest(method, URL, null, null);
+        request.setRetryPolicy(new DefaultRetryPolicy(TIMEOUT_MS, 0, 1));
+        return request;
+    }
+
+    @Test
+    public void flightKeyTest() throws Exception {
+        System.out.println("flightKeyTest");
+        Request<?> bytes = new ByteRequest(Request.Method.GET, URL, null,
+                null);
+        Request<?> string = new StringRequest(Request.Method.GET, URL, null,
+                null);
+
+        // identical requests are coalesced
+        assertEquals(AndroidIPC.getFlightKey(bytes, FUNCTION_NAME), AndroidIPC
+                .getFlightKey(new ByteRequest(Request.Method.GET, URL, null,
+                        null), FUNCTION_NAME));
+        // the response of a ByteRequest is converted differently
+        assertFalse(AndroidIPC.getFlightKey(bytes, FUNCTION_NAME).equals
+                (AndroidIPC.getFlightKey(string, FUNCTION_NAME)));
+        // not idempotent
+        assertNull(AndroidIPC.getFlightKey(new StringRequest(Request.Method
+                .POST, URL, null, null), FUNCTION_NAME));
+    }
+
+    @Test
+    public void fallbackTest() throws Exception {
+        System.out.println("fallbackTest");
+        StubStack failing = new StubStack(0, null, new IOException("failed"));
+        StubStack responding = new StubStack(0, new IPCResponse("com.force"
+                .getBytes()), null);
+
+        IPCResponse response = stubIPC(failing, responding).performRequest
+                (request(Request.Method.GET), FUNCTION_NAME, null);
+        assertEquals("com.force", new String(response.getRawResponse()));
+        assertTrue(responding.isCalled());
+    }
+
+    @Test
+    public void noResendTest() throws Exception {
+        System.out.println("noResendTest");
+        // may have reached the function
+        StubStack failing = new StubStack(0, null, new IOException("failed"));
+        StubStack next = new StubStack(0, null, null);
+        try {
+            stubIPC(failing, next).performRequest(request(Request.Method
+                    .POST), FUNCTION_NAME, null);
+            fail("The request was sent again");
+        } catch (NetworkError e) {
+            assertFalse(next.isCalled());
+        }
+
+        StubStack timedOut = new StubStack(0, null, new TimeoutError());
+        next = new StubStack(0, null, null);
+        try {
+            stubIPC(timedOut, next).performRequest(request(Request.Method
+                    .PUT), FUNCTION_NAME, null);
+            fail("The request was sent again");
+        } catch (TimeoutError e) {
+            assertFalse(next.isCalled());
+        }
+
+        // sent over the network
+        timedOut = new StubStack(0, null, new TimeoutError());
+        next = new StubStack(0, null, null);
+        assertNull(stubIPC(timedOut, next).performRequest(request(Request
+                .Method.GET), FUNCTION_NAME, null));
+        assertFalse(next.isCalled());
+    }
+
+    @Test
+    public void deadlineTest() throws Exception {
+        System.out.println("deadlineTest");
+        // falls back after a part of the timeout
+        StubStack slow = new StubStack(200, null, null);
+        StubStack next = new StubStack(0, null, null);
+        assertNull(stubIPC(slow, next).performRequest(request(Request.Method
+                .POST), FUNCTION_NAME, null));
+        assertTrue(next.isCalled());
+        assertTrue(next.timeoutMs <= TIMEOUT_MS - 200);
+        assertTrue(slow.timeoutMs <= TIMEOUT_MS);
+
+        // no time left for the next IPC type
+        slow = new StubStack(TIMEOUT_MS + 50, null, null);
+        next = new StubStack(0, null, null);
+        try {
+            stubIPC(slow, next).performRequest(request(Request.Method.POST),
+                    FUNCTION_NAME, null);
+            fail("The timeout was not shared");
+        } catch (TimeoutError e) {
+            assertFalse(next.isCalled());
+        }
+    }
+}
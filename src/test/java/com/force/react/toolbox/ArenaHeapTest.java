@@ -0,0 +1,148 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ArenaHeap}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class ArenaHeapTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyArenasTest() {
+        System.out.println("tooManyArenasTest");
+        new ArenaHeap(ArenaHeap.MAX_ARENAS + 1, 1024);
+    }
+
+    @Test
+    public void threadArenaTest() throws InterruptedException {
+        System.out.println("threadArenaTest");
+        final ArenaHeap memory = new ArenaHeap(2, 1024);
+        final int[] other = new int[1];
+
+        int reference = memory.malloc(16);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = memory.malloc(16);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // each thread allocates from its own arena
+        assertTrue(ArenaHeap.arenaOf(reference) != ArenaHeap.arenaOf
+                (other[0]));
+        assertEquals(2048, memory.getSize());
+        assertEquals(2, memory.getNBlocks());
+    }
+
+    @Test
+    public void crossThreadFreeTest() throws InterruptedException {
+        System.out.println("crossThreadFreeTest");
+        final ArenaHeap memory = new ArenaHeap(2, 1024);
+        final int[] references = new int[2];
+        final CountDownLatch allocated = new CountDownLatch(1);
+        final CountDownLatch freed = new CountDownLatch(1);
+
+        // allocate the first block of the first arena
+        memory.malloc(16);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                references[0] = memory.malloc(16);
+                allocated.countDown();
+                try {
+                    freed.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                references[1] = memory.malloc(16);
+            }
+        });
+        thread.start();
+        allocated.await();
+
+        // freed from this thread, goes back to the arena of the other thread
+        memory.free(references[0]);
+        assertTrue(memory.getBlock(references[0]).free);
+        freed.countDown();
+        thread.join();
+
+        assertEquals(1, ArenaHeap.arenaOf(references[1]));
+        assertEquals(references[0], references[1]);
+    }
+
+    @Test
+    public void fullArenaTest() {
+        System.out.println("fullArenaTest");
+        ArenaHeap memory = new ArenaHeap(2, 1024);
+
+        int first = memory.malloc(1024);
+        int second = memory.malloc(1024);
+
+        // falls back to the other arena
+        assertTrue(second >= 0);
+        assertTrue(ArenaHeap.arenaOf(first) != ArenaHeap.arenaOf(second));
+
+        // out of memory malloc
+        assertEquals(Heap.INSUFFICIENT_MEMORY, memory.malloc(16));
+    }
+
+    @Test
+    public void readWriteTest() {
+        System.out.println("readWriteTest");
+        ArenaHeap memory = new ArenaHeap(4, 1024);
+
+        String testData = "com.force.react";
+        int reference = memory.malloc(testData.getBytes().length);
+
+        assertTrue(memory.write(-232323232, new byte[23]) == Heap
+                .NULL_REFERENCE);
+        assertTrue(memory.write(3 << ArenaHeap.ARENA_SHIFT, new byte[23]) ==
+                Heap.INVALID_REFERENCE);
+        assertTrue(memory.write(reference, new byte[testData.getBytes()
+                .length + 1]) == Heap.INSUFFICIENT_MEMORY);
+
+        memory.write(reference, testData.getBytes());
+        assertEquals(testData, new String(memory.read(reference)));
+
+        ByteBuffer view = memory.view(reference);
+        assertEquals(testData.getBytes().length, view.remaining());
+        memory.release(reference);
+
+        memory.free(reference);
+        assertNull(memory.read(reference));
+        assertNull(memory.read(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void reallocTest() {
+        System.out.println("reallocTest");
+        ArenaHeap memory = new ArenaHeap(2, 1024);
+
+        int reference = memory.malloc(10);
+        memory.write(reference, "0123456789".getBytes());
+        memory.malloc(512);
+
+        // does not fit in the owning arena, moves to the other one
+        int moved = memory.realloc(reference, 1000);
+        assertTrue(ArenaHeap.arenaOf(moved) != ArenaHeap.arenaOf(reference));
+        assertTrue(memory.getBlock(reference).free);
+        assertEquals("0123456789", new String(memory.read(moved), 0, 10));
+
+        assertEquals(Heap.INVALID_REFERENCE, memory.realloc(reference, 10));
+    }
+}
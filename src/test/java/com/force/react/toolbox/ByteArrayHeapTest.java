@@ -4,6 +4,7 @@ import com.force.react.Heap;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
@@ -310,4 +311,195 @@ public class ByteArrayHeapTest {
         assertTrue(memory.getNBlocks() == 2);
         assertNotNull(((ByteArrayHeap) memory).getBlock(0));
     }
+
+    @Test
+    public void coalesceTest() {
+        System.out.println("coalesceTest");
+        ByteArrayHeap memory = new ByteArrayHeap(1024);
+
+        int block1 = memory.malloc(100);
+        int block2 = memory.malloc(100);
+        int block3 = memory.malloc(100);
+        int block4 = memory.malloc(100);
+
+        // merged into the previous free block
+        memory.free(block2);
+        memory.free(block3);
+        assertEquals(3, memory.getNBlocks());
+        assertNull(memory.getBlock(block3));
+        assertEquals(201, memory.getBlock(block2).size);
+
+        // absorbs the next free block
+        memory.free(block1);
+        assertEquals(2, memory.getNBlocks());
+        assertEquals(302, memory.getBlock(block1).size);
+        assertSame(memory.getBlock(block4), memory.getBlocks().getLast());
+
+        // the last block gives its memory back to the top
+        memory.free(block4);
+        assertEquals(0, memory.getNBlocks());
+        assertEquals(0, memory.getTop());
+    }
+
+    @Test
+    public void fragmentationTest() {
+        System.out.println("fragmentationTest");
+        ByteArrayHeap memory = new ByteArrayHeap(1024);
+
+        int block1 = memory.malloc(100);
+        memory.malloc(100);
+        int block3 = memory.malloc(100);
+        memory.malloc(100);
+
+        assertEquals(0, memory.getNFreeBlocks());
+        assertEquals(1024 - memory.getTop(), memory.getLargestFreeBlock());
+        assertEquals(0, memory.getFragmentation(), 0);
+
+        memory.free(block1);
+        memory.free(block3);
+        assertEquals(2, memory.getNFreeBlocks());
+        assertEquals(620, memory.getLargestFreeBlock());
+        assertEquals(1 - 620f / 820, memory.getFragmentation(), 0.0001);
+    }
+
+    @Test
+    public void compactTest() {
+        System.out.println("compactTest");
+        ByteArrayHeap memory = new ByteArrayHeap(1024).setRelocatable(true);
+
+        int block1 = memory.malloc(300);
+        int block2 = memory.malloc(300);
+        int block3 = memory.malloc(300);
+        memory.write(block3, "com.force.react".getBytes());
+        memory.free(block2);
+
+        // not contiguous, but enough space in total after compaction
+        int block4 = memory.malloc(400);
+        assertTrue(block4 >= 0);
+        assertEquals(3, memory.getNBlocks());
+
+        // the references survive the move
+        assertEquals(301, memory.getBlock(block3).offset);
+        assertEquals("com.force.react", new String(memory.read(block3), 0, 15));
+        assertEquals(300, memory.getBlock(block1).size);
+
+        // nothing left to compact
+        assertEquals(0, memory.compact());
+    }
+
+    @Test
+    public void compactBorrowedTest() {
+        System.out.println("compactBorrowedTest");
+        ByteArrayHeap memory = new ByteArrayHeap(1024).setRelocatable(true);
+
+        int block1 = memory.malloc(100);
+        int block2 = memory.malloc(100);
+        int block3 = memory.malloc(100);
+        memory.free(block1);
+        memory.view(block2);
+
+        // the borrowed block stays, and the free memory below it is kept
+        assertEquals(0, memory.compact());
+        assertEquals(101, memory.getBlock(block2).offset);
+        assertEquals(1, memory.getNFreeBlocks());
+
+        memory.release(block2);
+        assertEquals(101, memory.compact());
+        assertEquals(101, memory.getBlock(block3).offset);
+        assertEquals(202, memory.getTop());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void relocatableNotEmptyTest() {
+        System.out.println("relocatableNotEmptyTest");
+        ByteArrayHeap memory = new ByteArrayHeap(1024);
+        memory.malloc(10);
+        memory.setRelocatable(true);
+    }
+
+    @Test
+    public void growthPolicyTest() {
+        System.out.println("growthPolicyTest");
+        ByteArrayHeap memory = new ByteArrayHeap(new HeapConfig()
+                .setInitialSize(1024).setMaxSize(8192)
+                .setGrowthPolicy(HeapConfig.GROWTH_GEOMETRIC));
+
+        // doubles until the request fits
+        assertTrue(memory.malloc(3000) >= 0);
+        assertEquals(4096, memory.getSize());
+
+        // capped at the maximum size
+        assertTrue(memory.malloc(4000) >= 0);
+        assertEquals(8192, memory.getSize());
+        assertEquals(Heap.INSUFFICIENT_MEMORY, memory.malloc(2000));
+
+        memory = new ByteArrayHeap(new HeapConfig().setInitialSize(1024)
+                .setGrowthStep(1024));
+
+        // a single step, only if it helps
+        assertTrue(memory.malloc(2000) >= 0);
+        assertEquals(2048, memory.getSize());
+        assertEquals(Heap.INSUFFICIENT_MEMORY, memory.malloc(2000));
+    }
+
+    @Test
+    public void shrinkTest() {
+        System.out.println("shrinkTest");
+        // does not shrink by default
+        ByteArrayHeap memory = new ByteArrayHeap(new HeapConfig()
+                .setInitialSize(1024).setGrowthPolicy(HeapConfig
+                        .GROWTH_GEOMETRIC));
+        memory.malloc(500);
+        memory.free(memory.malloc(8000));
+        assertEquals(16384, memory.getSize());
+
+        memory = new ByteArrayHeap(new HeapConfig().setInitialSize(1024)
+                .setGrowthPolicy(HeapConfig.GROWTH_GEOMETRIC)
+                .setShrinkRatio(0.25f).setShrinkHysteresis(3, 0));
+
+        int block1 = memory.malloc(500);
+        int block2 = memory.malloc(8000);
+        assertEquals(16384, memory.getSize());
+
+        // the top falls below a quarter of the heap, for three frees
+        memory.free(block2);
+        memory.free(memory.malloc(100));
+        assertEquals(16384, memory.getSize());
+        memory.free(memory.malloc(100));
+        assertEquals(1024, memory.getSize());
+        assertEquals(0, memory.getBlock(block1).reference);
+
+        // not below the initial size
+        memory.free(block1);
+        assertEquals(1024, memory.getSize());
+    }
+
+    @Test
+    public void shrinkIntervalTest() {
+        System.out.println("shrinkIntervalTest");
+        ByteArrayHeap memory = new ByteArrayHeap(new HeapConfig()
+                .setInitialSize(1024).setGrowthPolicy(HeapConfig
+                        .GROWTH_GEOMETRIC).setShrinkRatio(0.25f)
+                .setShrinkHysteresis(1, 60000));
+
+        // not shrunk soon after growing, however often the top falls
+        for (int i = 0; i < 100; i++) memory.free(memory.malloc(8000));
+        assertEquals(8192, memory.getSize());
+    }
+
+    @Test
+    public void heapFactoryConfigTest() {
+        System.out.println("heapFactoryConfigTest");
+        try {
+            HeapFactory.setConfig(new HeapConfig().setInitialSize(1024)
+                    .setElastic(false));
+            HeapFactory.eraseMemory();
+            assertEquals(1024, HeapFactory.getInstance().getSize());
+            assertEquals(Heap.INSUFFICIENT_MEMORY, HeapFactory.getInstance()
+                    .malloc(2048));
+        } finally {
+            HeapFactory.setConfig(null);
+            HeapFactory.eraseMemory();
+        }
+    }
 }
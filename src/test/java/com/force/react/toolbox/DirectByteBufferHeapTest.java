@@ -0,0 +1,128 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DirectByteBufferHeap}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class DirectByteBufferHeapTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Test
+    public void growthTest() {
+        System.out.println("growthTest");
+        DirectByteBufferHeap memory = new DirectByteBufferHeap(SEGMENT_SIZE,
+                SEGMENT_SIZE * 4);
+
+        // segments are added lazily
+        assertEquals(0, memory.getSize());
+
+        int first = memory.malloc(SEGMENT_SIZE / 2);
+        memory.write(first, "com.force.react".getBytes());
+        ByteBuffer view = memory.view(first);
+
+        // does not fit in the remainder of the first segment
+        int second = memory.malloc(SEGMENT_SIZE);
+        assertEquals(SEGMENT_SIZE, second);
+        assertEquals(2, memory.getNSegments());
+        assertEquals(SEGMENT_SIZE * 2, memory.getSize());
+
+        // views of existing blocks survive growth
+        byte[] data = new byte[15];
+        view.get(data);
+        assertEquals("com.force.react", new String(data));
+
+        // out of memory malloc
+        assertTrue(memory.malloc(SEGMENT_SIZE * 3) == Heap.INSUFFICIENT_MEMORY);
+    }
+
+    @Test
+    public void largeBlockTest() {
+        System.out.println("largeBlockTest");
+        DirectByteBufferHeap memory = new DirectByteBufferHeap(SEGMENT_SIZE,
+                SEGMENT_SIZE * 4);
+
+        // spans three slots of a single segment
+        int reference = memory.malloc(SEGMENT_SIZE * 2 + 1);
+        assertEquals(0, reference);
+        assertEquals(1, memory.getNSegments());
+
+        byte[] data = new byte[SEGMENT_SIZE * 2 + 1];
+        data[data.length - 1] = 42;
+        assertEquals(data.length, memory.write(reference, data));
+        assertEquals(42, memory.read(reference)[data.length - 1]);
+    }
+
+    @Test
+    public void readWriteTest() {
+        System.out.println("readWriteTest");
+        DirectByteBufferHeap memory = new DirectByteBufferHeap(SEGMENT_SIZE,
+                SEGMENT_SIZE);
+
+        String testData = "com.force.react";
+        int reference = memory.malloc(testData.getBytes().length);
+
+        assertTrue(memory.write(-232323232, new byte[23]) == Heap
+                .NULL_REFERENCE);
+        assertTrue(memory.write(223982, new byte[23]) == Heap
+                .INVALID_REFERENCE);
+        assertTrue(memory.write(reference, new byte[testData.getBytes()
+                .length + 1]) == Heap.INSUFFICIENT_MEMORY);
+
+        memory.write(reference, testData.getBytes());
+        assertEquals(testData, new String(memory.read(reference)));
+
+        // views are read-only, and sized to the block
+        ByteBuffer view = memory.view(reference);
+        assertTrue(view.isReadOnly());
+        assertEquals(testData.getBytes().length, view.remaining());
+        memory.release(reference);
+
+        // moved blocks keep their content
+        int moved = memory.realloc(reference, 100);
+        assertEquals(testData, new String(memory.read(moved), 0, testData
+                .length()));
+
+        assertNull(memory.read(reference));
+        assertNull(memory.view(reference));
+        assertNull(memory.read(-99));
+    }
+
+    @Test
+    public void mappedFileTest() throws IOException {
+        System.out.println("mappedFileTest");
+        File file = File.createTempFile("heap", ".map");
+        file.deleteOnExit();
+
+        DirectByteBufferHeap memory = new DirectByteBufferHeap(file,
+                SEGMENT_SIZE, SEGMENT_SIZE * 2);
+
+        int reference = memory.malloc(15);
+        memory.write(reference, "com.force.react".getBytes());
+
+        // the content is written through to the file
+        RandomAccessFile mapped = new RandomAccessFile(file, "r");
+        byte[] data = new byte[15];
+        mapped.seek(reference);
+        mapped.readFully(data);
+        mapped.close();
+        memory.close();
+
+        assertEquals("com.force.react", new String(data));
+    }
+}
@@ -0,0 +1,140 @@
+package com.force.react.toolbox;
+
+import com.force.react.HeapUtil;
+import com.force.react.IPCResponse;
+import com.force.react.RejectedError;
+import com.force.react.TimeoutError;
+import com.force.react.VolleyIPCFunction;
+import com.force.react.mock.MockFunction;
+import com.force.react.mock.TestRequest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link DirectStack}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class DirectStackTest {
+
+    private static final String FUNCTION_NAME = "com.force.test";
+
+    @After
+    public void eraseMemory() {
+        HeapFactory.eraseMemory();
+    }
+
+    @Test
+    public void responseTest() throws Exception {
+        System.out.println("responseTest");
+        byte[] body = "response".getBytes();
+        MockFunction function = new MockFunction().setResponse(body);
+
+        IPCResponse response = new DirectStack().performRequest(new
+                TestRequest.Get(), FUNCTION_NAME, function, 5000);
+        assertArrayEquals(body, response.getRawResponse());
+        assertEquals(1, function.nHandled.get());
+    }
+
+    @Test
+    public void unsupportedTest() throws Exception {
+        System.out.println("unsupportedTest");
+        MockFunction function = new MockFunction().setResponse
+                (VolleyIPCFunction.NO_HANDLER);
+
+        // falls back to another IPC type
+        assertNull(new DirectStack().performRequest(new TestRequest.Get(),
+                FUNCTION_NAME, function, 5000));
+        assertEquals(1, function.nHandled.get());
+    }
+
+    @Test
+    public void fallbackTest() throws Exception {
+        System.out.println("fallbackTest");
+        // the function is not in this process
+        assertNull(new DirectStack().performRequest(new TestRequest.Get(),
+                FUNCTION_NAME, null, 5000));
+        // the function returned no response
+        assertNull(new DirectStack().performRequest(new TestRequest.Get(),
+                FUNCTION_NAME, new MockFunction(), 5000));
+    }
+
+    @Test
+    public void interruptTest() throws Exception {
+        System.out.println("interruptTest");
+        CountDownLatch release = new CountDownLatch(1);
+        MockFunction function = new MockFunction().setResponse("response"
+                .getBytes()).setRelease(release);
+
+        Thread.currentThread().interrupt();
+        try {
+            new DirectStack().performRequest(new TestRequest.Get(),
+                    FUNCTION_NAME, function, 5000);
+            fail("Expected a TimeoutError");
+        } catch (TimeoutError e) {
+            // not sent again, and the dispatcher is still told to quit
+            assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        System.out.println("timeoutTest");
+        int nBlocks = HeapFactory.getInstance().getNBlocks();
+        MockFunction function = new MockFunction().setResponse(HeapUtil
+                .putBlockData("response".getBytes(), "DirectStackTest"))
+                .setRelease(new CountDownLatch(1));
+
+        try {
+            new DirectStack().performRequest(new TestRequest.Get(),
+                    FUNCTION_NAME, function, 50);
+            fail("Expected a TimeoutError");
+        } catch (TimeoutError e) {
+            // expected
+        }
+
+        // the reference returned late is freed
+        for (int i = 0; i < 100 && function.nHandled.get() == 0; i++)
+            Thread.sleep(10);
+        Thread.sleep(10);
+        assertEquals(1, function.nHandled.get());
+        assertEquals(nBlocks, HeapFactory.getInstance().getNBlocks());
+    }
+
+    @Test
+    public void rejectedTest() throws Exception {
+        System.out.println("rejectedTest");
+        CountDownLatch release = new CountDownLatch(1);
+        MockFunction function = new MockFunction().setRelease(release);
+        function.setWorkerPool(1, 1);
+
+        // one request on the worker, and one in the queue
+        function.submitDirect(new TestRequest.Get());
+        function.submitDirect(new TestRequest.Get());
+        try {
+            new DirectStack().performRequest(new TestRequest.Get(),
+                    FUNCTION_NAME, function, 5000);
+            fail("Expected a RejectedError");
+        } catch (RejectedError e) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+        assertEquals(1, function.getNRejected());
+    }
+}
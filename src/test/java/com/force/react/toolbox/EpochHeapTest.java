@@ -0,0 +1,206 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link EpochHeap}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class EpochHeapTest {
+
+    private static final int REGION_SIZE = 1024;
+
+    @Test
+    public void mallocTest() {
+        System.out.println("mallocTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 2);
+
+        assertTrue(memory.malloc(-8) == Heap.NULL_REFERENCE);
+
+        // blocks are bumped one after the other
+        int first = memory.malloc(100);
+        int second = memory.malloc(100);
+        assertEquals(EpochHeap.HEADER_SIZE, first);
+        assertEquals(first + 100 + EpochHeap.HEADER_SIZE, second);
+        assertEquals(2, memory.getNBlocks());
+        assertEquals(2, memory.getBlocks().size());
+
+        // asking too much space
+        assertTrue(memory.malloc(REGION_SIZE) == Heap.INSUFFICIENT_MEMORY);
+    }
+
+    @Test
+    public void reclaimTest() {
+        System.out.println("reclaimTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 2);
+
+        int first = memory.malloc(600);
+        int second = memory.malloc(600);
+        assertEquals(1, second / REGION_SIZE);
+
+        // the first region still holds a live block
+        assertTrue(memory.malloc(600) == Heap.INSUFFICIENT_MEMORY);
+        // the failed move does not count a block
+        assertEquals(2, memory.getNBlocks());
+
+        // the first region is reclaimed once all of its blocks are freed
+        memory.free(first);
+        assertEquals(first, memory.malloc(600));
+        assertEquals(2, memory.getNBlocks());
+        memory.free(second);
+        assertEquals(1, memory.getNBlocks());
+    }
+
+    @Test
+    public void readWriteTest() {
+        System.out.println("readWriteTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 2);
+
+        String testData = "com.force.react";
+        int reference = memory.malloc(testData.getBytes().length);
+
+        assertTrue(memory.write(-232323232, new byte[23]) == Heap
+                .NULL_REFERENCE);
+        assertTrue(memory.write(REGION_SIZE + 100, new byte[23]) == Heap
+                .INVALID_REFERENCE);
+        assertTrue(memory.write(reference, new byte[testData.getBytes()
+                .length + 1]) == Heap.INSUFFICIENT_MEMORY);
+
+        memory.write(reference, testData.getBytes());
+        assertEquals(testData, new String(memory.read(reference)));
+
+        assertNull(memory.read(-99));
+        assertNull(memory.read(REGION_SIZE * 2));
+
+        memory.free(reference);
+        assertNull(memory.read(reference));
+        assertTrue(memory.write(reference, new byte[2]) == Heap
+                .INVALID_REFERENCE);
+    }
+
+    @Test
+    public void reallocTest() {
+        System.out.println("reallocTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 2);
+
+        int reference = memory.malloc(10);
+        memory.write(reference, "0123456789".getBytes());
+
+        // shrinks in place
+        assertEquals(reference, memory.realloc(reference, 5));
+        assertEquals(5, memory.getBlock(reference).size);
+
+        int moved = memory.realloc(reference, 100);
+        assertTrue(moved != reference);
+        assertTrue(memory.getBlock(reference).free);
+        assertEquals("01234", new String(memory.read(moved), 0, 5));
+
+        assertEquals(Heap.INVALID_REFERENCE, memory.realloc(reference, 10));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleFreeTest() {
+        System.out.println("doubleFreeTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 2);
+        int reference = memory.malloc(10);
+        memory.free(reference);
+        memory.free(reference);
+    }
+
+    @Test
+    public void viewTest() {
+        System.out.println("viewTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 1);
+
+        int reference = memory.malloc(4);
+        memory.write(reference, new byte[]{1, 2, 3, 4});
+
+        ByteBuffer view = memory.view(reference);
+        assertEquals(4, view.remaining());
+        assertEquals(3, view.get(2));
+
+        // the borrowed block keeps its region alive until it is released
+        memory.free(reference);
+        assertEquals(1, memory.getNBlocks());
+        memory.release(reference);
+        assertEquals(0, memory.getNBlocks());
+        assertTrue(memory.getBlock(reference).free);
+    }
+
+    @Test
+    public void concurrentMallocTest() throws InterruptedException {
+        System.out.println("concurrentMallocTest");
+        final int nThreads = 8;
+        // each thread holds at most one block, and a thread about to fail
+        // its CAS counts at most one more, so that a region with no live
+        // blocks is always left to move the top to
+        final EpochHeap memory = new EpochHeap(REGION_SIZE * 64, 2 *
+                nThreads + 1);
+        final AtomicInteger overlaps = new AtomicInteger(0);
+        final AtomicInteger failures = new AtomicInteger(0);
+        Thread[] threads = new Thread[nThreads];
+
+        for (int t = 0; t < nThreads; t++) {
+            final byte value = (byte) t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        int reference = memory.malloc(32);
+                        // the live blocks take a fraction of the heap
+                        if (reference < 0) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        byte[] data = new byte[32];
+                        Arrays.fill(data, value);
+                        memory.write(reference, data);
+                        // no other thread got the same block
+                        if (!Arrays.equals(data, memory.read(reference)))
+                            overlaps.incrementAndGet();
+                        memory.free(reference);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(0, failures.get());
+        assertEquals(0, overlaps.get());
+        assertEquals(0, memory.getNBlocks());
+    }
+
+    @Test
+    public void skipLiveRegionTest() {
+        System.out.println("skipLiveRegionTest");
+        EpochHeap memory = new EpochHeap(REGION_SIZE, 3);
+
+        int first = memory.malloc(600);
+        int second = memory.malloc(600);
+        memory.free(first);
+        int third = memory.malloc(600);
+        assertEquals(2, third / REGION_SIZE);
+
+        // the second region still holds a live block, and is skipped
+        memory.free(third);
+        assertEquals(first, memory.malloc(600));
+        assertEquals(first + 600 + EpochHeap.HEADER_SIZE, memory.malloc
+                (300));
+        int fourth = memory.malloc(600);
+        assertEquals(2, fourth / REGION_SIZE);
+        memory.free(second);
+    }
+}
@@ -0,0 +1,90 @@
+package com.force.react.toolbox;
+
+import com.force.react.IPCUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link FunctionLookupCache}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class FunctionLookupCacheTest {
+
+    private static final String FUNCTION = "function.force.com";
+
+    @Test
+    public void putGetTest() {
+        System.out.println("putGetTest");
+        FunctionLookupCache cache = new FunctionLookupCache();
+        int[] ipcs = {IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP};
+
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        properties.setLookupResponse(ipcs);
+        properties.setBypassFuncLocal(false);
+        FunctionLookupCache.Entry entry = cache.put(FUNCTION, properties);
+
+        assertSame(entry, cache.get(FUNCTION));
+        assertTrue(entry.isLocal());
+        assertArrayEquals(ipcs, entry.getSupportedIPCs());
+
+        // not local
+        cache.put("remote.force.com", new IPCUtil.Properties());
+        assertFalse(cache.get("remote.force.com").isLocal());
+        assertNull(cache.get("unknown.force.com"));
+    }
+
+    @Test
+    public void expiryTest() throws InterruptedException {
+        System.out.println("expiryTest");
+        FunctionLookupCache cache = new FunctionLookupCache().setTtl(20);
+
+        cache.put(FUNCTION, new IPCUtil.Properties());
+        Thread.sleep(40);
+        assertNull(cache.get(FUNCTION));
+
+        cache.setTtl(0);
+        cache.put(FUNCTION, new IPCUtil.Properties());
+        assertNull(cache.get(FUNCTION));
+    }
+
+    @Test
+    public void invalidateTest() {
+        System.out.println("invalidateTest");
+        FunctionLookupCache cache = new FunctionLookupCache();
+
+        cache.put(FUNCTION, new IPCUtil.Properties());
+        cache.invalidate(FUNCTION);
+        assertNull(cache.get(FUNCTION));
+
+        cache.put(FUNCTION, new IPCUtil.Properties());
+        cache.invalidateAll();
+        assertNull(cache.get(FUNCTION));
+    }
+
+    @Test
+    public void staleLookupTest() {
+        System.out.println("staleLookupTest");
+        FunctionLookupCache cache = new FunctionLookupCache();
+
+        // the function is registered while it is looked up
+        long generation = cache.getGeneration();
+        cache.invalidate(FUNCTION);
+        FunctionLookupCache.Entry entry = cache.put(FUNCTION, new IPCUtil
+                .Properties(), generation);
+        assertFalse(entry.isLocal());
+        assertNull(cache.get(FUNCTION));
+
+        // a lookup after the invalidation is cached
+        entry = cache.put(FUNCTION, new IPCUtil.Properties(), cache
+                .getGeneration());
+        assertSame(entry, cache.get(FUNCTION));
+    }
+}
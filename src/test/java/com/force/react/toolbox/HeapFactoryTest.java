@@ -0,0 +1,69 @@
+package com.force.react.toolbox;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the heap types of {@link HeapFactory}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class HeapFactoryTest {
+
+    @After
+    public void resetHeapType() {
+        HeapFactory.setHeapType(HeapFactory.HEAP_TYPE_BYTE_ARRAY);
+        HeapFactory.setMappedFile(null);
+        HeapFactory.eraseMemory();
+    }
+
+    private static void setHeapType(int type) {
+        HeapFactory.setHeapType(type);
+        HeapFactory.eraseMemory();
+    }
+
+    @Test
+    public void heapTypeTest() throws Exception {
+        System.out.println("heapTypeTest");
+        setHeapType(HeapFactory.HEAP_TYPE_BYTE_ARRAY);
+        assertTrue(HeapFactory.getInstance() instanceof ByteArrayHeap);
+
+        setHeapType(HeapFactory.HEAP_TYPE_SIZE_CLASS);
+        assertTrue(HeapFactory.getInstance() instanceof SizeClassHeap);
+
+        setHeapType(HeapFactory.HEAP_TYPE_EPOCH);
+        assertTrue(HeapFactory.getInstance() instanceof EpochHeap);
+
+        // not backed by one array
+        setHeapType(HeapFactory.HEAP_TYPE_ARENA);
+        assertTrue(HeapFactory.getInstance() instanceof ArenaHeap);
+        assertNull(HeapFactory.getInstance().getMemory());
+
+        setHeapType(HeapFactory.HEAP_TYPE_DIRECT);
+        assertTrue(HeapFactory.getInstance() instanceof DirectByteBufferHeap);
+        assertNull(HeapFactory.getInstance().getMemory());
+    }
+
+    @Test
+    public void mappedHeapTypeTest() throws Exception {
+        System.out.println("mappedHeapTypeTest");
+        File file = File.createTempFile("heap", ".map");
+        file.deleteOnExit();
+
+        HeapFactory.setMappedFile(file);
+        setHeapType(HeapFactory.HEAP_TYPE_MAPPED);
+        assertTrue(HeapFactory.getInstance() instanceof DirectByteBufferHeap);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownHeapTypeTest() {
+        System.out.println("unknownHeapTypeTest");
+        HeapFactory.setHeapType(-1);
+    }
+}
@@ -5,6 +5,7 @@ import com.force.react.Heap;
 import org.junit.Test;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -231,4 +232,44 @@ public class HeapTest {
         memory.free(reference);
         assertNull(memory.read(reference));
     }
+
+    @Test
+    public void viewTest() {
+        System.out.println("viewTest");
+
+        HeapFactory.eraseMemory();
+        Heap memory = HeapFactory.getInstance();
+
+        String testData = "com.force.react";
+
+        int reference = memory.malloc(testData.getBytes().length);
+        memory.write(reference, testData.getBytes());
+
+        // invalid references
+        assertNull(memory.view(-99));
+        assertNull(memory.view(93849));
+
+        // content check, without copying
+        ByteBuffer view = memory.view(reference);
+        assertTrue(view.isReadOnly());
+        byte[] data = new byte[view.remaining()];
+        view.get(data);
+        assertEquals(testData, new String(data));
+
+        // free is deferred until the view is released
+        memory.free(reference);
+        assertNotNull(memory.read(reference));
+        memory.release(reference);
+        assertNull(memory.read(reference));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseNotBorrowedTest() {
+        System.out.println("releaseNotBorrowedTest");
+
+        HeapFactory.eraseMemory();
+        Heap memory = HeapFactory.getInstance();
+
+        memory.release(memory.malloc(10));
+    }
 }
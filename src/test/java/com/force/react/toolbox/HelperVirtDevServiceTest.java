@@ -0,0 +1,100 @@
+package com.force.react.toolbox;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+
+import com.force.react.IPCUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link HelperVirtDevService}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class HelperVirtDevServiceTest {
+
+    private static final String FUNCTION_NAME = "remote.force.com";
+
+    private static final int[] SUPPORTED_IPCS = {IPCUtil
+            .FORCE_ANDROID_IPC_TYPE_MESSENGER};
+
+    /**
+     * Get the binder of a virtDev service, answering the queries with the
+     * registration of a function of another process, or that no function
+     * is registered if the messenger is null
+     */
+    private static Messenger service(final Messenger functionMessenger) {
+        return new Messenger(new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                Bundle query = (Bundle) msg.obj;
+                Message reply;
+                if (functionMessenger == null) {
+                    reply = Message.obtain(null, IPCUtil
+                            .MSG_NO_REGISTERED_SERVICE);
+                } else {
+                    Bundle bundle = new Bundle();
+                    bundle.putString(IPCUtil.REQ_ID_MSG_QUERY_SERVICE, query
+                            .getString(IPCUtil.REQ_ID_MSG_QUERY_SERVICE));
+                    bundle.putIntArray(IPCUtil
+                            .IPC_AVAILABILITY_MSG_QUERY_SERVICE, SUPPORTED_IPCS);
+                    bundle.putParcelable(IPCUtil
+                            .FUNCTION_MESSENGER_MSG_QUERY_SERVICE,
+                            functionMessenger);
+                    reply = Message.obtain(null, IPCUtil.MSG_QUERY_SERVICE,
+                            bundle);
+                }
+                try {
+                    msg.replyTo.send(reply);
+                } catch (RemoteException e) {
+                    fail(e.toString());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void remoteLookupTest() throws InterruptedException {
+        System.out.println("remoteLookupTest");
+        Messenger functionMessenger = new Messenger(new Handler(Looper
+                .getMainLooper()));
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+
+        // not registered in this process
+        HelperVirtDevService.lookup(FUNCTION_NAME, service(functionMessenger)
+                .getBinder(), properties, null, 1000, true);
+
+        assertFalse(properties.isBypassFuncLocal());
+        assertArrayEquals(SUPPORTED_IPCS, properties.getLookupResponse());
+        assertEquals(functionMessenger, properties.getFunctionMessenger());
+        assertNull(properties.getFunctionInterface());
+    }
+
+    @Test
+    public void remoteLookupMissTest() throws InterruptedException {
+        System.out.println("remoteLookupMissTest");
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+
+        HelperVirtDevService.lookup(FUNCTION_NAME, service(null).getBinder(),
+                properties, null, 1000, true);
+
+        assertTrue(properties.isBypassFuncLocal());
+        assertNull(properties.getFunctionMessenger());
+    }
+}
@@ -0,0 +1,290 @@
+package com.force.react.toolbox;
+
+import android.content.Intent;
+
+import com.force.react.AuthFailureError;
+import com.force.react.HeapUtil;
+import com.force.react.IPCResponse;
+import com.force.react.Request;
+import com.force.react.TimeoutError;
+import com.force.react.VolleyIPCFunction;
+import com.force.react.mock.MockFunction;
+import com.force.react.mock.TestRequest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link IPCBatcher}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class IPCBatcherTest {
+
+    private static final int N_REQUESTS = 4;
+    private static final String URL = "http://foo.com";
+
+    @After
+    public void eraseMemory() {
+        HeapFactory.eraseMemory();
+    }
+
+    @Test
+    public void batchTest() throws Exception {
+        System.out.println("batchTest");
+        final BatchFunction function = new BatchFunction();
+        function.setBatching(N_REQUESTS, 5000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(N_REQUESTS);
+        Future<?>[] responses = new Future<?>[N_REQUESTS];
+        for (int i = 0; i < N_REQUESTS; i++)
+            responses[i] = executor.submit(new Callable<IPCResponse>() {
+                @Override
+                public IPCResponse call() throws Exception {
+                    return new DirectStack().performRequest(new TestRequest
+                            .Get(), "com.force.test", function, 5000);
+                }
+            });
+
+        // the batch is handled once full, before the window
+        for (Future<?> response : responses)
+            assertEquals(URL, new String(((IPCResponse)
+                    response.get(1, TimeUnit.SECONDS)).getRawResponse()));
+        assertEquals(1, function.nBatches.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void windowTest() throws Exception {
+        System.out.println("windowTest");
+        BatchFunction function = new BatchFunction();
+        function.setBatching(N_REQUESTS, 10);
+
+        // handled alone, once the window ends
+        IPCResponse response = IPCBatcher.getInstance(function)
+                .performRequest(new TestRequest.Get(), "com.force.test", 5000);
+        assertEquals(URL, new String(response
+                .getRawResponse()));
+        assertEquals(1, function.nBatches.get());
+        IPCBatcher.invalidate(function);
+    }
+
+    @Test
+    public void heapResponseTest() throws Exception {
+        System.out.println("heapResponseTest");
+        // HeapStack reads only references above 0 from the Heap
+        int guard = HeapUtil.putBlockData(new byte[1], "IPCBatcherTest");
+        byte[] body = URL.getBytes();
+        MockFunction function = new MockFunction().setResponse(HeapUtil
+                .putBlockData(body, "IPCBatcherTest"));
+        function.setBatching(N_REQUESTS, 0);
+
+        // copied out of the Heap, as by HeapStack
+        IPCResponse response = IPCBatcher.getInstance(function)
+                .performRequest(new ByteRequest(URL, null, null),
+                        "com.force.test", 5000);
+        assertArrayEquals(body, response.getRawResponse());
+        HeapFactory.getInstance().free(guard);
+        assertEquals(0, HeapFactory.getInstance().getNBlocks());
+        IPCBatcher.invalidate(function);
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        System.out.println("timeoutTest");
+        MockFunction function = new MockFunction().setResponse(URL
+                .getBytes()).setRelease(new CountDownLatch(1));
+        function.setBatching(N_REQUESTS, 0);
+
+        try {
+            IPCBatcher.getInstance(function).performRequest(new TestRequest
+                    .Get(), "com.force.test", 50);
+            fail("Expected a TimeoutError");
+        } catch (TimeoutError e) {
+            // expected
+        }
+
+        // the block of the responses returned late is freed
+        for (int i = 0; i < 100 && function.nHandled.get() == 0; i++)
+            Thread.sleep(10);
+        Thread.sleep(10);
+        assertEquals(1, function.nHandled.get());
+        assertEquals(0, HeapFactory.getInstance().getNBlocks());
+        IPCBatcher.invalidate(function);
+    }
+
+    @Test
+    public void abandonTest() throws Exception {
+        System.out.println("abandonTest");
+        final MockFunction function = new MockFunction().setResponse(URL
+                .getBytes());
+        function.setBatching(N_REQUESTS, 200);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<IPCResponse> first = executor.submit(new
+                Callable<IPCResponse>() {
+                    @Override
+                    public IPCResponse call() throws Exception {
+                        return IPCBatcher.getInstance(function)
+                                .performRequest(new TestRequest.Get(),
+                                        "com.force.test", 5000);
+                    }
+                });
+        Thread.sleep(20);
+
+        // stops waiting before the window ends
+        try {
+            IPCBatcher.getInstance(function).performRequest(new TestRequest
+                    .Get(), "com.force.test", 20);
+            fail("Expected a TimeoutError");
+        } catch (TimeoutError e) {
+            // expected
+        }
+
+        // only the request still waiting is handled
+        assertEquals(URL, new String(first.get(1, TimeUnit.SECONDS)
+                .getRawResponse()));
+        assertEquals(1, function.nHandled.get());
+        executor.shutdown();
+        IPCBatcher.invalidate(function);
+    }
+
+    @Test
+    public void interruptTest() throws Exception {
+        System.out.println("interruptTest");
+        final MockFunction function = new MockFunction().setResponse(URL
+                .getBytes());
+        function.setBatching(N_REQUESTS, 5000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<IPCResponse> first = executor.submit(new
+                Callable<IPCResponse>() {
+                    @Override
+                    public IPCResponse call() throws Exception {
+                        return IPCBatcher.getInstance(function)
+                                .performRequest(new TestRequest.Get(),
+                                        "com.force.test", 5000);
+                    }
+                });
+        Thread.sleep(20);
+        Future<IPCResponse> second = executor.submit(new
+                Callable<IPCResponse>() {
+                    @Override
+                    public IPCResponse call() throws Exception {
+                        return IPCBatcher.getInstance(function)
+                                .performRequest(new TestRequest.Get(),
+                                        "com.force.test", 5000);
+                    }
+                });
+        Thread.sleep(20);
+
+        // the first request stops waiting for the window
+        first.cancel(true);
+        try {
+            second.get(1, TimeUnit.SECONDS);
+            fail("Expected an IOException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, function.nHandled.get());
+
+        // later requests do not join the batch that is not handled
+        function.setBatching(N_REQUESTS, 0);
+        assertEquals(URL, new String(IPCBatcher.getInstance(function)
+                .performRequest(new TestRequest.Get(), "com.force.test",
+                        5000).getRawResponse()));
+        executor.shutdown();
+        IPCBatcher.invalidate(function);
+    }
+
+    /**
+     * Replies with the URL of each request, in one block of the batch
+     */
+    private static final class BatchFunction extends VolleyIPCFunction {
+        private final AtomicInteger nBatches = new AtomicInteger();
+
+        BatchFunction() {
+            super(null);
+        }
+
+        @Override
+        public int handleBatchreq(Request<?>[] requests) throws
+                AuthFailureError {
+            nBatches.incrementAndGet();
+            byte[][] bodies = new byte[requests.length][];
+            for (int i = 0; i < requests.length; i++)
+                if (requests[i] != null)
+                    bodies[i] = requests[i].getUrl().getBytes();
+            return HeapUtil.putBatchData(bodies, "IPCBatcherTest");
+        }
+
+        @Override
+        public Object getResponse() {
+            return null;
+        }
+
+        @Override
+        public Runnable handleUnknownreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handlePATCHreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleTRACEreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleOPTIONSreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleHEADreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleDELETEreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handlePUTreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handlePOSTreq(Intent intent) {
+            return null;
+        }
+
+        @Override
+        public Runnable handleGETreq(Intent intent, Request<?> request) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.force.react.toolbox;
+
+import com.force.react.IPCUtil;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link IPCHealth}, and the order of the IPC types of
+ * {@link AndroidIPC}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class IPCHealthTest {
+
+    @After
+    public void reset() {
+        IPCHealth.getInstance().reset();
+        IPCHealth.getInstance().setSlowThreshold(IPCHealth.DEFAULT_SLOW_MS);
+    }
+
+    @Test
+    public void demoteFailingTest() {
+        System.out.println("demoteFailingTest");
+        IPCHealth health = new IPCHealth();
+        int type = IPCUtil.FORCE_ANDROID_IPC_TYPE_LBROADCAST;
+
+        health.recordFailure(type);
+        assertFalse(health.isDemoted(type));
+
+        for (int i = 0; i < 5; i++) health.recordFailure(type);
+        assertTrue(health.isDemoted(type));
+
+        for (int i = 0; i < 10; i++) health.recordSuccess(type, 1000000);
+        assertFalse(health.isDemoted(type));
+    }
+
+    @Test
+    public void demoteSlowTest() {
+        System.out.println("demoteSlowTest");
+        IPCHealth health = new IPCHealth().setSlowThreshold(10);
+        int type = IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP;
+
+        health.recordSuccess(type, 1000000);
+        assertFalse(health.isDemoted(type));
+        for (int i = 0; i < 20; i++) health.recordSuccess(type, 50000000);
+        assertTrue(health.isDemoted(type));
+    }
+
+    @Test
+    public void chainTest() {
+        System.out.println("chainTest");
+        int[] supported = {IPCUtil.FORCE_ANDROID_IPC_TYPE_HEAP, IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_MESSENGER, IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_LBHEAP, IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_LBROADCAST};
+
+        // the Heap is not shared with other processes
+        assertArrayEquals(new int[]{IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP,
+                IPCUtil.FORCE_ANDROID_IPC_TYPE_LBROADCAST}, new AndroidIPC
+                (supported, false).getChain());
+        // HEAP calls the same handler as DIRECT, without a timeout
+        assertArrayEquals(new int[]{IPCUtil.FORCE_ANDROID_IPC_TYPE_DIRECT,
+                IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP, IPCUtil
+                .FORCE_ANDROID_IPC_TYPE_LBROADCAST}, new AndroidIPC
+                (supported, true).getChain());
+
+        for (int i = 0; i < 5; i++)
+            IPCHealth.getInstance().recordFailure(IPCUtil
+                    .FORCE_ANDROID_IPC_TYPE_LBHEAP);
+        assertArrayEquals(new int[]{IPCUtil.FORCE_ANDROID_IPC_TYPE_LBROADCAST,
+                IPCUtil.FORCE_ANDROID_IPC_TYPE_LBHEAP}, new AndroidIPC
+                (supported, false).getChain());
+    }
+}
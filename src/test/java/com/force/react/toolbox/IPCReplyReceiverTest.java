@@ -0,0 +1,192 @@
+package com.force.react.toolbox;
+
+import android.content.Intent;
+import android.support.v4.content.LocalBroadcastManager;
+
+import com.force.react.Heap;
+import com.force.react.HeapUtil;
+import com.force.react.IPCUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link IPCReplyReceiver}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class IPCReplyReceiverTest {
+
+    private static final byte[] BODY = {1, 2, 3};
+
+    @Test
+    public void replyTest() {
+        System.out.println("replyTest");
+        IPCReplyReceiver receiver = receiver();
+        int nPending = receiver.getNPending();
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        assertEquals(nPending + 1, receiver.getNPending());
+
+        receiver.onReceive(null, reply(reqID));
+        assertTrue(properties.isRequestResponseReceived());
+        assertArrayEquals(BODY, properties.getRequestResponse());
+        assertEquals(nPending, receiver.getNPending());
+    }
+
+    @Test
+    public void errorReplyTest() {
+        System.out.println("errorReplyTest");
+        IPCReplyReceiver receiver = receiver();
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        Intent intent = new Intent(IPCUtil.IPC_REPLY_ACTION);
+        intent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        intent.putExtra(IPCUtil.METHOD_EXTRA_NAME, IPCUtil.IPC_ERROR_REPLY);
+        intent.putExtra(IPCUtil.ERROR_EXTRA_NAME, "Rejected");
+        receiver.onReceive(null, intent);
+
+        assertTrue(properties.isRequestResponseReceived());
+        assertEquals("Rejected", properties.getRequestError());
+    }
+
+    @Test
+    public void unsupportedReplyTest() {
+        System.out.println("unsupportedReplyTest");
+        IPCReplyReceiver receiver = receiver();
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        Intent intent = new Intent(IPCUtil.IPC_REPLY_ACTION);
+        intent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        intent.putExtra(IPCUtil.METHOD_EXTRA_NAME, IPCUtil
+                .IPC_UNSUPPORTED_REPLY);
+        receiver.onReceive(null, intent);
+
+        // not an error, so that the requester falls back
+        assertTrue(properties.isRequestResponseReceived());
+        assertTrue(properties.isRequestUnsupported());
+        assertNull(properties.getRequestError());
+    }
+
+    @Test
+    public void unknownReplyTest() {
+        System.out.println("unknownReplyTest");
+        IPCReplyReceiver receiver = receiver();
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        int nPending = receiver.getNPending();
+
+        // dropped, without touching the other requests
+        receiver.onReceive(null, reply(IPCUtil.generateReqID()));
+        receiver.onReceive(null, reply(null));
+        assertFalse(properties.isRequestResponseReceived());
+        assertEquals(nPending, receiver.getNPending());
+        receiver.cancel(reqID);
+    }
+
+    @Test
+    public void timeoutTest() throws InterruptedException {
+        System.out.println("timeoutTest");
+        IPCReplyReceiver receiver = receiver();
+        int nPending = receiver.getNPending();
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        assertFalse(properties.awaitRequestResponse(50));
+        assertTrue(receiver.cancel(reqID));
+        assertEquals(nPending, receiver.getNPending());
+
+        // the reply arriving late is dropped
+        receiver.onReceive(null, reply(reqID));
+        assertFalse(properties.isRequestResponseReceived());
+        assertNull(properties.getRequestResponse());
+    }
+
+    @Test
+    public void abandonTest() {
+        System.out.println("abandonTest");
+        IPCReplyReceiver receiver = receiver();
+        int nBlocks = HeapFactory.getInstance().getNBlocks();
+        int reference = HeapUtil.putBlockData(BODY, "IPCReplyReceiverTest");
+
+        // the block of the reply arriving late is freed
+        IPCUtil.Properties properties = abandon(receiver, reference);
+        assertFalse(properties.isRequestResponseReceived());
+        assertEquals(nBlocks, HeapFactory.getInstance().getNBlocks());
+
+        // a block freed already, or an error code, is not freed
+        abandon(receiver, reference);
+        abandon(receiver, Heap.INSUFFICIENT_MEMORY);
+        assertEquals(nBlocks, HeapFactory.getInstance().getNBlocks());
+    }
+
+    @Test
+    public void cancelReceivedTest() {
+        System.out.println("cancelReceivedTest");
+        IPCReplyReceiver receiver = receiver();
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        receiver.onReceive(null, reply(reqID));
+
+        // the reply is to be used by the requester
+        assertFalse(receiver.cancel(reqID));
+        properties.awaitRequestResponse();
+        assertArrayEquals(BODY, properties.getRequestResponse());
+    }
+
+    /**
+     * Time out a request replied with a reference to the Heap, then receive
+     * its reply
+     */
+    private static IPCUtil.Properties abandon(IPCReplyReceiver receiver, int
+            reference) {
+        IPCUtil.Properties properties = new IPCUtil.Properties();
+        properties.setRequestReplyInHeap(true);
+        String reqID = IPCUtil.generateReqID();
+
+        receiver.expect(reqID, properties);
+        assertTrue(receiver.cancel(reqID));
+
+        Intent intent = reply(reqID);
+        intent.putExtra(IPCUtil.GET_REPLYBODY_EXTRA_NAME, ByteBuffer.allocate
+                (4).putInt(reference).array());
+        receiver.onReceive(null, intent);
+        return properties;
+    }
+
+    private static IPCReplyReceiver receiver() {
+        return IPCReplyReceiver.getInstance(LocalBroadcastManager
+                .getInstance(RuntimeEnvironment.application));
+    }
+
+    private static Intent reply(String reqID) {
+        Intent intent = new Intent(IPCUtil.IPC_REPLY_ACTION);
+        intent.putExtra(IPCUtil.REQ_ID_EXTRA_NAME, reqID);
+        intent.putExtra(IPCUtil.METHOD_EXTRA_NAME, IPCUtil.IPC_GET_REPLY);
+        intent.putExtra(IPCUtil.GET_REPLYBODY_EXTRA_NAME, BODY);
+        return intent;
+    }
+}
@@ -0,0 +1,189 @@
+package com.force.react.toolbox;
+
+import com.force.react.IPCResponse;
+import com.force.react.RejectedError;
+import com.force.react.VolleyError;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link IPCSingleFlight}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class IPCSingleFlightTest {
+
+    private static final int N_REQUESTS = 8;
+
+    @Test
+    public void coalesceTest() throws Exception {
+        System.out.println("coalesceTest");
+        final IPCSingleFlight singleFlight = new IPCSingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger nCalls = new AtomicInteger();
+        final IPCSingleFlight.Call call = new IPCSingleFlight.Call() {
+            @Override
+            public IPCResponse perform(long timeoutMs) throws VolleyError {
+                nCalls.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new IPCResponse("com.force.react".getBytes());
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(N_REQUESTS);
+        Future<?>[] responses = new Future<?>[N_REQUESTS];
+        for (int i = 0; i < N_REQUESTS; i++)
+            responses[i] = executor.submit(new Callable<IPCResponse>() {
+                @Override
+                public IPCResponse call() throws Exception {
+                    return singleFlight.execute("key", 5000, call);
+                }
+            });
+
+        // wait for the requests to join the one in flight
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<?> response : responses)
+            assertEquals("com.force.react", new String(((IPCResponse)
+                    response.get(1, TimeUnit.SECONDS)).getRawResponse()));
+        assertEquals(1, nCalls.get());
+        assertEquals(N_REQUESTS - 1, singleFlight.getNCoalesced());
+
+        // completed calls are not shared
+        singleFlight.execute("key", 5000, call);
+        assertEquals(2, nCalls.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void errorTest() throws Exception {
+        System.out.println("errorTest");
+        final IPCSingleFlight singleFlight = new IPCSingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+        final RejectedError error = new RejectedError("failed");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<IPCResponse> leader = executor.submit(new
+                Callable<IPCResponse>() {
+            @Override
+            public IPCResponse call() throws Exception {
+                return singleFlight.execute("key", 5000, new IPCSingleFlight
+                        .Call() {
+                    @Override
+                    public IPCResponse perform(long timeoutMs) throws VolleyError {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw error;
+                    }
+                });
+            }
+        });
+
+        Thread.sleep(100);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                release.countDown();
+            }
+        }).start();
+
+        // the error of the call in flight is shared
+        try {
+            singleFlight.execute("key", 5000, new IPCSingleFlight.Call() {
+                @Override
+                public IPCResponse perform(long timeoutMs) {
+                    fail("The request was not coalesced");
+                    return null;
+                }
+            });
+            fail("The error was not shared");
+        } catch (RejectedError e) {
+            // a copy of its own
+            assertEquals("failed", e.getMessage());
+            assertNotSame(error, e);
+            assertSame(error, e.getCause());
+        }
+
+        // disabled
+        singleFlight.setEnabled(false);
+        assertNull(singleFlight.execute("key", 5000, new IPCSingleFlight
+                .Call() {
+            @Override
+            public IPCResponse perform(long timeoutMs) {
+                return null;
+            }
+        }));
+        assertTrue(leader.isDone());
+        executor.shutdown();
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        System.out.println("timeoutTest");
+        final IPCSingleFlight singleFlight = new IPCSingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(new Callable<IPCResponse>() {
+            @Override
+            public IPCResponse call() throws Exception {
+                return singleFlight.execute("key", 5000, new IPCSingleFlight
+                        .Call() {
+                    @Override
+                    public IPCResponse perform(long timeoutMs) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                });
+            }
+        });
+        Thread.sleep(100);
+
+        // performed with what is left of the timeout, once it stops waiting
+        final AtomicLong budget = new AtomicLong(-1);
+        singleFlight.execute("key", 100, new IPCSingleFlight.Call() {
+            @Override
+            public IPCResponse perform(long timeoutMs) {
+                budget.set(timeoutMs);
+                return null;
+            }
+        });
+        assertTrue(budget.get() >= 0 && budget.get() < 100);
+        release.countDown();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,108 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link InstrumentedHeap}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class InstrumentedHeapTest {
+
+    @After
+    public void resetInstrumented() {
+        HeapFactory.setInstrumented(false);
+        HeapFactory.eraseMemory();
+    }
+
+    @Test
+    public void heapFactoryInstrumentedTest() {
+        System.out.println("heapFactoryInstrumentedTest");
+        HeapFactory.eraseMemory();
+        assertNull(HeapFactory.getMetrics());
+
+        HeapFactory.setInstrumented(true);
+        HeapFactory.eraseMemory();
+        assertTrue(HeapFactory.getInstance() instanceof InstrumentedHeap);
+
+        HeapFactory.getInstance().malloc(10);
+        assertEquals(1, HeapFactory.getMetrics().getCount(HeapMetrics
+                .OP_MALLOC));
+    }
+
+    @Test
+    public void metricsTest() {
+        System.out.println("metricsTest");
+        InstrumentedHeap memory = new InstrumentedHeap(new SizeClassHeap
+                (1024));
+        HeapMetrics metrics = memory.getMetrics();
+
+        int block1 = memory.malloc(100);
+        int block2 = memory.malloc(200);
+        memory.free(block1);
+        memory.malloc(2048);
+        memory.write(Heap.INVALID_REFERENCE, new byte[1]);
+
+        assertEquals(3, metrics.getCount(HeapMetrics.OP_MALLOC));
+        assertEquals(1, metrics.getCount(HeapMetrics.OP_FREE));
+        assertEquals(200, metrics.getLiveBytes());
+        assertEquals(300, metrics.getHighWaterMark());
+        assertEquals(1, metrics.getFailures(Heap.INSUFFICIENT_MEMORY));
+        assertEquals(1, metrics.getFailures(Heap.NULL_REFERENCE));
+
+        // 100 in (64, 128], 200 in (128, 256]
+        long[] histogram = metrics.getSizeHistogram();
+        assertEquals(1, histogram[7]);
+        assertEquals(1, histogram[8]);
+
+        // sized by the block, after moving
+        memory.realloc(block2, 300);
+        assertEquals(300, metrics.getLiveBytes());
+        assertEquals(1, metrics.getCount(HeapMetrics.OP_REALLOC));
+    }
+
+    @Test
+    public void invalidFreeTest() {
+        System.out.println("invalidFreeTest");
+        InstrumentedHeap memory = new InstrumentedHeap(new SizeClassHeap
+                (1024));
+        try {
+            memory.free(50);
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, memory.getMetrics().getFailures(Heap
+                    .INVALID_REFERENCE));
+            return;
+        }
+        throw new AssertionError("free() did not throw");
+    }
+
+    @Test
+    public void leakTrackingTest() throws InterruptedException {
+        System.out.println("leakTrackingTest");
+        InstrumentedHeap memory = new InstrumentedHeap(new SizeClassHeap
+                (1024)).setLeakTracking(1);
+
+        int leaked = memory.malloc(10);
+        memory.free(memory.malloc(20));
+        Thread.sleep(10);
+
+        List<InstrumentedHeap.Leak> leaks = memory.getLeaks();
+        assertEquals(1, leaks.size());
+        assertEquals(leaked, leaks.get(0).reference);
+        assertEquals(10, leaks.get(0).size);
+        assertTrue(leaks.get(0).caller.contains("leakTrackingTest"));
+
+        memory.setLeakTracking(0);
+        assertTrue(memory.getLeaks().isEmpty());
+    }
+}
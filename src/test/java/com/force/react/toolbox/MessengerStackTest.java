@@ -0,0 +1,168 @@
+package com.force.react.toolbox;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+
+import com.force.react.IPCResponse;
+import com.force.react.IPCUtil;
+import com.force.react.RejectedError;
+import com.force.react.Request;
+import com.force.react.TimeoutError;
+import com.force.react.mock.MockFunction;
+import com.force.react.mock.TestRequest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link MessengerStack}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+@RunWith(RobolectricTestRunner.class)
+public class MessengerStackTest {
+
+    private static final String FUNCTION_NAME = "com.force.test";
+
+    /**
+     * Get the {@link Messenger} of a function, replying with the request
+     * body, or with an error, or not at all if both are null
+     */
+    private static Messenger function(final boolean echo, final String
+            error) {
+        return new Messenger(new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                Bundle bundle = (Bundle) msg.obj;
+                String reqID = bundle.getString(IPCUtil.REQ_ID_EXTRA_NAME);
+                try {
+                    if (echo) IPCUtil.replyMessage(msg.replyTo, reqID,
+                            IPCUtil.getMessageBody(bundle, IPCUtil
+                                    .POSTBODY_EXTRA_NAME, IPCUtil
+                                    .POSTBODY_FD_EXTRA_NAME), null);
+                    else if (error != null) IPCUtil.replyMessage(msg
+                            .replyTo, reqID, null, error);
+                } catch (IOException e) {
+                    fail(e.toString());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void replyTest() throws Exception {
+        System.out.println("replyTest");
+        MessengerStack.invalidate(FUNCTION_NAME);
+        Request<?> request = new TestRequest.PostWithBody();
+
+        IPCResponse response = new MessengerStack(function(true, null))
+                .performRequest(request, FUNCTION_NAME, null, 10000);
+        assertArrayEquals(IPCUtil.getBody(request), response.data);
+        assertEquals(0, MessengerStack.getNPending());
+    }
+
+    @Test
+    public void rejectedTest() throws Exception {
+        System.out.println("rejectedTest");
+        MessengerStack.invalidate(FUNCTION_NAME);
+
+        try {
+            new MessengerStack(function(false, "Rejected by " +
+                    FUNCTION_NAME)).performRequest(new TestRequest
+                    .PostWithBody(), FUNCTION_NAME, null, 10000);
+            fail("Expected a RejectedError");
+        } catch (RejectedError e) {
+            // expected
+        }
+        assertEquals(0, MessengerStack.getNPending());
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        System.out.println("timeoutTest");
+        MessengerStack.invalidate(FUNCTION_NAME);
+
+        try {
+            new MessengerStack(function(false, null)).performRequest(new
+                    TestRequest.PostWithBody(), FUNCTION_NAME, null, 50);
+            fail("Expected a TimeoutError");
+        } catch (TimeoutError e) {
+            // expected
+        }
+        assertEquals(0, MessengerStack.getNPending());
+    }
+
+    @Test
+    public void rejectedBodyTest() throws Exception {
+        System.out.println("rejectedBodyTest");
+        MessengerStack.invalidate(FUNCTION_NAME);
+        CountDownLatch release = new CountDownLatch(1);
+        MockFunction function = new MockFunction().setRelease(release)
+                .withMessenger();
+        function.setWorkerPool(1, 1);
+
+        // the worker, and its queue, are taken
+        function.submitDirect(new TestRequest.Get());
+        function.submitDirect(new TestRequest.Get());
+
+        Request<?> request = new TestRequest.PostWithBody() {
+            @Override
+            public byte[] getBody() {
+                // larger than the pipe holds until it is read
+                return new byte[IPCUtil.MESSENGER_FD_THRESHOLD * 4];
+            }
+        };
+        try {
+            for (int i = 0; i <= IPCUtil.MAX_PIPE_WRITERS; i++) {
+                try {
+                    new MessengerStack(function.getMessenger())
+                            .performRequest(request, FUNCTION_NAME, null,
+                                    10000);
+                    fail("Expected a RejectedError");
+                } catch (RejectedError e) {
+                    // expected
+                }
+            }
+
+            // the pipes are closed by the function, and their writers done
+            for (int i = 0; i < 100 && IPCUtil.getNPipeWriters() > 0; i++)
+                Thread.sleep(10);
+            assertEquals(0, IPCUtil.getNPipeWriters());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void unclaimedReplyTest() throws IOException {
+        System.out.println("unclaimedReplyTest");
+        Bundle bundle = new Bundle();
+        bundle.putString(IPCUtil.REQ_ID_EXTRA_NAME, "unknown");
+        IPCUtil.putMessageBody(bundle, IPCUtil.GET_REPLYBODY_EXTRA_NAME,
+                IPCUtil.REPLYBODY_FD_EXTRA_NAME, new byte[IPCUtil
+                        .MESSENGER_FD_THRESHOLD]);
+
+        // dropped, and its pipe closed
+        MessengerStack.onReply(bundle);
+        assertEquals(0, MessengerStack.getNPending());
+        try {
+            IPCUtil.getMessageBody(bundle, IPCUtil.GET_REPLYBODY_EXTRA_NAME,
+                    IPCUtil.REPLYBODY_FD_EXTRA_NAME);
+            fail("Expected the pipe to be closed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
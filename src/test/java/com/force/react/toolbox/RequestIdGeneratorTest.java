@@ -0,0 +1,74 @@
+package com.force.react.toolbox;
+
+import com.force.react.RequestIdGenerator;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link CounterRequestIdGenerator} and
+ * {@link SecureRequestIdGenerator}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class RequestIdGeneratorTest {
+
+    private static final int N_THREADS = 4;
+    private static final int N_IDS = 10000;
+
+    @Test
+    public void counterUniqueTest() throws InterruptedException {
+        System.out.println("counterUniqueTest");
+        assertEquals(N_THREADS * N_IDS, generate(new
+                CounterRequestIdGenerator()).size());
+    }
+
+    @Test
+    public void counterPrefixTest() {
+        System.out.println("counterPrefixTest");
+        String id1 = new CounterRequestIdGenerator().nextId();
+        String id2 = new CounterRequestIdGenerator().nextId();
+
+        // same count, different processes
+        assertTrue(id1.endsWith("-1"));
+        assertFalse(id1.equals(id2));
+    }
+
+    @Test
+    public void secureUniqueTest() throws InterruptedException {
+        System.out.println("secureUniqueTest");
+        assertEquals(N_THREADS * N_IDS, generate(new
+                SecureRequestIdGenerator()).size());
+    }
+
+    /**
+     * Generate N_IDS IDs on each of N_THREADS threads
+     */
+    private static Set<String> generate(final RequestIdGenerator generator)
+            throws InterruptedException {
+        final Set<String> ids = Collections.synchronizedSet(new
+                HashSet<String>());
+        final CountDownLatch done = new CountDownLatch(N_THREADS);
+
+        for (int t = 0; t < N_THREADS; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < N_IDS; i++) ids.add(generator.nextId());
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        return ids;
+    }
+}
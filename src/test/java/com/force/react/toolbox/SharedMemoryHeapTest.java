@@ -0,0 +1,136 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SharedMemoryHeap}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class SharedMemoryHeapTest {
+
+    private static final int HEAP_SIZE = 4096;
+
+    private File sharedFile;
+
+    @Before
+    public void createFile() throws IOException {
+        // a tmpfs, if available
+        File shm = new File("/dev/shm");
+        sharedFile = shm.isDirectory() && shm.canWrite() ? File
+                .createTempFile("force-heap", null, shm) : File
+                .createTempFile("force-heap", null);
+        sharedFile.delete();
+    }
+
+    @After
+    public void resetHeapType() {
+        HeapFactory.setHeapType(HeapFactory.HEAP_TYPE_BYTE_ARRAY);
+        HeapFactory.setMappedFile(null);
+        HeapFactory.eraseMemory();
+        sharedFile.delete();
+    }
+
+    @Test
+    public void heapFactoryTypeTest() {
+        System.out.println("heapFactoryTypeTest");
+        assertTrue(HeapFactory.attachSharedHeap(sharedFile));
+        assertTrue(HeapFactory.getInstance() instanceof SharedMemoryHeap);
+        assertEquals(sharedFile, HeapFactory.getSharedFile());
+
+        // an existing heap is not replaced
+        assertFalse(HeapFactory.attachSharedHeap(new File(sharedFile
+                .getPath() + "-other")));
+    }
+
+    @Test
+    public void sharedFileTest() {
+        System.out.println("sharedFileTest");
+        HeapFactory.eraseMemory();
+
+        // does not create the default heap
+        assertNull(HeapFactory.getSharedFile());
+        assertTrue(HeapFactory.attachSharedHeap(sharedFile));
+        assertNull(HeapFactory.getSharedFile());
+        HeapFactory.getInstance();
+        assertEquals(sharedFile, HeapFactory.getSharedFile());
+    }
+
+    @Test
+    public void mallocTest() throws IOException {
+        System.out.println("mallocTest");
+        SharedMemoryHeap memory = new SharedMemoryHeap(sharedFile, HEAP_SIZE);
+
+        int reference = memory.malloc(15);
+        assertEquals(0, reference % 8);
+        assertEquals(15, memory.write(reference, "com.force.react".getBytes()));
+        assertEquals("com.force.react", new String(memory.read(reference)));
+        assertEquals(Heap.INSUFFICIENT_MEMORY, memory.write(reference, new
+                byte[16]));
+
+        // grows in place, within the capacity
+        assertEquals(reference, memory.realloc(reference, 16));
+        int moved = memory.realloc(reference, 64);
+        assertTrue(moved != reference);
+        assertEquals("com.force.react", new String(memory.read(moved), 0, 15));
+        assertNull(memory.read(reference));
+
+        // reuses the first freed block, zeroed
+        memory.write(reference = memory.malloc(4), new byte[]{1, 1, 1, 1});
+        memory.free(reference);
+        int zeroed = memory.calloc(4, 1);
+        assertEquals(reference, zeroed);
+        assertArrayEquals(new byte[4], memory.read(zeroed));
+
+        // out of memory malloc
+        assertEquals(Heap.INSUFFICIENT_MEMORY, memory.malloc(HEAP_SIZE));
+        memory.close();
+    }
+
+    @Test
+    public void sharedTest() throws IOException {
+        System.out.println("sharedTest");
+        SharedMemoryHeap first = new SharedMemoryHeap(sharedFile, HEAP_SIZE);
+        // the size of the existing heap is used
+        SharedMemoryHeap second = new SharedMemoryHeap(sharedFile, HEAP_SIZE
+                * 2);
+        assertEquals(HEAP_SIZE, second.getSize());
+
+        // allocated by one, read and freed by the other
+        int reference = first.malloc(15);
+        first.write(reference, "com.force.react".getBytes());
+        ByteBuffer view = second.view(reference);
+        byte[] data = new byte[15];
+        view.get(data);
+        assertEquals("com.force.react", new String(data));
+
+        // freeing a borrowed block is deferred
+        second.free(reference);
+        assertFalse(first.getBlock(reference).isFree());
+        second.release(reference);
+        assertTrue(first.getBlock(reference).isFree());
+        assertEquals(1, first.getNFreeBlocks());
+
+        // the freed block is reused by the other
+        assertEquals(reference, first.malloc(8));
+        assertEquals(1, second.getNBlocks());
+
+        first.close();
+        second.close();
+    }
+}
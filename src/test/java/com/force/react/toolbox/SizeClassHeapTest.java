@@ -0,0 +1,201 @@
+package com.force.react.toolbox;
+
+import com.force.react.Heap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SizeClassHeap}
+ * <p>
+ * @author Chathura Sarathchandra
+ */
+
+public class SizeClassHeapTest {
+
+    @Test
+    public void sizeClassOfTest() {
+        System.out.println("sizeClassOfTest");
+        assertEquals(SizeClassBins.MIN_SIZE_CLASS, SizeClassBins
+                .sizeClassOf(1));
+        assertEquals(4, SizeClassBins.sizeClassOf(16));
+        assertEquals(5, SizeClassBins.sizeClassOf(17));
+        assertEquals(SizeClassBins.MAX_SIZE_CLASS, SizeClassBins.sizeClassOf
+                (SizeClassBins.MAX_SMALL_SIZE));
+    }
+
+    @Test
+    public void mallocTest() {
+        System.out.println("mallocTest");
+        SizeClassHeap memory = new SizeClassHeap((int) Math.pow(1024, 2) * 4);
+
+        assertTrue(memory.malloc(-8) == Heap.NULL_REFERENCE);
+
+        int reference = memory.malloc(100);
+        assertEquals(0, reference);
+        assertEquals(100, memory.getBlock(reference).size);
+        assertEquals(128, memory.getBlock(reference).capacity);
+        assertEquals(128, memory.getTop());
+
+        // freed blocks are reused by requests of the same size class
+        memory.free(reference);
+        assertEquals(reference, memory.malloc(120));
+        assertEquals(120, memory.getBlock(reference).size);
+
+        // but not by requests of another size class
+        assertTrue(memory.malloc(200) != reference);
+        assertEquals(2, memory.getNBlocks());
+
+        // out of memory malloc
+        assertTrue(memory.malloc((int) Math.pow(1024, 2) * 4) == Heap
+                .INSUFFICIENT_MEMORY);
+    }
+
+    @Test
+    public void largeBlockTest() {
+        System.out.println("largeBlockTest");
+        SizeClassHeap memory = new SizeClassHeap((int) Math.pow(1024, 2) * 16);
+
+        int small = memory.malloc(SizeClassBins.MAX_SMALL_SIZE + 1);
+        int large = memory.malloc(SizeClassBins.MAX_SMALL_SIZE * 4);
+        memory.free(small);
+        memory.free(large);
+
+        // best fit picks the smallest free block that fits
+        assertEquals(small, memory.malloc(SizeClassBins.MAX_SMALL_SIZE + 1));
+        assertEquals(large, memory.malloc(SizeClassBins.MAX_SMALL_SIZE * 2));
+        assertEquals(SizeClassBins.MAX_SMALL_SIZE * 2, memory.getBlock(large)
+                .size);
+    }
+
+    @Test
+    public void mallocScalabilityTest() {
+        System.out.println("mallocScalabilityTest");
+        SizeClassHeap memory = new SizeClassHeap(1024).setHeapElastic(true);
+
+        int reference = memory.malloc(2048);
+        assertTrue(reference >= 0);
+        assertEquals(1024 + Heap.DEFAULT_MEM_STEP, memory.getSize());
+
+        // asking too much space
+        assertTrue(memory.malloc(Heap.DEFAULT_MEM_STEP * 2) == Heap
+                .INSUFFICIENT_MEMORY);
+    }
+
+    @Test
+    public void readWriteTest() {
+        System.out.println("readWriteTest");
+        SizeClassHeap memory = new SizeClassHeap(1024);
+
+        String testData = "com.force.react";
+        int reference = memory.malloc(testData.getBytes().length);
+
+        assertTrue(memory.write(-232323232, new byte[23]) == Heap
+                .NULL_REFERENCE);
+        assertTrue(memory.write(223982, new byte[23]) == Heap
+                .INVALID_REFERENCE);
+        assertTrue(memory.write(reference, new byte[testData.getBytes()
+                .length + 1]) == Heap.INSUFFICIENT_MEMORY);
+
+        memory.write(reference, testData.getBytes());
+        assertEquals(testData, new String(memory.read(reference)));
+
+        assertNull(memory.read(-99));
+        assertNull(memory.read(93849));
+
+        memory.free(reference);
+        assertNull(memory.read(reference));
+        assertTrue(memory.write(reference, new byte[2]) == Heap
+                .INVALID_REFERENCE);
+    }
+
+    @Test
+    public void reallocTest() {
+        System.out.println("reallocTest");
+        SizeClassHeap memory = new SizeClassHeap(4096);
+
+        int reference = memory.malloc(10);
+        memory.write(reference, "0123456789".getBytes());
+
+        // grows in place within the capacity of the block
+        assertEquals(reference, memory.realloc(reference, 16));
+
+        // moves the block, and keeps the data
+        int moved = memory.realloc(reference, 100);
+        assertTrue(moved != reference);
+        assertTrue(memory.getBlock(reference).free);
+        assertEquals("0123456789", new String(memory.read(moved), 0, 10));
+
+        assertEquals(Heap.INVALID_REFERENCE, memory.realloc(reference, 10));
+    }
+
+    @Test
+    public void callocTest() {
+        System.out.println("callocTest");
+        SizeClassHeap memory = new SizeClassHeap(1024);
+
+        int reference = memory.malloc(4);
+        memory.write(reference, new byte[]{1, 2, 3, 4});
+        memory.free(reference);
+
+        // reused block is zeroed
+        reference = memory.calloc(2, 2);
+        byte[] data = memory.read(reference);
+        for (byte b : data) assertEquals(0, b);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleFreeTest() {
+        System.out.println("doubleFreeTest");
+        SizeClassHeap memory = new SizeClassHeap(1024);
+        int reference = memory.malloc(10);
+        memory.free(reference);
+        memory.free(reference);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void freeUnknownTest() {
+        System.out.println("freeUnknownTest");
+        new SizeClassHeap(1024).free(50);
+    }
+
+    @Test
+    public void viewTest() {
+        System.out.println("viewTest");
+        SizeClassHeap memory = new SizeClassHeap(1024);
+
+        int reference = memory.malloc(4);
+        memory.write(reference, new byte[]{1, 2, 3, 4});
+
+        ByteBuffer view = memory.view(reference);
+        assertEquals(4, view.remaining());
+        assertEquals(3, view.get(2));
+
+        // the borrowed block is not reused before it is released
+        memory.free(reference);
+        assertTrue(memory.malloc(4) != reference);
+        memory.release(reference);
+        assertEquals(reference, memory.malloc(4));
+    }
+
+    @Test
+    public void fragmentationTest() {
+        System.out.println("fragmentationTest");
+        SizeClassHeap memory = new SizeClassHeap(1024);
+
+        int reference = memory.malloc(100);
+        memory.malloc(100);
+        assertEquals(768, memory.getLargestFreeBlock());
+        assertEquals(0, memory.getFragmentation(), 0);
+
+        // a freed block keeps its capacity
+        memory.free(reference);
+        assertEquals(1, memory.getNFreeBlocks());
+        assertEquals(1 - 768f / 896, memory.getFragmentation(), 0.0001);
+    }
+}